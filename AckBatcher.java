@@ -0,0 +1,367 @@
+/**
+ * Java Network Workbench 2 (JNW2)
+ * Copyright 2013-2018 Networking and Simulation Laboratory/George Mason University
+ *
+ * Decides when the receiving end of a reliable link sends its RN:
+ * in a receiver_ready supervisory frame for every data frame, in one
+ * cumulative supervisory frame for several data frames, or carried on
+ * a data frame going the other way
+ *
+ * @version 2.2.7
+ */
+
+package JNW2.interfaces;
+
+import static JNW2.Constants.*;
+import JNW2.utility.*;
+
+public class AckBatcher
+{
+  public enum AckMode
+  {
+    /** a receiver_ready frame for every accepted data frame */
+    IMMEDIATE,
+    /** one receiver_ready frame for up to framesPerAck data
+     *  frames, or when the ACK timer expires */
+    DELAYED_CUMULATIVE,
+    /** RN rides on the next reverse data frame; a receiver_ready
+     *  frame is sent only when the ACK timer expires first */
+    PIGGYBACK
+  }
+
+  /**
+   * Sends a receiver_ready supervisory frame carrying RN
+   */
+  public interface SupervisorySender
+  {
+    void sendReceiverReady(int RN) throws Exception;
+  }
+
+  // instance variables
+  private final AckMode mode;
+  private final SupervisorySender sender;
+  private final LocalEventQueue events;
+  private LinkMetrics metrics = null;
+  private int framesPerAck = 4;
+  private long ackDelayTicks = MAX_LINK_RTT / 4;
+
+  // RN not yet sent, and data frames it acknowledges
+  private int RN = 0;
+  private int framesUnacked = 0;
+
+  /**
+   * count of ACK timers started; a timer event does nothing if the
+   * ACK went out first and a newer timer was started, since events
+   * cannot be taken back off the queue
+   */
+  private boolean timerArmed = false;
+  private int timerGeneration = 0;
+
+  // statistics
+  private long framesAccepted = 0;
+  private long framesOutOfOrder = 0;
+  private long supervisoryFramesSent = 0;
+  private long acksPiggybacked = 0;
+  private long timerExpiries = 0;
+
+  /**
+   * @param mode - when RN is sent
+   * @param sender - sends receiver_ready frames
+   * @param events - queue for the ACK timer; not used in
+   * IMMEDIATE mode, so may be null there. The JNW2 DES does not run
+   * it: the timer fires only when pumpTimer() is called
+   */
+  public AckBatcher(AckMode mode, SupervisorySender sender, LocalEventQueue events)
+  {
+    if(mode != AckMode.IMMEDIATE && events == null)
+      throw new IllegalArgumentException("ACK mode " + mode + " needs an event queue");
+    this.mode = mode;
+    this.sender = sender;
+    this.events = events;
+  }
+
+  /**
+   * @param framesPerAck - in DELAYED_CUMULATIVE mode, data frames
+   * acknowledged by one receiver_ready frame
+   * @param ackDelayTicks - longest an ACK waits; keep it well below
+   * the sender's retransmit time
+   */
+  public void setDelayPolicy(int framesPerAck, long ackDelayTicks)
+  {
+    if(framesPerAck < 1 || ackDelayTicks < 0)
+      throw new IllegalArgumentException("frames per ACK must be positive " +
+        "and ACK delay not negative");
+    this.framesPerAck = framesPerAck;
+    this.ackDelayTicks = ackDelayTicks;
+  }
+
+  /**
+   * @param metrics - metrics of the link, also told of supervisory
+   * frames and piggybacked ACKs; null for none
+   */
+  public void setMetrics(LinkMetrics metrics)
+  {
+    this.metrics = metrics;
+  }
+
+  public AckMode getMode()
+  {
+    return mode;
+  }
+
+  /**
+   * Fires an ACK timer that has expired by the given time; the DLC
+   * calls this, through GoBackN.pumpAckTimer(), with the simulation
+   * time before each received frame and at each chance to send
+   * @param nowTicks - simulation time in ticks
+   * @throws Exception from the sender
+   */
+  public void pumpTimer(long nowTicks) throws Exception
+  {
+    if(events != null)
+      events.runUntil(nowTicks);
+  }
+
+  /**
+   * A data frame was accepted in order
+   * @param newRN - RN after the frame, the next SN expected
+   * @throws Exception from the sender
+   */
+  public void frameAccepted(int newRN) throws Exception
+  {
+    ++framesAccepted;
+    RN = newRN;
+    ++framesUnacked;
+    if(mode == AckMode.IMMEDIATE ||
+      (mode == AckMode.DELAYED_CUMULATIVE && framesUnacked >= framesPerAck))
+    {
+      sendNow();
+      return;
+    }
+    if(!timerArmed)
+    {
+      timerArmed = true;
+      final int generation = ++timerGeneration;
+      events.schedule(new LocalEventQueue.TimedEvent()
+      {
+        public void fire() throws Exception
+        {
+          if(timerArmed && generation == timerGeneration)
+          {
+            ++timerExpiries;
+            sendNow();
+          }
+        }
+      }, events.getTimeInTicks() + ackDelayTicks);
+    }
+  }
+
+  /**
+   * A data frame arrived out of order or was a repeat: the sender
+   * may have lost the last ACK, so RN goes out at once in every mode
+   * @param currentRN - RN of the receiving interface
+   * @throws Exception from the sender
+   */
+  public void frameOutOfOrder(int currentRN) throws Exception
+  {
+    ++framesOutOfOrder;
+    RN = currentRN;
+    sendNow();
+  }
+
+  /**
+   * A data frame is about to be sent the other way; it carries RN,
+   * which acknowledges everything waiting
+   * @return RN to insert in the data frame
+   */
+  public int piggybackRN()
+  {
+    if(framesUnacked > 0)
+    {
+      ++acksPiggybacked;
+      if(metrics != null)
+        metrics.ackPiggybacked();
+    }
+    framesUnacked = 0;
+    timerArmed = false;
+    return RN;
+  }
+
+  /**
+   * @return true if accepted frames are waiting for an ACK
+   */
+  public boolean isAckPending()
+  {
+    return framesUnacked > 0;
+  }
+
+  private void sendNow() throws Exception
+  {
+    framesUnacked = 0;
+    timerArmed = false;
+    ++supervisoryFramesSent;
+    if(metrics != null)
+      metrics.supervisoryFrameSent();
+    sender.sendReceiverReady(RN);
+  }
+
+  public long getFramesAccepted()
+  {
+    return framesAccepted;
+  }
+
+  public long getSupervisoryFramesSent()
+  {
+    return supervisoryFramesSent;
+  }
+
+  public long getAcksPiggybacked()
+  {
+    return acksPiggybacked;
+  }
+
+  public long getTimerExpiries()
+  {
+    return timerExpiries;
+  }
+
+  /**
+   * @return supervisory frames sent per data frame received
+   */
+  public double getSupervisoryOverhead()
+  {
+    long dataFrames = framesAccepted + framesOutOfOrder;
+    return dataFrames == 0 ? 0.0 : (double)supervisoryFramesSent / dataFrames;
+  }
+
+  /**
+   * @return statistics as one line
+   */
+  public String getStatistics()
+  {
+    return "ACK mode:" + mode + " frames accepted:" + framesAccepted +
+      " out of order:" + framesOutOfOrder +
+      " supervisory sent:" + supervisoryFramesSent +
+      " piggybacked:" + acksPiggybacked + " timer expiries:" + timerExpiries +
+      " overhead:" + String.format("%.3f", getSupervisoryOverhead());
+  }
+
+  // Test code
+
+  /**
+   * Sender that keeps each RN sent and when, for the tests
+   */
+  private static class RecordingSender implements SupervisorySender
+  {
+    final LocalEventQueue events;
+    int framesSent = 0;
+    int lastRN = -1;
+    long lastTicks = -1;
+
+    RecordingSender(LocalEventQueue events)
+    {
+      this.events = events;
+    }
+
+    public void sendReceiverReady(int RN)
+    {
+      ++framesSent;
+      lastRN = RN;
+      lastTicks = events.getTimeInTicks();
+    }
+  }// end class RecordingSender
+
+  /**
+   * Receives a frame at the given time as the DLC would: the timer is
+   * pumped up to that time first
+   */
+  private static void receiveAt(AckBatcher batcher, int newRN, long ticks)
+    throws Exception
+  {
+    batcher.pumpTimer(ticks);
+    batcher.frameAccepted(newRN);
+  }
+
+  /**
+   * Checks each ACK mode with its timer pumped as GoBackN does: when
+   * receiver_ready frames go out, that a timer left from an ACK
+   * already sent does nothing, and the counters
+   * @param args - no arguments passed
+   */
+  public static void main(String[] args)
+  {
+    try
+    {
+      // IMMEDIATE: one receiver_ready per frame, and at once
+      LocalEventQueue events = new LocalEventQueue();
+      RecordingSender sender = new RecordingSender(events);
+      AckBatcher batcher = new AckBatcher(AckMode.IMMEDIATE, sender, null);
+      for(int RN = 1; RN <= 3; ++RN)
+        batcher.frameAccepted(RN);
+      boolean passed = sender.framesSent == 3 && sender.lastRN == 3 &&
+        batcher.getSupervisoryOverhead() == 1.0;
+      System.out.println("IMMEDIATE: " + batcher.getStatistics());
+
+      // DELAYED_CUMULATIVE: one receiver_ready for framesPerAck frames,
+      // and the timer left armed by the first of them does not fire
+      events = new LocalEventQueue();
+      sender = new RecordingSender(events);
+      batcher = new AckBatcher(AckMode.DELAYED_CUMULATIVE, sender, events);
+      batcher.setDelayPolicy(4, 50);
+      for(int RN = 1; RN <= 4; ++RN)
+        receiveAt(batcher, RN, RN);
+      batcher.pumpTimer(100);
+      System.out.println("DELAYED_CUMULATIVE, 4 frames: RN " + sender.lastRN +
+        " sent at tick " + sender.lastTicks + ", timer expiries:" + batcher.getTimerExpiries());
+      passed &= sender.framesSent == 1 && sender.lastRN == 4 && sender.lastTicks == 4 &&
+        batcher.getTimerExpiries() == 0;
+
+      // DELAYED_CUMULATIVE: fewer frames wait for the timer, which
+      // fires at its own time however late it is pumped
+      receiveAt(batcher, 5, 100);
+      receiveAt(batcher, 6, 110);
+      batcher.pumpTimer(149);
+      passed &= sender.framesSent == 1;
+      batcher.pumpTimer(200);
+      System.out.println("DELAYED_CUMULATIVE, 2 frames: RN " + sender.lastRN +
+        " sent at tick " + sender.lastTicks + ", timer expiries:" + batcher.getTimerExpiries());
+      passed &= sender.framesSent == 2 && sender.lastRN == 6 && sender.lastTicks == 150 &&
+        batcher.getTimerExpiries() == 1;
+
+      // PIGGYBACK: the ACK rides a data frame, and the timer started
+      // before it is stale even though a newer timer is now armed
+      events = new LocalEventQueue();
+      sender = new RecordingSender(events);
+      batcher = new AckBatcher(AckMode.PIGGYBACK, sender, events);
+      batcher.setDelayPolicy(1, 50);
+      receiveAt(batcher, 1, 0);
+      receiveAt(batcher, 2, 10);
+      batcher.pumpTimer(20);
+      batcher.piggybackRN();
+      receiveAt(batcher, 3, 30);
+      batcher.pumpTimer(100);
+      System.out.println("PIGGYBACK: RN " + sender.lastRN + " sent at tick " + sender.lastTicks +
+        ", piggybacked:" + batcher.getAcksPiggybacked() +
+        ", timer expiries:" + batcher.getTimerExpiries());
+      passed &= batcher.getAcksPiggybacked() == 1 && sender.framesSent == 1 &&
+        sender.lastRN == 3 && sender.lastTicks == 80 && batcher.getTimerExpiries() == 1;
+
+      // PIGGYBACK: nothing waiting, so nothing is counted; a frame out
+      // of order sends RN at once
+      passed &= batcher.piggybackRN() == 3 && batcher.getAcksPiggybacked() == 1;
+      batcher.frameOutOfOrder(3);
+      passed &= sender.framesSent == 2 && !batcher.isAckPending();
+      System.out.println("PIGGYBACK: " + batcher.getStatistics());
+
+      System.out.println(passed ? "Passed: ACKs sent when each mode requires" :
+        "Failed: ACK batcher");
+    }
+    catch(Exception e)
+    {
+      System.out.println("Exception in AckBatcher test:" + e.getMessage());
+      e.printStackTrace(System.err);
+    }
+
+  }// end main()
+
+}// end class AckBatcher
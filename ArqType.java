@@ -0,0 +1,79 @@
+/**
+ * Java Network Workbench 2 (JNW2)
+ * Copyright 2013-2018 Networking and Simulation Laboratory/George Mason University
+ *
+ * The ARQ protocol a reliable WAN link runs, chosen per link by the
+ * optional <arqTypes> matrix of the config file, with the same layout
+ * as <links>: 0 or 1 for GoBackN, 2 for SelectiveRepeat
+ *
+ * @version 2.2.7
+ */
+
+package JNW2.interfaces;
+
+import JNW2.stack.*;
+
+public enum ArqType
+{
+  GO_BACK_N(1),
+  SELECTIVE_REPEAT(2);
+
+  // value that selects this type in the config file
+  private final int configValue;
+
+  ArqType(int configValue)
+  {
+    this.configValue = configValue;
+  }
+
+  public int getConfigValue()
+  {
+    return configValue;
+  }
+
+  /**
+   * @param configValue - entry of the <arqTypes> matrix
+   * @return the type it selects; GO_BACK_N for 0, the default
+   */
+  public static ArqType fromConfigValue(int configValue) throws Exception
+  {
+    if(configValue == 0)
+      return GO_BACK_N;
+    for(ArqType type : values())
+      if(type.configValue == configValue)
+        return type;
+    throw new Exception("unknown ARQ type " + configValue + " in <arqTypes>");
+  }
+
+  /**
+   * @param arqTypes - <arqTypes> matrix, 1-based like <links>;
+   * null if the config file has none
+   * @param fromSubnet - router at this end of the link
+   * @param toSubnet - router at the far end
+   * @return type the link runs; GO_BACK_N if not given
+   */
+  public static ArqType forLink(int[][] arqTypes, int fromSubnet, int toSubnet) throws Exception
+  {
+    if(arqTypes == null || fromSubnet >= arqTypes.length ||
+      toSubnet >= arqTypes[fromSubnet].length)
+      return GO_BACK_N;
+    return fromConfigValue(arqTypes[fromSubnet][toSubnet]);
+  }
+
+  /**
+   * @param stack - protocol stack for the Interface
+   * @param interfaceNumber - ID of the Interface
+   * @return a new Interface running this ARQ
+   */
+  public Interface newInterface(Stack stack, int interfaceNumber)
+  {
+    switch(this)
+    {
+      case SELECTIVE_REPEAT:
+        return new SelectiveRepeat(stack, interfaceNumber);
+      default:
+        return new GoBackN(stack, interfaceNumber);
+    }
+  }
+
+}// end enum ArqType
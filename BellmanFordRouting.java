@@ -13,7 +13,7 @@ import JNW2.*;
 import JNW2.parsers.*;
 import static JNW2.Constants.*;
 
-public class BellmanFordRouting
+public class BellmanFordRouting implements RoutingRowEngine
 {
   // simulation environment
   SimulationEngine simEngine = SimulationEngine.getInstance();
@@ -40,21 +40,26 @@ public class BellmanFordRouting
    */
    float[] C = new float[numberOfSubnets+1];
   
-    /**
+  /**
    * The path at this point in algorithm from a source router to each  
-   * destination router; from 0 to h hops which can be at most 
-   * numberOfSubnets+1 hops
-   * first dimension is the destination router (unused for 0 and source router)
-   * second dimension is the routers in path; entry 0 is the source; 
-   * last entry is the destination; -1 in unused positions
+   * destination router, kept as the router before each destination on
+   * its path (zero for the source router and routers not yet reached);
+   * pathLengths counts the routers in each path, source included.
+   * Full paths are only rebuilt when showRoutingPath() needs them.
    */
-  int[][] routingPaths = new int[numberOfSubnets+1][numberOfSubnets+1];
+  int[] predecessors = new int[numberOfSubnets+1];
   int[] pathLengths = new int[numberOfSubnets+1];
   
   /**
    * stopping condition flag
    */
   boolean noChangeFromLastHop;
+  
+  /**
+   * log each routing path as its row is computed; turned off for
+   * parallel computation where rows would interleave
+   */
+  boolean showPaths = true;
 
   /**
    * Builds a routing table
@@ -83,6 +88,45 @@ public class BellmanFordRouting
     // return to composite
     return routingMatrix;
   }  
+
+  /**
+   * Builds a routing table, computing rows in parallel
+   * @param parallelism - number of worker threads (zero or less for
+   * one per processor)
+   * @return routingMatrix
+   * @throws Exception
+   */
+  public int[][] computeRoutingMatrix(int parallelism) throws Exception
+  {
+    ParallelRouting parallelRouting = new ParallelRouting(parallelism);
+    return parallelRouting.computeRoutingMatrix(numberOfSubnets,
+      new ParallelRouting.EngineFactory()
+      {
+        public RoutingRowEngine newEngine()
+        {
+          BellmanFordRouting engine = new BellmanFordRouting();
+          engine.showPaths = false;
+          return engine;
+        }
+      }, "Bellman-Ford");
+  }
+
+  /**
+   * @param showPaths - false to stop logging each routing path,
+   * for timing or large topologies
+   */
+  public void setShowPaths(boolean showPaths)
+  {
+    this.showPaths = showPaths;
+  }
+
+  /**
+   * @return count of times through the inner loop
+   */
+  public int getInnerLoopCount()
+  {
+    return innerLoopCount;
+  }
   
   /**
    * Convenience function to display a routing path with its cost
@@ -92,28 +136,46 @@ public class BellmanFordRouting
    */
   void showRoutingPath(String label, int destRouter)
   {
-    // build a string containing the path
+    // build a string containing the path, walking back from the
+    // destination to the source
     String path = "";
     if(pathLengths[destRouter] > 0)
-      for(int hopNumber = 0; hopNumber <= pathLengths[destRouter]; ++hopNumber)
-        path += routingPaths[destRouter][hopNumber] + " ";
+    {
+      int[] routers = new int[pathLengths[destRouter]];
+      int router = destRouter;
+      for(int hopNumber = routers.length - 1; hopNumber >= 0; --hopNumber)
+      {
+        routers[hopNumber] = router;
+        router = predecessors[router];
+      }
+      for(int hopNumber = 0; hopNumber < routers.length; ++hopNumber)
+        path += routers[hopNumber] + " ";
+    }
     simLogger.logInfo(label + "dest router:" + destRouter + " cost:" +
        C[destRouter] + " path:" + path);
   }
   
   /**
-   * Copies a row of the routingPaths matrix to another row
-   * Adds a router at end (thus should not be called if length
-   * will exceed numberOfRouters)
+   * Makes the path to addRouter the path to copyFromRouter
+   * with addRouter added at the end
    */
   void copyRoutingPathAndAdd(int copyFromRouter, int addRouter)
   {
-    int copyLength = pathLengths[copyFromRouter];
-    if(copyFromRouter != addRouter)
-      for (int copyElement = 0; copyElement < copyLength; ++ copyElement)
-        routingPaths[addRouter][copyElement] = routingPaths[copyFromRouter][copyElement];
-    pathLengths[addRouter] = copyLength + 1;
-    routingPaths[addRouter][copyLength] = addRouter;
+    predecessors[addRouter] = copyFromRouter;
+    pathLengths[addRouter] = pathLengths[copyFromRouter] + 1;
+  }
+  
+  /**
+   * Finds the first router after the source on the path to destRouter
+   * @return next-hop router, or zero if destRouter has not been reached
+   */
+  int firstHop(int sourceRouter, int destRouter)
+  {
+    if(pathLengths[destRouter] == 0) return 0;
+    int router = destRouter;
+    while(predecessors[router] != sourceRouter)
+      router = predecessors[router];
+    return router;
   }
         
   /**
@@ -121,7 +183,7 @@ public class BellmanFordRouting
    * parameter source router is the subnet number of router (at packet source)
    * that seeks to find an optimal sent of routes for its packets
    */
-  private int[] computeRoutingRow(int sourceRouter) throws Exception
+  public int[] computeRoutingRow(int sourceRouter) throws Exception
   {       
     /**
      * The next-hop router to reach each network number
@@ -143,9 +205,10 @@ public class BellmanFordRouting
     //    Bellman-Ford route optimization algorithm for JNW2
     //     
     //    Data structures:
-    //      #1 matrix routingPaths [number of subnets + 1][number of subnets + 1]
-    //         there is a path for each dest router; number of hops which can be 
-    //         in the path grows as the hops variable is incremented
+    //      #1 array predecessors [number of subnets + 1]
+    //         there is a path for each dest router, held as the router before
+    //         it; number of hops which can be in the path grows as the hops
+    //         variable is incremented
     //      #2 array pathLengths in #1 [number of subnets +1] 
     //      #3 array C costs found thus far for paths in #1 [number of subnets +1] 
     //      #4 boolean flag indicating stopping condition has been met
@@ -156,7 +219,7 @@ public class BellmanFordRouting
     //      initialize each element of #2 to zero;
     //      initialize C each element of #3 to HUGEFLOAT;
     //    }
-    //    initialize #1 best paths[source router][0] to source router;
+    //    initialize #1 predecessors[source router] to zero;
     //    initialize #2 path lengths [source router] to 1;
     //    initialize #3 costs for path to source router to 0;
     //
@@ -176,7 +239,7 @@ public class BellmanFordRouting
     //          (next we need to consider the cost of link between a 'from router'
     //            and a 'to router')
     //          set #5from router to end of path: 
-    //            value of #1[test router][#2[test router] -1]
+    //            the test router itself
     //          (except if #2[test router] is zero; then set
     //            from router to source router);
     //          get link connection cost with next hop router from cm.connectionCost;
@@ -202,24 +265,25 @@ public class BellmanFordRouting
     //    for each dest router 1 to number of subnets
     //      set forwardRouters[dest router]:
     //        for source router, set to source router;
-    //        for all others, et to routing paths position [1];
+    //        for all others, set to the first hop found by following
+    //          #1 predecessors back from dest router to source router;
     //    return forwardRouters;
     //  }.
     //
       
     //*********** student solution goes here ****************
     //    Data structures:
-    //      #1 matrix routingPaths [number of subnets + 1][number of subnets + 1] there is a path for each dest router; number of hops which can be in the path grows as the hops variable is incremented
+    //      #1 array predecessors [number of subnets + 1] there is a path for each dest router, held as the router before it; number of hops which can be in the path grows as the hops variable is incremented
     //      #2 array pathLengths in #1 [number of subnets +1] 
     //      #3 array C costs found thus far for paths in #1 [number of subnets +1] 
     //      #4 boolean flag indicating stopping condition has been met
     //      #5 from router, to look up link cost 
-    for(int i = 0; i<routingPaths.length; i++){
+    for(int i = 0; i<pathLengths.length; i++){
       pathLengths[i] =0;
       C[i]= HUGEFLOAT;
     }
       
-    routingPaths[sourceRouter][0] = sourceRouter;
+    predecessors[sourceRouter] = 0;
     pathLengths[sourceRouter] = 1;
     C[sourceRouter] = 0;
     noChangeFromLastHop = false;
@@ -236,7 +300,7 @@ public class BellmanFordRouting
             if( router != destRouter){
             innerLoopCount ++;
             if( C[router] < HUGEFLOAT){
-              if(pathLengths[router] != 0) fromRouter = routingPaths[router][pathLengths[router]-1];
+              if(pathLengths[router] != 0) fromRouter = router;
               else fromRouter = sourceRouter;
               linkcost = cm.connectionCost(fromRouter,destRouter);
               if (linkcost <0.0001 || linkcost>= HUGEFLOAT) {
@@ -263,7 +327,7 @@ public class BellmanFordRouting
             
     for(int destRouter = 1; destRouter<numberOfSubnets+1; destRouter++){
       if (destRouter == sourceRouter) forwardRouters[destRouter] = sourceRouter;
-      else forwardRouters[destRouter] = routingPaths[destRouter][1];
+      else forwardRouters[destRouter] = firstHop(sourceRouter, destRouter);
     }
     
     
@@ -272,8 +336,9 @@ public class BellmanFordRouting
     
     // print results: paths with their costs;
     String forwarding = "";
-    for (int destRouter = 1; destRouter <= numberOfSubnets; ++destRouter)
-      showRoutingPath("Bellman-Ford routing ", destRouter);
+    if(showPaths)
+      for (int destRouter = 1; destRouter <= numberOfSubnets; ++destRouter)
+        showRoutingPath("Bellman-Ford routing ", destRouter);
       
     // return forward routers
     return forwardRouters;
@@ -9,8 +9,17 @@
 
 package JNW2.message;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 public class BitStuffing 
 {
+  /**
+   * Frames stuffed by one parallel task; smaller batches are not
+   * worth handing to another thread
+   */
+  static final int FRAMES_PER_TASK = 8;
+
   /**
    * Adds a zero after any sequence of 5 ones in bitFrame
    * Puts the result back into bitFrame
@@ -18,6 +27,160 @@ public class BitStuffing
    * @return bitFrame - the stuffed version
    */
   public static BitSequence stuff(BitSequence bitFrame)
+  {
+    return stuff(PackedBitSequence.fromBitSequence(bitFrame)).toBitSequence();
+
+  }// end stuff()
+
+  /**
+   * Removes zero after any sequence of 5 ones in bitFrame
+   * Puts the result back into bitFrame
+   * @param bitFrame - a stuffed frame
+   * @return bitFrame - the unstuffed version
+   */
+  public static BitSequence unstuff(BitSequence bitFrame)
+  {
+    return unstuff(PackedBitSequence.fromBitSequence(bitFrame)).toBitSequence();
+
+  }// end unstuff()
+
+  /**
+   * Adds a zero after any sequence of 5 ones in bitFrame
+   * @param bitFrame - the unstuffed frame
+   * @return the stuffed version
+   */
+  public static PackedBitSequence stuff(PackedBitSequence bitFrame)
+  {
+    PackedBitSequence stuffed =
+      PackedBitSequence.withCapacity(BitStuffingEngine.maxStuffedBits(bitFrame.size()));
+    BitStuffingEngine.stuff(bitFrame, stuffed);
+    return stuffed;
+  }
+
+  /**
+   * Removes zero after any sequence of 5 ones in bitFrame
+   * @param bitFrame - a stuffed frame
+   * @return the unstuffed version
+   */
+  public static PackedBitSequence unstuff(PackedBitSequence bitFrame)
+  {
+    PackedBitSequence unstuffed = PackedBitSequence.withCapacity(bitFrame.size());
+    BitStuffingEngine.unstuff(bitFrame, unstuffed);
+    return unstuffed;
+  }
+
+  /**
+   * Adds a zero after any sequence of 5 ones in bitFrame, without
+   * allocating once stuffed has grown to frame size
+   * @param bitFrame - the unstuffed frame
+   * @param stuffed - replaced by the stuffed version
+   * @return number of bits in the stuffed version
+   */
+  public static int stuff(PackedBitSequence bitFrame, PackedBitSequence stuffed)
+  {
+    stuffed.reset();
+    return BitStuffingEngine.stuff(bitFrame, stuffed);
+  }
+
+  /**
+   * Removes zero after any sequence of 5 ones in bitFrame, without
+   * allocating once unstuffed has grown to frame size
+   * @param bitFrame - a stuffed frame
+   * @param unstuffed - replaced by the unstuffed version
+   * @return number of bits in the unstuffed version
+   */
+  public static int unstuff(PackedBitSequence bitFrame, PackedBitSequence unstuffed)
+  {
+    unstuffed.reset();
+    return BitStuffingEngine.unstuff(bitFrame, unstuffed);
+  }
+
+  /**
+   * Stuffs a batch of frames, in parallel if a pool is given
+   * @param frames - the unstuffed frames
+   * @param stuffed - receives the stuffed version of each frame;
+   * null entries are filled with new sequences
+   * @param count - number of frames, starting at index 0
+   * @param pool - runs the work in parallel; null to stuff the
+   * frames on the calling thread
+   */
+  public static void stuff(PackedBitSequence[] frames, PackedBitSequence[] stuffed,
+    int count, ForkJoinPool pool)
+  {
+    runBatch(frames, stuffed, count, pool, true);
+  }
+
+  /**
+   * Unstuffs a batch of frames, in parallel if a pool is given
+   * @see #stuff(PackedBitSequence[], PackedBitSequence[], int, ForkJoinPool)
+   */
+  public static void unstuff(PackedBitSequence[] frames, PackedBitSequence[] unstuffed,
+    int count, ForkJoinPool pool)
+  {
+    runBatch(frames, unstuffed, count, pool, false);
+  }
+
+  private static void runBatch(PackedBitSequence[] frames, PackedBitSequence[] results,
+    int count, ForkJoinPool pool, boolean stuffing)
+  {
+    for(int index = 0; index < count; ++index)
+      if(results[index] == null)
+        results[index] = PackedBitSequence.withCapacity(stuffing ?
+          BitStuffingEngine.maxStuffedBits(frames[index].size()) : frames[index].size());
+    BatchTask task = new BatchTask(frames, results, 0, count, stuffing);
+    if(pool == null || count <= FRAMES_PER_TASK)
+      task.compute();
+    else
+      pool.invoke(task);
+  }
+
+  /**
+   * Stuffs or unstuffs a range of a batch, splitting it in two while
+   * it is larger than FRAMES_PER_TASK
+   */
+  private static class BatchTask extends RecursiveAction
+  {
+    private final PackedBitSequence[] frames, results;
+    private final int first, end;
+    private final boolean stuffing;
+
+    BatchTask(PackedBitSequence[] frames, PackedBitSequence[] results,
+      int first, int end, boolean stuffing)
+    {
+      this.frames = frames;
+      this.results = results;
+      this.first = first;
+      this.end = end;
+      this.stuffing = stuffing;
+    }
+
+    @Override
+    protected void compute()
+    {
+      if(end - first > FRAMES_PER_TASK)
+      {
+        int middle = (first + end) >>> 1;
+        invokeAll(new BatchTask(frames, results, first, middle, stuffing),
+          new BatchTask(frames, results, middle, end, stuffing));
+        return;
+      }
+      for(int index = first; index < end; ++index)
+      {
+        if(stuffing)
+          stuff(frames[index], results[index]);
+        else
+          unstuff(frames[index], results[index]);
+      }
+    }
+  }// end class BatchTask
+
+  /**
+   * Bit-at-a-time version of stuff(), kept as the reference
+   * the table-driven engine is checked and timed against
+   * @param bitFrame - the unstuffed frame
+   * @return bitFrame - the stuffed version
+   */
+  public static BitSequence stuffBitwise(BitSequence bitFrame)
   {
     // this version does nothing, only returns the input
     // student adds code here to do stuffing
@@ -73,15 +236,15 @@ public class BitStuffing
     //Return new bit frame stuffed
     return bitFrame2;
       
-  }// end stuff()
+  }// end stuffBitwise()
   
   /**
-   * Removes zero after any sequence of 5 ones in bitFrame
-   * Puts the result back into bitFrame
+   * Bit-at-a-time version of unstuff(), kept as the reference
+   * the table-driven engine is checked and timed against
    * @param bitFrame - a stuffed frame
    * @return bitFrame - the unstuffed version
    */
-  public static BitSequence unstuff(BitSequence bitFrame)
+  public static BitSequence unstuffBitwise(BitSequence bitFrame)
   {
     // this version does nothing; only returns the input
     // student adds code here to do unstuffing
@@ -129,8 +292,60 @@ public class BitStuffing
     //Return new bit frame unestuffed
     return bitFrame2;
       
-  }// end unstuff()
+  }// end unstuffBitwise()
   
+  /**
+   * Makes a frame for the random checks in main(): random bits,
+   * repeated flags (01111110), all ones, or mostly ones, so that
+   * every run length and every stuffing state is reached
+   * @param random - source of the bits
+   * @param maxBits - longest frame to make
+   * @return frame of 0 to maxBits bits
+   */
+  static BitSequence randomFrame(java.util.Random random, int maxBits)
+  {
+    int size = random.nextInt(maxBits + 1);
+    int kind = random.nextInt(4);
+    BitSequence frame = new BitSequence();
+    for(int i = 0; i < size; i++)
+    {
+      boolean value;
+      if(kind == 0)
+        value = random.nextBoolean();
+      else if(kind == 1)
+        value = (i % 8) != 0 && (i % 8) != 7;
+      else if(kind == 2)
+        value = true;
+      else
+        value = random.nextInt(10) != 0;
+      frame.setValue(i, value);
+    }
+    return frame;
+  }
+
+  /**
+   * @return bits of frame packed most significant bit first
+   */
+  static byte[] toBytes(BitSequence frame)
+  {
+    byte[] bytes = new byte[(frame.size() + 7) / 8];
+    for(int i = 0; i < frame.size(); i++)
+      if(frame.getValue(i))
+        bytes[i / 8] |= 0x80 >>> (i % 8);
+    return bytes;
+  }
+
+  /**
+   * @return first count bits of bytes, most significant bit first
+   */
+  static BitSequence fromBytes(byte[] bytes, int count)
+  {
+    BitSequence frame = new BitSequence();
+    for(int i = 0; i < count; i++)
+      frame.setValue(i, (bytes[i / 8] & (0x80 >>> (i % 8))) != 0);
+    return frame;
+  }
+
   /**
    * Test code main function for file BitStuffing.java
    * This file goes through 4 tests for each function stuff and unstuff.
@@ -391,6 +606,217 @@ public class BitStuffing
     // Print out the passed tests and total tests
     System.out.println("\nYou passed "+passedTests+" out of "+totalTests+" for the 'unstuff' function");
 
+    // Random frames: the byte lookup tables against the bitwise loops
+    java.util.Random random = new java.util.Random(1);
+    int tableMismatches = 0;
+    for(int frameNumber = 0; frameNumber < 20000; frameNumber++)
+    {
+      BitSequence frame = randomFrame(random, 1600);
+      BitSequence expected = stuffBitwise(frame);
+      byte[] stuffedBytes = new byte[(BitStuffingEngine.maxStuffedBits(frame.size()) + 7) / 8];
+      int stuffedBits = BitStuffingEngine.stuff(toBytes(frame), frame.size(), stuffedBytes);
+      if(!fromBytes(stuffedBytes, stuffedBits).equals(expected))
+        tableMismatches++;
+      byte[] unstuffedBytes = new byte[stuffedBytes.length];
+      int unstuffedBits = BitStuffingEngine.unstuff(stuffedBytes, stuffedBits, unstuffedBytes);
+      if(!fromBytes(unstuffedBytes, unstuffedBits).equals(unstuffBitwise(expected)))
+        tableMismatches++;
+    }
+    if(tableMismatches == 0)
+    {
+      System.out.println("Passed table-driven stuff and unstuff on 20000 random frames");
+    }
+    else
+    {
+      System.out.println("Failed table-driven stuff and unstuff: " + tableMismatches + " mismatches");
+      passedAllTests = false;
+    }
+
+    // Random frames: PackedBitSequence, new and reused results
+    int packedMismatches = 0;
+    PackedBitSequence reusedStuffed = new PackedBitSequence();
+    PackedBitSequence reusedUnstuffed = new PackedBitSequence();
+    for(int frameNumber = 0; frameNumber < 20000; frameNumber++)
+    {
+      BitSequence frame = randomFrame(random, 1600);
+      BitSequence expected = stuffBitwise(frame);
+      PackedBitSequence packed = PackedBitSequence.fromBitSequence(frame);
+      PackedBitSequence stuffed = stuff(packed);
+      if(!stuffed.toBitSequence().equals(expected))
+        packedMismatches++;
+      if(!unstuff(stuffed).toBitSequence().equals(unstuffBitwise(expected)))
+        packedMismatches++;
+      stuff(packed, reusedStuffed);
+      unstuff(reusedStuffed, reusedUnstuffed);
+      if(!reusedStuffed.equals(stuffed) || !reusedUnstuffed.equals(packed))
+        packedMismatches++;
+    }
+    if(packedMismatches == 0)
+    {
+      System.out.println("Passed packed stuff and unstuff on 20000 random frames");
+    }
+    else
+    {
+      System.out.println("Failed packed stuff and unstuff: " + packedMismatches + " mismatches");
+      passedAllTests = false;
+    }
+
+    // Random frames: streamed in random chunks between flags, then
+    // the line read back in random chunks
+    int streamMismatches = 0;
+    StreamingBitStuffer streamingStuffer = new StreamingBitStuffer();
+    PackedBitSequence line = new PackedBitSequence();
+    java.util.List<PackedBitSequence> sentFrames = new java.util.ArrayList<PackedBitSequence>();
+    streamingStuffer.writeFlag(line);
+    for(int frameNumber = 0; frameNumber < 3000; frameNumber++)
+    {
+      BitSequence frame = randomFrame(random, 1600);
+      if(frame.size() == 0)
+        continue;// nothing between two flags is not a frame
+      PackedBitSequence packed = PackedBitSequence.fromBitSequence(frame);
+      int start = line.size();
+      for(int from = 0; from < packed.size(); )
+      {
+        int count = Math.min(packed.size() - from, 1 + random.nextInt(100));
+        streamingStuffer.write(packed, from, count, line);
+        from += count;
+      }
+      if(!line.copyRange(start, line.size() - start).toBitSequence().equals(stuffBitwise(frame)))
+        streamMismatches++;
+      streamingStuffer.writeFlag(line);
+      sentFrames.add(packed);
+    }
+    final java.util.List<PackedBitSequence> receivedFrames = new java.util.ArrayList<PackedBitSequence>();
+    StreamingBitUnstuffer streamingUnstuffer = new StreamingBitUnstuffer(
+      new StreamingBitUnstuffer.FrameListener()
+      {
+        public void frameReceived(PackedBitSequence frame)
+        {
+          receivedFrames.add(frame.copyRange(0, frame.size()));
+        }
+      }, 2000);
+    try
+    {
+      for(int from = 0; from < line.size(); )
+      {
+        int count = Math.min(line.size() - from, 1 + random.nextInt(200));
+        streamingUnstuffer.receive(line, from, count);
+        from += count;
+      }
+    }
+    catch(Exception e)
+    {
+      streamMismatches++;
+    }
+    if(!receivedFrames.equals(sentFrames))
+      streamMismatches++;
+    if(streamMismatches == 0)
+    {
+      System.out.println("Passed streaming stuff and unstuff on " + sentFrames.size() + " random frames");
+    }
+    else
+    {
+      System.out.println("Failed streaming stuff and unstuff: " + streamMismatches + " mismatches");
+      passedAllTests = false;
+    }
+
+    // Runs of 4 to 9 ones placed across the 64-bit windows that the
+    // run scan looks at, and idle ones between frames on the line
+    int scanMismatches = 0;
+    StreamingBitStuffer scanStuffer = new StreamingBitStuffer();
+    PackedBitSequence scanLine = new PackedBitSequence();
+    java.util.List<PackedBitSequence> scanFrames = new java.util.ArrayList<PackedBitSequence>();
+    for(int frameNumber = 0; frameNumber < 10000; frameNumber++)
+    {
+      int size = 1 + random.nextInt(300);
+      BitSequence frame = new BitSequence();
+      for(int i = 0; i < size; i++)
+        frame.setValue(i, random.nextBoolean());
+      int runLength = 4 + random.nextInt(6);
+      int runStart = 64 * (1 + random.nextInt(size / 64 + 1)) - random.nextInt(runLength + 1);
+      for(int i = runStart - 1; i <= runStart + runLength; i++)
+        if(i >= 0 && i < size)
+          frame.setValue(i, i >= runStart && i < runStart + runLength);
+      BitSequence expected = stuffBitwise(frame);
+      PackedBitSequence packed = PackedBitSequence.fromBitSequence(frame);
+      PackedBitSequence stuffed = stuff(packed);
+      if(!stuffed.toBitSequence().equals(expected))
+        scanMismatches++;
+      if(!unstuff(stuffed).toBitSequence().equals(unstuffBitwise(expected)))
+        scanMismatches++;
+      scanStuffer.writeFlag(scanLine);
+      scanStuffer.write(packed, scanLine);
+      scanStuffer.writeFlag(scanLine);
+      scanLine.appendBits(-1L, 7 + random.nextInt(58));
+      scanFrames.add(packed);
+    }
+    final java.util.List<PackedBitSequence> scannedFrames = new java.util.ArrayList<PackedBitSequence>();
+    StreamingBitUnstuffer scanUnstuffer = new StreamingBitUnstuffer(
+      new StreamingBitUnstuffer.FrameListener()
+      {
+        public void frameReceived(PackedBitSequence frame)
+        {
+          scannedFrames.add(frame.copyRange(0, frame.size()));
+        }
+      }, 2000);
+    try
+    {
+      scanUnstuffer.receive(scanLine);
+    }
+    catch(Exception e)
+    {
+      scanMismatches++;
+    }
+    if(!scannedFrames.equals(scanFrames))
+      scanMismatches++;
+    if(scanMismatches == 0)
+    {
+      System.out.println("Passed run scan on 10000 frames with runs across word boundaries");
+    }
+    else
+    {
+      System.out.println("Failed run scan: " + scanMismatches + " mismatches");
+      passedAllTests = false;
+    }
+
+    // Random frames: a batch on the calling thread and on a pool
+    int batchMismatches = 0;
+    int batchSize = 500;
+    BitSequence[] batchFrames = new BitSequence[batchSize];
+    PackedBitSequence[] packedFrames = new PackedBitSequence[batchSize];
+    for(int index = 0; index < batchSize; index++)
+    {
+      batchFrames[index] = randomFrame(random, 1600);
+      packedFrames[index] = PackedBitSequence.fromBitSequence(batchFrames[index]);
+    }
+    ForkJoinPool pool = new ForkJoinPool(4);
+    for(int run = 0; run < 2; run++)
+    {
+      ForkJoinPool runPool = run == 0 ? null : pool;
+      PackedBitSequence[] stuffedFrames = new PackedBitSequence[batchSize];
+      PackedBitSequence[] unstuffedFrames = new PackedBitSequence[batchSize];
+      stuff(packedFrames, stuffedFrames, batchSize, runPool);
+      unstuff(stuffedFrames, unstuffedFrames, batchSize, runPool);
+      for(int index = 0; index < batchSize; index++)
+      {
+        BitSequence expected = stuffBitwise(batchFrames[index]);
+        if(!stuffedFrames[index].toBitSequence().equals(expected))
+          batchMismatches++;
+        if(!unstuffedFrames[index].toBitSequence().equals(unstuffBitwise(expected)))
+          batchMismatches++;
+      }
+    }
+    pool.shutdown();
+    if(batchMismatches == 0)
+    {
+      System.out.println("Passed batch stuff and unstuff of " + batchSize + " random frames, serial and parallel");
+    }
+    else
+    {
+      System.out.println("Failed batch stuff and unstuff: " + batchMismatches + " mismatches");
+      passedAllTests = false;
+    }
+
     // Print out final results
     if(passedTests == totalTests && passedAllTests)//Passed all tests for functions stuff & unstuff
     {
@@ -0,0 +1,422 @@
+/**
+ * Java Network Workbench 2 (JNW2)
+ * Copyright 2013/2017 Networking and Simulation Laboratory/George Mason University
+ *
+ * Description: Stuffing and unstuffing of DLC frames held as packed
+ * bytes, a byte at a time through lookup tables, or as a
+ * PackedBitSequence, scanning 64 bits at a time for runs of ones
+ *
+ * @version 2.2.3
+ */
+
+package JNW2.message;
+
+public final class BitStuffingEngine
+{
+  /**
+   * Stuffing state is the number of ones (0 to 4) at the end of the
+   * bits already stuffed. For each state and input byte the table
+   * holds the output bits (up to 10, since a byte can need two
+   * stuffed zeros) shifted left by 8, the output length shifted
+   * left by 3 and the new state
+   */
+  static final int STUFF_STATES = 5;
+  static final int[] STUFF_TABLE = new int[STUFF_STATES * 256];
+
+  /**
+   * Unstuffing state is the number of ones (0 to 4) at the end of the
+   * bits already read, or UNSTUFF_DROP when the next bit is the
+   * stuffed zero after five ones; same layout as STUFF_TABLE with up
+   * to 8 output bits
+   */
+  static final int UNSTUFF_DROP = 5;
+  static final int UNSTUFF_STATES = 6;
+  static final int[] UNSTUFF_TABLE = new int[UNSTUFF_STATES * 256];
+
+  static
+  {
+    for(int state = 0; state < STUFF_STATES; ++state)
+      for(int inByte = 0; inByte < 256; ++inByte)
+      {
+        int ones = state, bits = 0, length = 0;
+        for(int bit = 7; bit >= 0; --bit)
+        {
+          if(((inByte >>> bit) & 1) == 0)
+          {
+            bits <<= 1;
+            ++length;
+            ones = 0;
+            continue;
+          }
+          bits = (bits << 1) | 1;
+          ++length;
+          if(++ones == 5)
+          {
+            bits <<= 1;
+            ++length;
+            ones = 0;
+          }
+        }
+        STUFF_TABLE[state * 256 + inByte] = bits << 8 | length << 3 | ones;
+      }
+
+    for(int state = 0; state < UNSTUFF_STATES; ++state)
+      for(int inByte = 0; inByte < 256; ++inByte)
+      {
+        int ones = state, bits = 0, length = 0;
+        for(int bit = 7; bit >= 0; --bit)
+        {
+          if(ones == UNSTUFF_DROP)
+          {
+            ones = 0;
+            continue;
+          }
+          if(((inByte >>> bit) & 1) == 0)
+          {
+            bits <<= 1;
+            ones = 0;
+          }
+          else
+          {
+            bits = (bits << 1) | 1;
+            ++ones;
+          }
+          ++length;
+        }
+        UNSTUFF_TABLE[state * 256 + inByte] = bits << 8 | length << 3 | ones;
+      }
+  }
+
+  private BitStuffingEngine()
+  {
+  }
+
+  /**
+   * @return the most bits stuffing a frame of frameBits can produce
+   */
+  public static int maxStuffedBits(int frameBits)
+  {
+    return frameBits + frameBits / 5;
+  }
+
+  /**
+   * Adds a zero after any sequence of 5 ones
+   * @param in - unstuffed frame, packed most significant bit first
+   * @param inBits - number of bits in the frame
+   * @param out - receives the stuffed frame; must hold at least
+   * maxStuffedBits(inBits) bits
+   * @return number of bits in the stuffed frame
+   */
+  public static int stuff(byte[] in, int inBits, byte[] out)
+  {
+    int state = 0, outByte = 0, accBits = 0;
+    long acc = 0;
+    int wholeBytes = inBits >>> 3;
+    for(int index = 0; index < wholeBytes; ++index)
+    {
+      int entry = STUFF_TABLE[state * 256 + (in[index] & 0xff)];
+      int length = (entry >>> 3) & 0x1f;
+      acc = (acc << length) | (entry >>> 8);
+      accBits += length;
+      state = entry & 7;
+      while(accBits >= 8)
+      {
+        accBits -= 8;
+        out[outByte++] = (byte)(acc >>> accBits);
+      }
+    }
+
+    // remaining bits of a partial last byte one at a time
+    for(int bit = wholeBytes << 3; bit < inBits; ++bit)
+    {
+      if(((in[bit >>> 3] >>> (7 - (bit & 7))) & 1) == 0)
+      {
+        acc <<= 1;
+        ++accBits;
+        state = 0;
+      }
+      else
+      {
+        acc = (acc << 1) | 1;
+        ++accBits;
+        if(++state == 5)
+        {
+          acc <<= 1;
+          ++accBits;
+          state = 0;
+        }
+      }
+      while(accBits >= 8)
+      {
+        accBits -= 8;
+        out[outByte++] = (byte)(acc >>> accBits);
+      }
+    }
+    return finish(out, outByte, acc, accBits);
+  }
+
+  /**
+   * Removes the zero after any sequence of 5 ones
+   * @param in - stuffed frame, packed most significant bit first
+   * @param inBits - number of bits in the frame
+   * @param out - receives the unstuffed frame; must hold at least
+   * inBits bits
+   * @return number of bits in the unstuffed frame
+   */
+  public static int unstuff(byte[] in, int inBits, byte[] out)
+  {
+    int state = 0, outByte = 0, accBits = 0;
+    long acc = 0;
+    int wholeBytes = inBits >>> 3;
+    for(int index = 0; index < wholeBytes; ++index)
+    {
+      int entry = UNSTUFF_TABLE[state * 256 + (in[index] & 0xff)];
+      int length = (entry >>> 3) & 0x1f;
+      acc = (acc << length) | (entry >>> 8);
+      accBits += length;
+      state = entry & 7;
+      if(accBits >= 8)
+      {
+        accBits -= 8;
+        out[outByte++] = (byte)(acc >>> accBits);
+      }
+    }
+
+    for(int bit = wholeBytes << 3; bit < inBits; ++bit)
+    {
+      if(state == UNSTUFF_DROP)
+      {
+        state = 0;
+        continue;
+      }
+      if(((in[bit >>> 3] >>> (7 - (bit & 7))) & 1) == 0)
+      {
+        acc <<= 1;
+        state = 0;
+      }
+      else
+      {
+        acc = (acc << 1) | 1;
+        ++state;
+      }
+      if(++accBits == 8)
+      {
+        accBits = 0;
+        out[outByte++] = (byte)acc;
+      }
+    }
+    return finish(out, outByte, acc, accBits);
+  }
+
+  /**
+   * Adds a zero after any sequence of 5 ones
+   * @param in - unstuffed frame
+   * @param out - the stuffed frame is appended to it
+   * @return number of bits appended to out
+   */
+  public static int stuff(PackedBitSequence in, PackedBitSequence out)
+  {
+    int startBits = out.size;
+    stuff(in, 0, in.size, 0, out);
+    return out.size - startBits;
+  }
+
+  /**
+   * Stuffs part of a frame, continuing from the bits stuffed before.
+   * Each 64-bit window is searched for the first run of five ones
+   * with shifts and ANDs; a window with none is copied in one append,
+   * otherwise the bits before the run are copied and the byte holding
+   * it goes through STUFF_TABLE, so long runs of ones cost no more
+   * than the table alone
+   * @param in - unstuffed bits
+   * @param from - first bit of in to stuff
+   * @param count - number of bits to stuff
+   * @param state - number of ones (0 to 4) ending the bits already
+   * stuffed; zero at the start of a frame
+   * @param out - the stuffed bits are appended to it
+   * @return state to continue from
+   */
+  static int stuff(PackedBitSequence in, int from, int count, int state,
+    PackedBitSequence out)
+  {
+    out.ensureCapacity(out.size + maxStuffedBits(count) + 1);
+    int bit = from, end = from + count;
+    while(bit < end)
+    {
+      int length = Math.min(64, end - bit);
+      long window = in.getBits(bit, length) << (64 - length);
+      int runEnd = firstRunEnd(window, state);
+      if(runEnd == 0)
+      {
+        // no stuffing point: copy the window, carry its trailing ones
+        long bits = window >>> (64 - length);
+        out.appendBits(bits, length);
+        int trailingOnes = Long.numberOfTrailingZeros(~bits);
+        state = trailingOnes >= length ? state + length : trailingOnes;
+        bit += length;
+        continue;
+      }
+
+      // bits before the run end in a zero, if there are any
+      int before = runEnd - 5;
+      if(before > 0)
+      {
+        out.appendBits(window >>> (64 - before), before);
+        state = 0;
+        bit += before;
+      }
+      if(end - bit >= 8)
+      {
+        // stay with the table while bytes keep needing stuffing
+        long acc = 0;
+        int accBits = 0, outBits;
+        do
+        {
+          int entry = STUFF_TABLE[state * 256 + (int)in.getBits(bit, 8)];
+          outBits = (entry >>> 3) & 0x1f;
+          if(accBits + outBits > 64)
+          {
+            out.appendBits(acc, accBits);
+            acc = 0;
+            accBits = 0;
+          }
+          acc = (acc << outBits) | (entry >>> 8);
+          accBits += outBits;
+          state = entry & 7;
+          bit += 8;
+        } while(outBits > 8 && end - bit >= 8);
+        out.appendBits(acc, accBits);
+        continue;
+      }
+
+      // remaining bits of a partial last byte one at a time
+      for(; bit < end; ++bit)
+      {
+        if(!in.getValue(bit))
+        {
+          out.appendBits(0, 1);
+          state = 0;
+        }
+        else if(++state == 5)
+        {
+          out.appendBits(2, 2);
+          state = 0;
+        }
+        else
+          out.appendBits(1, 1);
+      }
+    }
+    return state;
+  }
+
+  /**
+   * Removes the zero after any sequence of 5 ones
+   * @param in - stuffed frame
+   * @param out - the unstuffed frame is appended to it
+   * @return number of bits appended to out
+   */
+  public static int unstuff(PackedBitSequence in, PackedBitSequence out)
+  {
+    int startBits = out.size;
+    out.ensureCapacity(startBits + in.size);
+    int state = 0, bit = 0, end = in.size;
+    while(bit < end)
+    {
+      int length = Math.min(64, end - bit);
+      long window = in.getBits(bit, length) << (64 - length);
+      int runEnd = firstRunEnd(window, state);
+      if(runEnd == 0)
+      {
+        long bits = window >>> (64 - length);
+        out.appendBits(bits, length);
+        int trailingOnes = Long.numberOfTrailingZeros(~bits);
+        state = trailingOnes >= length ? state + length : trailingOnes;
+        bit += length;
+        continue;
+      }
+
+      int before = runEnd - 5;
+      if(before > 0)
+      {
+        out.appendBits(window >>> (64 - before), before);
+        state = 0;
+        bit += before;
+      }
+      if(end - bit >= 8)
+      {
+        // stay with the table while bytes keep holding stuffed zeros
+        long acc = 0;
+        int accBits = 0;
+        boolean dropped;
+        do
+        {
+          int entry = UNSTUFF_TABLE[state * 256 + (int)in.getBits(bit, 8)];
+          int outBits = (entry >>> 3) & 0x1f;
+          if(accBits + outBits > 64)
+          {
+            out.appendBits(acc, accBits);
+            acc = 0;
+            accBits = 0;
+          }
+          acc = (acc << outBits) | (entry >>> 8);
+          accBits += outBits;
+          state = entry & 7;
+          bit += 8;
+          dropped = outBits < 8;
+          if(state == UNSTUFF_DROP)
+          {
+            state = 0;
+            ++bit;
+            dropped = true;
+          }
+        } while(dropped && end - bit >= 8);
+        out.appendBits(acc, accBits);
+        continue;
+      }
+
+      for(; bit < end; ++bit)
+      {
+        if(state == UNSTUFF_DROP)
+        {
+          state = 0;
+          continue;
+        }
+        boolean value = in.getValue(bit);
+        state = value ? state + 1 : 0;
+        out.appendBit(value);
+      }
+    }
+    return out.size - startBits;
+  }
+
+  /**
+   * Finds where the ones in a window, following ones already seen,
+   * first make a run of five
+   * @param window - bits, most significant first; bits past the end
+   * of the data must be zero
+   * @param ones - ones (0 to 4) just before the window
+   * @return number of bits of the window up to and including the
+   * fifth one, or zero if the window has no such run
+   */
+  static int firstRunEnd(long window, int ones)
+  {
+    int leadingOnes = Long.numberOfLeadingZeros(~window);
+    if(ones + leadingOnes >= 5)
+      return 5 - ones;
+    long runs = window & (window << 1) & (window << 2) & (window << 3) & (window << 4);
+    return runs == 0 ? 0 : Long.numberOfLeadingZeros(runs) + 5;
+  }
+
+  /**
+   * Writes the bits left in the accumulator, left aligned in the
+   * last byte
+   * @return total number of bits written
+   */
+  private static int finish(byte[] out, int outByte, long acc, int accBits)
+  {
+    if(accBits > 0)
+      out[outByte] = (byte)(acc << (8 - accBits));
+    return (outByte << 3) + accBits;
+  }
+
+}// end class BitStuffingEngine
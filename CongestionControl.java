@@ -0,0 +1,270 @@
+/**
+ * Java Network Workbench 2 (JNW2)
+ * Copyright 2013-2018 Networking and Simulation Laboratory/George Mason University
+ *
+ * Congestion control for the reliable transport: keeps the congestion
+ * window and slow start threshold of one connection, in characters,
+ * from the ACKs, duplicate ACKs and timeouts SendSegments sees.
+ * TL_SEGMENT_DATA_SIZE stands in for the MSS.
+ *
+ * @version 2.2.7
+ */
+
+package JNW2.message;
+
+import static JNW2.Constants.*;
+
+public interface CongestionControl
+{
+  /**
+   * Starts a new transfer
+   * @param initialWindow - congestion window to start with
+   * @param slowStartThreshold - slow start ends at this window
+   */
+  void reset(int initialWindow, int slowStartThreshold);
+
+  /**
+   * An ACK moved sendWindowStart forward
+   * @param windowStart - sendWindowStart after the ACK
+   * @param bytesAcked - characters newly ACKed
+   * @param nowTicks - simulation time
+   * @return true to send the segment at windowStart again now, as
+   *         after a partial ACK in NewReno fast recovery
+   */
+  boolean newAck(long windowStart, long bytesAcked, long nowTicks);
+
+  /**
+   * An ACK left sendWindowStart where it was
+   * @param highestSent - lastCharSent when the ACK arrived
+   * @param nowTicks - simulation time
+   * @return true to send the segment at sendWindowStart again now:
+   *         fast retransmit, as this ACK started fast recovery
+   */
+  boolean duplicateAck(long highestSent, long nowTicks);
+
+  /**
+   * A segment timed out waiting for its ACK
+   * @param nowTicks - simulation time
+   */
+  void timeout(long nowTicks);
+
+  int getCongestionWindow();
+
+  int getSlowStartThreshold();
+
+  /**
+   * Slow start, AIMD congestion avoidance and fast retransmit on the
+   * third duplicate ACK; the window is cut to half, inflated by each
+   * further duplicate, and fast recovery ends on the first new ACK
+   */
+  class Reno implements CongestionControl
+  {
+    static final int DUPLICATE_ACK_THRESHOLD = 3;
+
+    double congestionWindow = TL_SEGMENT_DATA_SIZE;
+    int slowStartThreshold = TL_SLOW_START_THRESHOLD;
+    int duplicateAcks = 0;
+    boolean inFastRecovery = false;
+
+    /**
+     * lastCharSent when fast recovery began; it ends for NewReno
+     * only once everything up to here is ACKed
+     */
+    long recover = 0;
+
+    public void reset(int initialWindow, int slowStartThreshold)
+    {
+      congestionWindow = initialWindow;
+      this.slowStartThreshold = slowStartThreshold;
+      duplicateAcks = 0;
+      inFastRecovery = false;
+      recover = 0;
+    }
+
+    public boolean newAck(long windowStart, long bytesAcked, long nowTicks)
+    {
+      duplicateAcks = 0;
+      if(inFastRecovery)
+      {
+        if(partialAck(windowStart, bytesAcked))
+          return true;
+        // deflate the window
+        inFastRecovery = false;
+        congestionWindow = slowStartThreshold;
+        return false;
+      }
+      if(congestionWindow < slowStartThreshold)
+        congestionWindow += bytesAcked; // doubles each round trip
+      else
+        increase(bytesAcked, nowTicks);
+      return false;
+    }
+
+    /**
+     * @return true to stay in fast recovery after an ACK that does
+     * not cover all data sent before the loss, and send the next
+     * missing segment; Reno never does
+     */
+    boolean partialAck(long windowStart, long bytesAcked)
+    {
+      return false;
+    }
+
+    /**
+     * Congestion avoidance: one segment per round trip
+     */
+    void increase(long bytesAcked, long nowTicks)
+    {
+      congestionWindow += (double)TL_SEGMENT_DATA_SIZE * bytesAcked / congestionWindow;
+    }
+
+    /**
+     * @return slow start threshold after a loss
+     */
+    int decrease(long nowTicks)
+    {
+      return Math.max((int)(congestionWindow / 2), 2 * TL_SEGMENT_DATA_SIZE);
+    }
+
+    public boolean duplicateAck(long highestSent, long nowTicks)
+    {
+      if(inFastRecovery)
+      {
+        // a segment left the network
+        congestionWindow += TL_SEGMENT_DATA_SIZE;
+        return false;
+      }
+      if(++duplicateAcks < DUPLICATE_ACK_THRESHOLD)
+        return false;
+      slowStartThreshold = decrease(nowTicks);
+      congestionWindow = slowStartThreshold + DUPLICATE_ACK_THRESHOLD * TL_SEGMENT_DATA_SIZE;
+      inFastRecovery = true;
+      recover = highestSent;
+      return true;
+    }
+
+    public void timeout(long nowTicks)
+    {
+      slowStartThreshold = decrease(nowTicks);
+      congestionWindow = TL_SEGMENT_DATA_SIZE;
+      duplicateAcks = 0;
+      inFastRecovery = false;
+    }
+
+    public int getCongestionWindow()
+    {
+      return (int)congestionWindow;
+    }
+
+    public int getSlowStartThreshold()
+    {
+      return slowStartThreshold;
+    }
+  }// end class Reno
+
+  /**
+   * Reno with NewReno fast recovery: an ACK that covers only part of
+   * the data sent before the loss means another segment was lost, so
+   * recovery goes on, taking one segment off for each segment ACKed
+   */
+  class NewReno extends Reno
+  {
+    boolean partialAck(long windowStart, long bytesAcked)
+    {
+      if(windowStart > recover)
+        return false;
+      congestionWindow = Math.max(TL_SEGMENT_DATA_SIZE,
+        congestionWindow - bytesAcked + TL_SEGMENT_DATA_SIZE);
+      return true;
+    }
+  }// end class NewReno
+
+  /**
+   * CUBIC: in congestion avoidance the window follows a cubic function
+   * of the time since the last loss, flat near the window where that
+   * loss happened and growing fast away from it, so it refills a long
+   * fat pipe in real time rather than one segment per round trip. It
+   * never grows slower than Reno would. Recovery is as in NewReno.
+   */
+  class Cubic extends NewReno
+  {
+    static final double C = 0.4;
+    static final double BETA = 0.7;
+
+    final double ticksPerSecond;
+
+    // window before the last loss, and when growth since it began
+    double maxWindow = 0.0;
+    long epochStartTicks = -1;
+    double cubicK = 0.0;
+    double originWindow = 0.0;
+
+    // window Reno would have now, in segments
+    double renoWindow = 0.0;
+
+    /**
+     * @param ticksPerSecond - simulation ticks in a second; the cubic
+     * function is in seconds
+     */
+    public Cubic(double ticksPerSecond)
+    {
+      this.ticksPerSecond = ticksPerSecond;
+    }
+
+    public void reset(int initialWindow, int slowStartThreshold)
+    {
+      super.reset(initialWindow, slowStartThreshold);
+      maxWindow = 0.0;
+      epochStartTicks = -1;
+    }
+
+    void increase(long bytesAcked, long nowTicks)
+    {
+      double segments = congestionWindow / TL_SEGMENT_DATA_SIZE;
+      if(epochStartTicks < 0)
+      {
+        epochStartTicks = nowTicks;
+        double maxSegments = maxWindow / TL_SEGMENT_DATA_SIZE;
+        if(segments < maxSegments)
+        {
+          cubicK = Math.cbrt((maxSegments - segments) / C);
+          originWindow = maxSegments;
+        }
+        else
+        {
+          cubicK = 0.0;
+          originWindow = segments;
+        }
+        renoWindow = segments;
+      }
+      double t = (nowTicks - epochStartTicks) / ticksPerSecond;
+      double target = originWindow + C * Math.pow(t - cubicK, 3);
+      // RFC 8312 4.1: no more than half a window of growth per RTT,
+      // however far the cubic is above the window
+      target = Math.min(target, 1.5 * segments);
+
+      // Reno's growth, for the same average window under the same loss
+      renoWindow += 3.0 * (1.0 - BETA) / (1.0 + BETA) * bytesAcked / congestionWindow;
+      target = Math.max(target, renoWindow);
+
+      double ackedSegments = (double)bytesAcked / TL_SEGMENT_DATA_SIZE;
+      if(target > segments)
+        segments += (target - segments) / segments * ackedSegments;
+      else
+        segments += 0.01 / segments * ackedSegments;
+      congestionWindow = segments * TL_SEGMENT_DATA_SIZE;
+    }
+
+    int decrease(long nowTicks)
+    {
+      epochStartTicks = -1;
+      // fast convergence: give up more room while the window shrinks
+      if(congestionWindow < maxWindow)
+        maxWindow = congestionWindow * (1.0 + BETA) / 2.0;
+      else
+        maxWindow = congestionWindow;
+      return Math.max((int)(congestionWindow * BETA), 2 * TL_SEGMENT_DATA_SIZE);
+    }
+  }// end class Cubic
+
+}// end interface CongestionControl
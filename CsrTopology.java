@@ -0,0 +1,273 @@
+/**
+ * Java Network Workbench 2 (JNW2)
+ * Copyright 2013-2018 Networking and Simulation Laboratory/George Mason University
+ *
+ * Compressed sparse row view of the WAN links: for each router the
+ * usable links out of it, stored in three flat primitive arrays
+ *
+ * @version 2.2.7
+ */
+
+package JNW2.utility;
+
+import JNW2.*;
+import static JNW2.Constants.*;
+
+public class CsrTopology
+{
+  /**
+   * Links out of router r are link numbers offsets[r] up to (not
+   * including) offsets[r+1]; each link has the router at its far end
+   * in neighbors (ascending within a router) and its cost in costs
+   */
+  final int numberOfSubnets;
+  final int[] offsets;
+  final int[] neighbors;
+  final float[] costs;
+
+  /**
+   * Links into each router, built on first use: links into router r
+   * are inLinks[inOffsets[r]] up to inLinks[inOffsets[r+1]-1], and
+   * inSources holds the router each of those comes from
+   */
+  int[] inOffsets;
+  int[] inLinks;
+  int[] inSources;
+
+  /**
+   * Smallest cost given to a link from a cost model, so that a very
+   * fast link is not mistaken for a missing one
+   */
+  static final float MIN_MODEL_COST = 0.001f;
+
+  /**
+   * @param numberOfSubnets - routers are numbered 1 to numberOfSubnets
+   * @param offsets - first link of each router, length numberOfSubnets+2
+   * @param neighbors - far-end router of each link
+   * @param costs - cost of each link
+   */
+  public CsrTopology(int numberOfSubnets, int[] offsets, int[] neighbors, float[] costs)
+  {
+    this.numberOfSubnets = numberOfSubnets;
+    this.offsets = offsets;
+    this.neighbors = neighbors;
+    this.costs = costs;
+  }
+
+  /**
+   * Builds the view from the simulation's ConnectivityMatrix
+   * @return topology of the current simulation
+   * @throws Exception
+   */
+  public static CsrTopology fromSimulation() throws Exception
+  {
+    return fromSimulation(false);
+  }
+
+  /**
+   * Builds the view from the simulation's ConnectivityMatrix
+   * @param keepDownLinks - see fromConnectivityMatrix()
+   * @return topology of the current simulation
+   * @throws Exception
+   */
+  public static CsrTopology fromSimulation(boolean keepDownLinks) throws Exception
+  {
+    SimulationEngine simEngine = SimulationEngine.getInstance();
+    return fromConnectivityMatrix(simEngine.getConnectivityMatrix(),
+      simEngine.getTopology().getNumberOfSubnets(), keepDownLinks);
+  }
+
+  /**
+   * Reads every link out of a ConnectivityMatrix once; links with
+   * cost zero or HUGEFLOAT are not usable, as in BellmanFordRouting
+   * @throws Exception
+   */
+  public static CsrTopology fromConnectivityMatrix(
+    ConnectivityMatrix cm,
+    int numberOfSubnets) throws Exception
+  {
+    return fromConnectivityMatrix(cm, numberOfSubnets, false);
+  }
+
+  /**
+   * Reads every link out of a ConnectivityMatrix once
+   * @param keepDownLinks - false to leave out every link that is not
+   * usable; true to keep links that are down (cost HUGEFLOAT) with
+   * cost HUGEFLOAT, so their cost can be changed when they come up.
+   * Pairs with cost zero have no link either way.
+   * @throws Exception
+   */
+  public static CsrTopology fromConnectivityMatrix(
+    ConnectivityMatrix cm,
+    int numberOfSubnets,
+    boolean keepDownLinks) throws Exception
+  {
+    int[] offsets = new int[numberOfSubnets+2];
+    int[] neighbors = new int[4*numberOfSubnets];
+    float[] costs = new float[4*numberOfSubnets];
+    int linkCount = 0;
+    for(int fromRouter = 1; fromRouter <= numberOfSubnets; ++fromRouter)
+    {
+      offsets[fromRouter] = linkCount;
+      for(int toRouter = 1; toRouter <= numberOfSubnets; ++toRouter)
+      {
+        if(toRouter == fromRouter) continue;
+        float linkCost = cm.connectionCost(fromRouter, toRouter);
+        if(keepDownLinks && linkCost >= HUGEFLOAT)
+          linkCost = HUGEFLOAT;
+        else if(!isUsable(linkCost))
+          continue;
+        if(linkCount == neighbors.length)
+        {
+          neighbors = java.util.Arrays.copyOf(neighbors, 2*linkCount);
+          costs = java.util.Arrays.copyOf(costs, 2*linkCount);
+        }
+        neighbors[linkCount] = toRouter;
+        costs[linkCount] = linkCost;
+        ++linkCount;
+      }
+    }
+    offsets[numberOfSubnets+1] = linkCount;
+    return new CsrTopology(numberOfSubnets, offsets,
+      java.util.Arrays.copyOf(neighbors, linkCount),
+      java.util.Arrays.copyOf(costs, linkCount));
+  }
+
+  /**
+   * Builds the view from the <links> matrix, taking each link's
+   * cost from a cost model instead of ConnectivityMatrix
+   * @param links - data rate in kb/s between each pair of routers,
+   * zero if none
+   * @throws Exception
+   */
+  public static CsrTopology fromLinksMatrix(int[][] links,
+    int numberOfSubnets, LinkCostModel costModel) throws Exception
+  {
+    int[] offsets = new int[numberOfSubnets+2];
+    int linkCount = 0;
+    for(int fromRouter = 1; fromRouter <= numberOfSubnets; ++fromRouter)
+      for(int toRouter = 1; toRouter <= numberOfSubnets; ++toRouter)
+        if(toRouter != fromRouter && links[fromRouter][toRouter] > 0)
+          ++linkCount;
+    int[] neighbors = new int[linkCount];
+    linkCount = 0;
+    for(int fromRouter = 1; fromRouter <= numberOfSubnets; ++fromRouter)
+    {
+      offsets[fromRouter] = linkCount;
+      for(int toRouter = 1; toRouter <= numberOfSubnets; ++toRouter)
+        if(toRouter != fromRouter && links[fromRouter][toRouter] > 0)
+          neighbors[linkCount++] = toRouter;
+    }
+    offsets[numberOfSubnets+1] = linkCount;
+    CsrTopology csr = new CsrTopology(numberOfSubnets, offsets,
+      neighbors, new float[linkCount]);
+    csr.applyCostModel(costModel);
+    return csr;
+  }
+
+  /**
+   * @return true if a link cost denotes a usable link
+   */
+  public static boolean isUsable(float linkCost)
+  {
+    return linkCost >= 0.0001 && linkCost < HUGEFLOAT;
+  }
+
+  /**
+   * @return a copy whose link costs can be changed independently
+   */
+  public CsrTopology copy()
+  {
+    return new CsrTopology(numberOfSubnets, offsets, neighbors, costs.clone());
+  }
+
+  public int getNumberOfSubnets()
+  {
+    return numberOfSubnets;
+  }
+
+  public int getNumberOfLinks()
+  {
+    return neighbors.length;
+  }
+
+  public int getDegree(int router)
+  {
+    return offsets[router+1] - offsets[router];
+  }
+
+  /**
+   * @return link number of the link from fromRouter to toRouter, or -1
+   */
+  public int findLink(int fromRouter, int toRouter)
+  {
+    int link = java.util.Arrays.binarySearch(neighbors,
+      offsets[fromRouter], offsets[fromRouter+1], toRouter);
+    return link >= 0 ? link : -1;
+  }
+
+  public float getCost(int link)
+  {
+    return costs[link];
+  }
+
+  /**
+   * Changes the cost of a link; HUGEFLOAT marks it down
+   */
+  public void setCost(int link, float linkCost)
+  {
+    costs[link] = linkCost;
+  }
+
+  /**
+   * Cost a cost model gives a link, kept within the range routing
+   * treats as usable unless the model reports the link down
+   * @throws Exception
+   */
+  public float modelCost(int fromRouter, int link, LinkCostModel costModel)
+    throws Exception
+  {
+    float linkCost = costModel.linkCost(fromRouter, neighbors[link]);
+    if(linkCost >= HUGEFLOAT) return HUGEFLOAT;
+    return Math.max(linkCost, MIN_MODEL_COST);
+  }
+
+  /**
+   * Replaces the cost of every link with the cost model's
+   * @throws Exception
+   */
+  public void applyCostModel(LinkCostModel costModel) throws Exception
+  {
+    for(int fromRouter = 1; fromRouter <= numberOfSubnets; ++fromRouter)
+      for(int link = offsets[fromRouter]; link < offsets[fromRouter+1]; ++link)
+        costs[link] = modelCost(fromRouter, link, costModel);
+  }
+
+  /**
+   * Builds the links-into-router arrays if not already built
+   */
+  void buildInLinks()
+  {
+    if(inOffsets != null) return;
+    int[] counts = new int[numberOfSubnets+2];
+    for(int link = 0; link < neighbors.length; ++link)
+      ++counts[neighbors[link]];
+    int[] starts = new int[numberOfSubnets+2];
+    for(int router = 1; router <= numberOfSubnets; ++router)
+      starts[router+1] = starts[router] + counts[router];
+    int[] links = new int[neighbors.length];
+    int[] sources = new int[neighbors.length];
+    int[] next = starts.clone();
+    for(int fromRouter = 1; fromRouter <= numberOfSubnets; ++fromRouter)
+      for(int link = offsets[fromRouter]; link < offsets[fromRouter+1]; ++link)
+      {
+        int slot = next[neighbors[link]]++;
+        links[slot] = link;
+        sources[slot] = fromRouter;
+      }
+    inLinks = links;
+    inSources = sources;
+    inOffsets = starts;
+  }
+
+}// end class CsrTopology
@@ -13,7 +13,7 @@ import JNW2.*;
 import static JNW2.Constants.*;
 import JNW2.parsers.*;
 
-public class DijkstraRouting
+public class DijkstraRouting implements RoutingRowEngine
 {
   // simulation environment
   SimulationEngine simEngine = SimulationEngine.getInstance();
@@ -52,11 +52,39 @@ public class DijkstraRouting
     // return to composite
     return routingMatrix;
   }
+
+  /**
+   * Builds a routing table, computing rows in parallel
+   * @param parallelism - number of worker threads (zero or less for
+   * one per processor)
+   * @return routingMatrix
+   * @throws Exception
+   */
+  public int[][] computeRoutingMatrix(int parallelism) throws Exception
+  {
+    ParallelRouting parallelRouting = new ParallelRouting(parallelism);
+    return parallelRouting.computeRoutingMatrix(numberOfSubnets,
+      new ParallelRouting.EngineFactory()
+      {
+        public RoutingRowEngine newEngine()
+        {
+          return new DijkstraRouting();
+        }
+      }, "Dijkstra");
+  }
+
+  /**
+   * @return count of times through the inner loop
+   */
+  public int getInnerLoopCount()
+  {
+    return innerLoopCount;
+  }
   
   /**
    * Builds a row in a routing table
    */
-  private int[] computeRoutingRow(int sourceRouter) throws Exception
+  public int[] computeRoutingRow(int sourceRouter) throws Exception
   {
     
     /**
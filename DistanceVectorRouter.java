@@ -0,0 +1,191 @@
+/**
+ * Java Network Workbench 2 (JNW2)
+ * Copyright 2013-2018 Networking and Simulation Laboratory/George Mason University
+ *
+ * Distance-vector routing state of one router: the vectors last heard
+ * from each neighbor and the best cost and next hop they give
+ *
+ * @version 2.2.7
+ */
+
+package JNW2.utility;
+
+public class DistanceVectorRouter
+{
+  // instance variables
+  final int routerNumber;
+  final int numberOfSubnets;
+  final float infinityCost;
+
+  /**
+   * Links out of this router: neighbor router and current link cost
+   * (infinityCost while the link is down)
+   */
+  final int[] neighbors;
+  final float[] linkCosts;
+
+  /**
+   * Sparse table: heardCosts[link][destRouter] is the cost the neighbor
+   * on that link last advertised, so memory is O(degree x destinations)
+   */
+  final float[][] heardCosts;
+
+  /**
+   * Best cost and next-hop router for each destination
+   */
+  final float[] C;
+  final int[] forwardRouters;
+
+  /**
+   * Destinations whose cost or next hop changed since the last update
+   * was sent; an update is pending while changedCount is above zero
+   */
+  final boolean[] changed;
+  final int[] changedRouters;
+  int changedCount = 0;
+  boolean updateScheduled = false;
+
+  /**
+   * Links that need the whole vector in the next update because
+   * they have just come up
+   */
+  final boolean[] fullUpdateDue;
+
+  /**
+   * Incremented every time the table changes
+   */
+  long tableVersion = 0;
+
+  /**
+   * @param routerNumber - subnet number of this router
+   * @param numberOfSubnets - number of destinations
+   * @param neighbors - routers at the other end of each exit link
+   * @param linkCosts - cost of each exit link
+   * @param infinityCost - cost at or above which a route is unusable
+   */
+  DistanceVectorRouter(int routerNumber, int numberOfSubnets,
+    int[] neighbors, float[] linkCosts, float infinityCost)
+  {
+    this.routerNumber = routerNumber;
+    this.numberOfSubnets = numberOfSubnets;
+    this.neighbors = neighbors;
+    this.linkCosts = linkCosts;
+    this.infinityCost = infinityCost;
+    heardCosts = new float[neighbors.length][numberOfSubnets+1];
+    C = new float[numberOfSubnets+1];
+    forwardRouters = new int[numberOfSubnets+1];
+    changed = new boolean[numberOfSubnets+1];
+    changedRouters = new int[numberOfSubnets];
+    fullUpdateDue = new boolean[neighbors.length];
+
+    // nothing heard yet; only this router is reachable, so the
+    // first update advertises just this router
+    for(int link = 0; link < neighbors.length; ++link)
+      java.util.Arrays.fill(heardCosts[link], infinityCost);
+    java.util.Arrays.fill(C, infinityCost);
+    C[routerNumber] = 0;
+    forwardRouters[routerNumber] = routerNumber;
+    markChanged(routerNumber);
+  }
+
+  /**
+   * @return index of the link to neighborRouter, or -1
+   */
+  int findLink(int neighborRouter)
+  {
+    for(int link = 0; link < neighbors.length; ++link)
+      if(neighbors[link] == neighborRouter) return link;
+    return -1;
+  }
+
+  /**
+   * Stores part of a vector received over a link and recomputes the
+   * destinations it covers
+   * @return count of inner loop passes
+   */
+  int receiveVector(int link, int[] destRouters, float[] costs, int count)
+  {
+    for(int entry = 0; entry < count; ++entry)
+      heardCosts[link][destRouters[entry]] = costs[entry];
+    int loops = 0;
+    for(int entry = 0; entry < count; ++entry)
+      loops += recompute(destRouters[entry]);
+    return loops;
+  }
+
+  /**
+   * Changes the cost of an exit link and recomputes every destination
+   * @return count of inner loop passes
+   */
+  int changeLinkCost(int link, float newCost)
+  {
+    if(linkCosts[link] >= infinityCost && newCost < infinityCost)
+      fullUpdateDue[link] = true;
+    linkCosts[link] = Math.min(newCost, infinityCost);
+    if(newCost >= infinityCost)
+      java.util.Arrays.fill(heardCosts[link], infinityCost);
+    int loops = 0;
+    for(int destRouter = 1; destRouter <= numberOfSubnets; ++destRouter)
+      loops += recompute(destRouter);
+    return loops;
+  }
+
+  /**
+   * Bellman-Ford step for one destination: best over all links of
+   * link cost plus advertised cost
+   * @return count of inner loop passes
+   */
+  int recompute(int destRouter)
+  {
+    if(destRouter == routerNumber) return 0;
+    float bestCost = infinityCost;
+    int bestRouter = 0;
+    for(int link = 0; link < neighbors.length; ++link)
+    {
+      float possibleCost = linkCosts[link] + heardCosts[link][destRouter];
+      if(possibleCost < bestCost)
+      {
+        bestCost = possibleCost;
+        bestRouter = neighbors[link];
+      }
+    }
+    if(bestCost != C[destRouter] || bestRouter != forwardRouters[destRouter])
+    {
+      C[destRouter] = bestCost;
+      forwardRouters[destRouter] = bestRouter;
+      ++tableVersion;
+      markChanged(destRouter);
+    }
+    return neighbors.length;
+  }
+
+  private void markChanged(int destRouter)
+  {
+    if(changed[destRouter]) return;
+    changed[destRouter] = true;
+    changedRouters[changedCount++] = destRouter;
+  }
+
+  /**
+   * @return true if an update needs to be sent
+   */
+  boolean updateDue()
+  {
+    if(changedCount > 0) return true;
+    for(int link = 0; link < neighbors.length; ++link)
+      if(fullUpdateDue[link]) return true;
+    return false;
+  }
+
+  /**
+   * Clears the changed set once an update has been sent
+   */
+  void clearChanged()
+  {
+    for(int entry = 0; entry < changedCount; ++entry)
+      changed[changedRouters[entry]] = false;
+    changedCount = 0;
+    java.util.Arrays.fill(fullUpdateDue, false);
+  }
+
+}// end class DistanceVectorRouter
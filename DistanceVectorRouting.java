@@ -0,0 +1,443 @@
+/**
+ * Java Network Workbench 2 (JNW2)
+ * Copyright 2013-2018 Networking and Simulation Laboratory/George Mason University
+ *
+ * Distributed distance-vector (Bellman-Ford) routing: each router
+ * learns routes only from vector packets its neighbors send over their
+ * links, so convergence time and control-plane traffic can be measured
+ *
+ * @version 2.2.7
+ */
+
+package JNW2.utility;
+
+import JNW2.*;
+import static JNW2.Constants.*;
+import JNW2.parsers.*;
+
+public class DistanceVectorRouting
+{
+  // simulation environment
+  SimulationEngine simEngine = SimulationEngine.getInstance();
+  ConnectivityMatrix cm = simEngine.getConnectivityMatrix();
+  Topology topology = simEngine.getTopology();
+  static SimLogger simLogger = SimLogger.getInstance(SimLogger.INFO);
+
+  // instance variables
+  int numberOfSubnets = topology.getNumberOfSubnets();
+  static String configFileName;
+
+  /**
+   * Control-plane time is in microsecond ticks
+   */
+  public static final long TICKS_PER_SECOND = 1000000;
+
+  /**
+   * Size of a vector packet: fixed header plus one
+   * (destination, cost) entry per router advertised
+   */
+  public static final int HEADER_BITS = 160;
+  public static final int ENTRY_BITS = 64;
+
+  // protocol parameters
+  int maxEntriesPerPacket = 64;
+  long triggerDelayTicks = 1000;
+  long propagationDelayTicks = 1000;
+  boolean splitHorizon = true;
+  boolean poisonReverse = true;
+
+  /**
+   * One router per subnet, and the data rate (kb/s) and time each
+   * router's exit link is busy until (same order as its neighbors)
+   */
+  DistanceVectorRouter[] routers;
+  int[][] linkDataRates;
+  long[][] linkBusyUntil;
+  float infinityCost;
+
+  /**
+   * Vector packets and link changes are events on this queue, which
+   * run() drives to completion; the simulation's DES never runs it,
+   * so the control plane converges between simulation runs rather
+   * than alongside the data traffic
+   */
+  LocalEventQueue events = new LocalEventQueue();
+
+  // statistics for the current run
+  long startTicks = 0;
+  long lastChangeTicks = 0;
+  long packetsSent = 0;
+  long entriesSent = 0;
+  long bitsSent = 0;
+  long innerLoopCount = 0;
+
+  /**
+   * @param links - data rate in kb/s of the link between each pair of
+   * routers, zero if none (the matrix given to Topology.setLinksMatrix);
+   * link costs come from ConnectivityMatrix.connectionCost()
+   * @throws Exception
+   */
+  public DistanceVectorRouting(int[][] links) throws Exception
+  {
+    routers = new DistanceVectorRouter[numberOfSubnets+1];
+    linkDataRates = new int[numberOfSubnets+1][];
+    linkBusyUntil = new long[numberOfSubnets+1][];
+
+    // collect exit links; infinity is longer than any loop-free path
+    int[][] neighbors = new int[numberOfSubnets+1][];
+    float[][] linkCosts = new float[numberOfSubnets+1][];
+    float maxLinkCost = 0;
+    int[] rowNeighbors = new int[numberOfSubnets];
+    float[] rowCosts = new float[numberOfSubnets];
+    for(int fromRouter = 1; fromRouter <= numberOfSubnets; ++fromRouter)
+    {
+      int degree = 0;
+      for(int toRouter = 1; toRouter <= numberOfSubnets; ++toRouter)
+      {
+        if(toRouter == fromRouter || links[fromRouter][toRouter] <= 0) continue;
+        float linkCost = cm.connectionCost(fromRouter, toRouter);
+        if(linkCost < 0.0001 || linkCost >= HUGEFLOAT) continue;
+        rowNeighbors[degree] = toRouter;
+        rowCosts[degree] = linkCost;
+        maxLinkCost = Math.max(maxLinkCost, linkCost);
+        ++degree;
+      }
+      neighbors[fromRouter] = java.util.Arrays.copyOf(rowNeighbors, degree);
+      linkCosts[fromRouter] = java.util.Arrays.copyOf(rowCosts, degree);
+      linkDataRates[fromRouter] = new int[degree];
+      for(int link = 0; link < degree; ++link)
+        linkDataRates[fromRouter][link] = links[fromRouter][rowNeighbors[link]];
+      linkBusyUntil[fromRouter] = new long[degree];
+    }
+    infinityCost = maxLinkCost * (numberOfSubnets + 1);
+
+    for(int router = 1; router <= numberOfSubnets; ++router)
+      routers[router] = new DistanceVectorRouter(router, numberOfSubnets,
+        neighbors[router], linkCosts[router], infinityCost);
+  }
+
+  /**
+   * Sets how updates are built
+   * @param maxEntriesPerPacket - vector entries batched in one packet
+   * @param triggerDelayTicks - wait after a change so further changes
+   * go in the same update
+   * @param splitHorizon - do not advertise a route to its next hop
+   * @param poisonReverse - advertise such routes as infinite instead
+   */
+  public void setUpdatePolicy(int maxEntriesPerPacket, long triggerDelayTicks,
+    boolean splitHorizon, boolean poisonReverse)
+  {
+    this.maxEntriesPerPacket = Math.max(1, maxEntriesPerPacket);
+    this.triggerDelayTicks = triggerDelayTicks;
+    this.splitHorizon = splitHorizon;
+    this.poisonReverse = poisonReverse;
+  }
+
+  public void setPropagationDelayTicks(long propagationDelayTicks)
+  {
+    this.propagationDelayTicks = propagationDelayTicks;
+  }
+
+  /**
+   * Starts every router at once and runs until no more vector
+   * packets are in flight
+   * @return routingMatrix the routers converged on
+   * @throws Exception
+   */
+  public int[][] computeRoutingMatrix() throws Exception
+  {
+    for(int router = 1; router <= numberOfSubnets; ++router)
+      scheduleUpdate(routers[router]);
+    run();
+    return getRoutingMatrix();
+  }
+
+  /**
+   * Schedules a change of cost of the link between two routers,
+   * in both directions; zero or HUGEFLOAT takes the link down
+   * @throws Exception if there is no such link
+   */
+  public void scheduleLinkChange(final int routerA, final int routerB,
+    final float newCost, long atTicks) throws Exception
+  {
+    final int linkA = routers[routerA].findLink(routerB);
+    final int linkB = routers[routerB].findLink(routerA);
+    if(linkA < 0 || linkB < 0)
+      throw new Exception("no link between router " + routerA +
+        " and router " + routerB);
+    final float cost = (newCost < 0.0001 || newCost >= HUGEFLOAT) ? infinityCost : newCost;
+    events.schedule(new LocalEventQueue.TimedEvent()
+    {
+      public void fire()
+      {
+        changeLinkCost(routers[routerA], linkA, cost);
+        changeLinkCost(routers[routerB], linkB, cost);
+      }
+    }, atTicks);
+  }
+
+  /**
+   * Runs until no more events are scheduled and logs convergence
+   * time and control-plane traffic for this run
+   * @return ticks from the start of the run to the last table change
+   * @throws Exception
+   */
+  public long run() throws Exception
+  {
+    startTicks = events.getTimeInTicks();
+    lastChangeTicks = startTicks;
+    packetsSent = entriesSent = bitsSent = innerLoopCount = 0;
+    while(events.nextEvent());
+
+    long convergenceTicks = lastChangeTicks - startTicks;
+    simLogger.logInfo("Distance-vector converged in " + convergenceTicks +
+      " ticks, packets:" + packetsSent + " entries:" + entriesSent +
+      " bits:" + bitsSent + " inner loop count:" + innerLoopCount);
+    return convergenceTicks;
+  }
+
+  private void changeLinkCost(DistanceVectorRouter router, int link, float cost)
+  {
+    long oldVersion = router.tableVersion;
+    innerLoopCount += router.changeLinkCost(link, cost);
+    afterReceive(router, oldVersion);
+  }
+
+  /**
+   * Records a table change and triggers an update if needed
+   */
+  private void afterReceive(DistanceVectorRouter router, long oldVersion)
+  {
+    if(router.tableVersion != oldVersion)
+      lastChangeTicks = events.getTimeInTicks();
+    if(router.updateDue())
+      scheduleUpdate(router);
+  }
+
+  private void scheduleUpdate(final DistanceVectorRouter router)
+  {
+    if(router.updateScheduled) return;
+    router.updateScheduled = true;
+    events.schedule(new LocalEventQueue.TimedEvent()
+    {
+      public void fire()
+      {
+        sendUpdate(router);
+      }
+    }, events.getTimeInTicks() + triggerDelayTicks);
+  }
+
+  /**
+   * Sends the changed part of a router's vector to each neighbor,
+   * batching up to maxEntriesPerPacket entries per packet
+   */
+  private void sendUpdate(DistanceVectorRouter router)
+  {
+    router.updateScheduled = false;
+    int[] destRouters = new int[maxEntriesPerPacket];
+    float[] costs = new float[maxEntriesPerPacket];
+    for(int link = 0; link < router.neighbors.length; ++link)
+    {
+      if(router.linkCosts[link] >= infinityCost) continue;
+      int neighborRouter = router.neighbors[link];
+      boolean fullUpdate = router.fullUpdateDue[link];
+      int entryCount = fullUpdate ? numberOfSubnets : router.changedCount;
+      int count = 0;
+      for(int entry = 0; entry < entryCount; ++entry)
+      {
+        int destRouter = fullUpdate ? entry + 1 : router.changedRouters[entry];
+        float cost = router.C[destRouter];
+        if(router.forwardRouters[destRouter] == neighborRouter
+          && destRouter != neighborRouter)
+        {
+          if(poisonReverse) cost = infinityCost;
+          else if(splitHorizon) continue;
+        }
+        destRouters[count] = destRouter;
+        costs[count] = cost;
+        if(++count == maxEntriesPerPacket)
+        {
+          sendPacket(router, link, destRouters, costs, count);
+          destRouters = new int[maxEntriesPerPacket];
+          costs = new float[maxEntriesPerPacket];
+          count = 0;
+        }
+      }
+      if(count > 0)
+      {
+        sendPacket(router, link, destRouters, costs, count);
+        destRouters = new int[maxEntriesPerPacket];
+        costs = new float[maxEntriesPerPacket];
+      }
+    }
+    router.clearChanged();
+  }
+
+  /**
+   * Queues a vector packet on an exit link; it arrives after the
+   * link has sent any earlier packets, its own bits, and propagated
+   */
+  private void sendPacket(final DistanceVectorRouter router, int link,
+    final int[] destRouters, final float[] costs, final int count)
+  {
+    int packetBits = HEADER_BITS + count * ENTRY_BITS;
+    long transmitTicks = Math.max(1,
+      packetBits * TICKS_PER_SECOND / (linkDataRates[router.routerNumber][link] * 1000L));
+    long sendTicks = Math.max(events.getTimeInTicks(),
+      linkBusyUntil[router.routerNumber][link]);
+    linkBusyUntil[router.routerNumber][link] = sendTicks + transmitTicks;
+
+    ++packetsSent;
+    entriesSent += count;
+    bitsSent += packetBits;
+
+    final DistanceVectorRouter neighbor = routers[router.neighbors[link]];
+    final int neighborLink = neighbor.findLink(router.routerNumber);
+    events.schedule(new LocalEventQueue.TimedEvent()
+    {
+      public void fire()
+      {
+        // a packet in flight when its link fails is lost
+        if(neighbor.linkCosts[neighborLink] >= infinityCost) return;
+        long oldVersion = neighbor.tableVersion;
+        innerLoopCount += neighbor.receiveVector(neighborLink, destRouters, costs, count);
+        afterReceive(neighbor, oldVersion);
+      }
+    }, sendTicks + transmitTicks + propagationDelayTicks);
+  }
+
+  /**
+   * @return next hop each router currently uses for each destination
+   * (zero if unreachable)
+   */
+  public int[][] getRoutingMatrix()
+  {
+    int[][] routingMatrix = new int[numberOfSubnets+1][];
+    routingMatrix[0] = new int[numberOfSubnets+1];
+    for(int router = 1; router <= numberOfSubnets; ++router)
+      routingMatrix[router] = routers[router].forwardRouters.clone();
+    return routingMatrix;
+  }
+
+  public long getPacketsSent()
+  {
+    return packetsSent;
+  }
+
+  public long getBitsSent()
+  {
+    return bitsSent;
+  }
+
+  /**
+   * make a test run of DistanceVectorRouting
+   *
+   * converges on the configured WAN, then with one link down, and
+   * checks the costs the routers reach against HeapDijkstraRouting
+   */
+  static class TestDistanceVectorRouting
+  {
+    public TestDistanceVectorRouting()
+    {
+      // setup simulation environment
+      Topology testTopology = new Topology(configFileName);
+      SimulationEngine testSimEngine = new SimulationEngine(testTopology);
+      testSimEngine.setInstance(testSimEngine);
+      simLogger.setPrintAtLayers(testTopology.getPrintAtLayers());
+      System.out.println("Running distance-vector routing test");
+
+      // load network topology from config file
+      ConfigParser configParser = new ConfigParser(testTopology);
+
+      // parse the configuration
+      try
+      {
+        if(!configParser.parseConfig())return;
+      }
+      catch(Exception e)
+      {
+        System.out.println("parse of file:" + configFileName + " bad input:" +
+          e.getMessage());
+        return;
+      }
+
+      // load the configuration into ConnectivityMatrix; every usable
+      // link gets a 1000 kb/s data rate for the vector packets
+      try
+      {
+        testSimEngine.loadConfiguration();
+        CsrTopology csr = CsrTopology.fromSimulation();
+        int numberOfSubnets = csr.getNumberOfSubnets();
+        int[][] links = new int[numberOfSubnets+1][numberOfSubnets+1];
+        for(int fromRouter = 1; fromRouter <= numberOfSubnets; ++fromRouter)
+          for(int link = csr.offsets[fromRouter]; link < csr.offsets[fromRouter+1]; ++link)
+            links[fromRouter][csr.neighbors[link]] = 1000;
+        DistanceVectorRouting distanceVectorRouting = new DistanceVectorRouting(links);
+        distanceVectorRouting.computeRoutingMatrix();
+        int mismatches = compareWithDijkstra(distanceVectorRouting, csr);
+        System.out.println("converged: packets:" + distanceVectorRouting.getPacketsSent() +
+          " bits:" + distanceVectorRouting.getBitsSent());
+
+        // take down the first link of router 1 and converge again
+        if(csr.getDegree(1) > 0)
+        {
+          int downRouter = csr.neighbors[csr.offsets[1]];
+          distanceVectorRouting.scheduleLinkChange(1, downRouter, HUGEFLOAT,
+            distanceVectorRouting.events.getTimeInTicks());
+          long convergenceTicks = distanceVectorRouting.run();
+          CsrTopology downCsr = csr.copy();
+          downCsr.setCost(downCsr.findLink(1, downRouter), HUGEFLOAT);
+          downCsr.setCost(downCsr.findLink(downRouter, 1), HUGEFLOAT);
+          mismatches += compareWithDijkstra(distanceVectorRouting, downCsr);
+          System.out.println("link 1-" + downRouter + " down: converged in " +
+            convergenceTicks + " ticks, packets:" + distanceVectorRouting.getPacketsSent());
+        }
+        System.out.println(mismatches == 0 ? "Passed: costs match Dijkstra" :
+          "Failed: " + mismatches + " costs differ from Dijkstra");
+      }
+      catch(Exception e)
+      {
+        simLogger.logError("Exception loading configuration:" + e);
+        simLogger.logException(e);
+      }
+
+    }// end TestDistanceVectorRouting() constructor
+
+    /**
+     * @return number of costs the routers hold that differ from those
+     * HeapDijkstraRouting finds on the same links
+     */
+    static int compareWithDijkstra(DistanceVectorRouting distanceVectorRouting,
+      CsrTopology csr) throws Exception
+    {
+      int numberOfSubnets = csr.getNumberOfSubnets();
+      HeapDijkstraRouting heapDijkstraRouting = new HeapDijkstraRouting(csr);
+      int mismatches = 0;
+      for(int sourceRouter = 1; sourceRouter <= numberOfSubnets; ++sourceRouter)
+      {
+        heapDijkstraRouting.computeRoutingRow(sourceRouter);
+        float[] C = distanceVectorRouting.routers[sourceRouter].C;
+        for(int destRouter = 1; destRouter <= numberOfSubnets; ++destRouter)
+        {
+          float expected = heapDijkstraRouting.C[destRouter];
+          boolean reachable = expected < HUGEFLOAT;
+          if(reachable != (C[destRouter] < distanceVectorRouting.infinityCost) ||
+            (reachable && Math.abs(expected - C[destRouter]) > 0.001f * Math.max(1.0f, expected)))
+            ++mismatches;
+        }
+      }
+      return mismatches;
+    }
+
+  }// end class TestDistanceVectorRouting
+
+  // test DistanceVectorRouting
+  public static void main(String args[])
+  {
+    configFileName = args[0];
+    TestDistanceVectorRouting testDistanceVectorRouting;
+    testDistanceVectorRouting = new TestDistanceVectorRouting();
+
+  }// end main()
+
+}// end class DistanceVectorRouting
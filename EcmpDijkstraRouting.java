@@ -0,0 +1,338 @@
+/**
+ * Java Network Workbench 2 (JNW2)
+ * Copyright 2013-2018 Networking and Simulation Laboratory/George Mason University
+ *
+ * Calculate an equal-cost multipath routing table using Dijkstra's
+ * algorithm: all next hops on least-cost paths are kept
+ *
+ * @version 2.2.7
+ */
+
+package JNW2.utility;
+
+import JNW2.*;
+import static JNW2.Constants.*;
+import JNW2.parsers.*;
+
+public class EcmpDijkstraRouting
+{
+  // simulation environment
+  static SimLogger simLogger = SimLogger.getInstance(SimLogger.INFO);
+
+  /**
+   * Path costs within this relative difference are treated as equal,
+   * since float sums of the same link costs in a different order
+   * need not match exactly
+   */
+  static final float EQUAL_COST_TOLERANCE = 1.0e-5f;
+
+  // instance variables
+  int numberOfSubnets;
+  static String configFileName;
+
+  /**
+   * Count links examined, to compare with the other engines
+   */
+  int innerLoopCount = 0;
+
+  /**
+   * Links of the WAN, built once from ConnectivityMatrix
+   * if not supplied
+   */
+  CsrTopology csr;
+
+  /**
+   * Scratch state reused for every row: cost to each router, routers
+   * in the order they were settled, and next-hop sets being built
+   */
+  float[] C;
+  boolean[] visited;
+  int[] settleOrder;
+  int[][] hopSets;
+  int[] hopSetSizes;
+  IndexedMinHeap heap;
+
+  /**
+   * Creates an engine for the topology of the current simulation
+   */
+  public EcmpDijkstraRouting()
+  {
+    numberOfSubnets = SimulationEngine.getInstance().getTopology().getNumberOfSubnets();
+  }
+
+  /**
+   * Creates an engine for a given topology
+   * @param csr - links of the WAN
+   */
+  public EcmpDijkstraRouting(CsrTopology csr)
+  {
+    this.csr = csr;
+    numberOfSubnets = csr.getNumberOfSubnets();
+  }
+
+  /**
+   * Builds the equal-cost multipath routing table
+   * @return all least-cost next hops for each source and destination
+   * @throws Exception
+   */
+  public EcmpRoutingMatrix computeEcmpRoutingMatrix() throws Exception
+  {
+    if(csr == null)
+      csr = CsrTopology.fromSimulation();
+    csr.buildInLinks();
+    C = new float[numberOfSubnets+1];
+    visited = new boolean[numberOfSubnets+1];
+    settleOrder = new int[numberOfSubnets];
+    hopSets = new int[numberOfSubnets+1][];
+    hopSetSizes = new int[numberOfSubnets+1];
+    heap = new IndexedMinHeap(numberOfSubnets+1);
+
+    EcmpRoutingMatrix ecmpMatrix = new EcmpRoutingMatrix(numberOfSubnets);
+    for(int sourceRouter = 1; sourceRouter <= numberOfSubnets; ++sourceRouter)
+      computeEcmpRow(sourceRouter, ecmpMatrix);
+
+    simLogger.logInfo("ECMP Dijkstra inner loop count:" + innerLoopCount);
+    return ecmpMatrix;
+  }
+
+  /**
+   * Builds a single-path routing table taking the lowest-numbered
+   * of the equal-cost next hops
+   * @return routingMatrix
+   * @throws Exception
+   */
+  public int[][] computeRoutingMatrix() throws Exception
+  {
+    return computeEcmpRoutingMatrix().toRoutingMatrix();
+  }
+
+  /**
+   * Builds one source router's row of the table
+   */
+  private void computeEcmpRow(int sourceRouter, EcmpRoutingMatrix ecmpMatrix)
+  {
+    int[] offsets = csr.offsets;
+    int[] neighbors = csr.neighbors;
+    float[] costs = csr.costs;
+
+    // Dijkstra's algorithm, remembering the order routers settle in
+    for(int router = 1; router <= numberOfSubnets; ++router)
+    {
+      C[router] = HUGEFLOAT;
+      visited[router] = false;
+      hopSetSizes[router] = 0;
+    }
+    heap.clear();
+    C[sourceRouter] = 0;
+    heap.insertOrDecrease(sourceRouter, 0);
+    int settledCount = 0;
+    while(!heap.isEmpty())
+    {
+      int fromRouter = heap.extractMin();
+      visited[fromRouter] = true;
+      settleOrder[settledCount++] = fromRouter;
+      for(int link = offsets[fromRouter]; link < offsets[fromRouter+1]; ++link)
+      {
+        innerLoopCount++;
+        int toRouter = neighbors[link];
+        if(visited[toRouter]) continue;
+        float possibleCost = C[fromRouter] + costs[link];
+        if(possibleCost < C[toRouter])
+        {
+          C[toRouter] = possibleCost;
+          heap.insertOrDecrease(toRouter, possibleCost);
+        }
+      }
+    }
+
+    // in settle order, the next hops of a router are the union of the
+    // next hops of every router with a least-cost link into it
+    for(int settled = 1; settled < settledCount; ++settled)
+    {
+      int router = settleOrder[settled];
+      float tolerance = C[router] * EQUAL_COST_TOLERANCE;
+      for(int in = csr.inOffsets[router]; in < csr.inOffsets[router+1]; ++in)
+      {
+        innerLoopCount++;
+        int fromRouter = csr.inSources[in];
+        if(!visited[fromRouter]) continue;
+        float possibleCost = C[fromRouter] + costs[csr.inLinks[in]];
+        if(possibleCost - C[router] > tolerance) continue;
+        if(fromRouter == sourceRouter)
+          addHop(router, router);
+        else
+          for(int hop = 0; hop < hopSetSizes[fromRouter]; ++hop)
+            addHop(router, hopSets[fromRouter][hop]);
+      }
+    }
+
+    // pack the sets into the compact row
+    int[] rowOffsets = new int[numberOfSubnets+2];
+    int total = 0;
+    for(int destRouter = 1; destRouter <= numberOfSubnets; ++destRouter)
+    {
+      rowOffsets[destRouter] = total;
+      total += destRouter == sourceRouter ? 1 : hopSetSizes[destRouter];
+    }
+    rowOffsets[numberOfSubnets+1] = total;
+    int[] rowNextHops = new int[total];
+    for(int destRouter = 1; destRouter <= numberOfSubnets; ++destRouter)
+    {
+      if(destRouter == sourceRouter)
+        rowNextHops[rowOffsets[destRouter]] = sourceRouter;
+      else if(hopSetSizes[destRouter] > 0)
+        System.arraycopy(hopSets[destRouter], 0, rowNextHops,
+          rowOffsets[destRouter], hopSetSizes[destRouter]);
+    }
+    ecmpMatrix.setRow(sourceRouter, rowOffsets, rowNextHops);
+  }
+
+  /**
+   * Adds a next hop to a router's sorted set if not already there
+   */
+  private void addHop(int router, int hop)
+  {
+    int size = hopSetSizes[router];
+    int[] set = hopSets[router];
+    if(set == null)
+      set = hopSets[router] = new int[4];
+    int position = java.util.Arrays.binarySearch(set, 0, size, hop);
+    if(position >= 0) return;
+    position = -position - 1;
+    if(size == set.length)
+      set = hopSets[router] = java.util.Arrays.copyOf(set, 2*size);
+    System.arraycopy(set, position, set, position + 1, size - position);
+    set[position] = hop;
+    hopSetSizes[router] = size + 1;
+  }
+
+  /**
+   * @return count of times through the inner loop
+   */
+  public int getInnerLoopCount()
+  {
+    return innerLoopCount;
+  }
+
+  /**
+   * make a test run of EcmpDijkstraRouting
+   *
+   * checks that the next hops kept for each pair of routers are
+   * exactly the neighbors on a least-cost path, as found by
+   * HeapDijkstraRouting, and how flows split where there are several
+   */
+  static class TestEcmpDijkstraRouting
+  {
+    public TestEcmpDijkstraRouting()
+    {
+      // setup simulation environment
+      Topology testTopology = new Topology(configFileName);
+      SimulationEngine testSimEngine = new SimulationEngine(testTopology);
+      testSimEngine.setInstance(testSimEngine);
+      simLogger.setPrintAtLayers(testTopology.getPrintAtLayers());
+      System.out.println("Running ECMP Dijkstra routing test");
+
+      // load network topology from config file
+      ConfigParser configParser = new ConfigParser(testTopology);
+
+      // parse the configuration
+      try
+      {
+        if(!configParser.parseConfig())return;
+      }
+      catch(Exception e)
+      {
+        System.out.println("parse of file:" + configFileName + " bad input:" +
+          e.getMessage());
+        return;
+      }
+
+      // load the configuration into ConnectivityMatrix and compare
+      // against the costs of single-path Dijkstra
+      try
+      {
+        testSimEngine.loadConfiguration();
+        CsrTopology csr = CsrTopology.fromSimulation();
+        int numberOfSubnets = csr.getNumberOfSubnets();
+        EcmpRoutingMatrix ecmpMatrix = new EcmpDijkstraRouting(csr).computeEcmpRoutingMatrix();
+        HeapDijkstraRouting heapDijkstraRouting = new HeapDijkstraRouting(csr);
+        float[][] C = new float[numberOfSubnets+1][];
+        for(int router = 1; router <= numberOfSubnets; ++router)
+        {
+          heapDijkstraRouting.computeRoutingRow(router);
+          C[router] = heapDijkstraRouting.C.clone();
+        }
+
+        // a neighbor is a next hop if and only if a least-cost path
+        // goes through it
+        int mismatches = 0;
+        int multipathPairs = 0;
+        int splitSource = 0, splitDest = 0;
+        for(int sourceRouter = 1; sourceRouter <= numberOfSubnets; ++sourceRouter)
+          for(int destRouter = 1; destRouter <= numberOfSubnets; ++destRouter)
+          {
+            if(destRouter == sourceRouter) continue;
+            int count = ecmpMatrix.getNextHopCount(sourceRouter, destRouter);
+            int expectedCount = 0;
+            for(int link = csr.offsets[sourceRouter]; link < csr.offsets[sourceRouter+1]; ++link)
+            {
+              int hop = csr.neighbors[link];
+              float pathCost = csr.costs[link] + C[hop][destRouter];
+              if(C[sourceRouter][destRouter] >= HUGEFLOAT ||
+                pathCost - C[sourceRouter][destRouter] >
+                  C[sourceRouter][destRouter] * EQUAL_COST_TOLERANCE)
+                continue;
+              ++expectedCount;
+              boolean kept = false;
+              for(int index = 0; index < count; ++index)
+                kept |= ecmpMatrix.getNextHop(sourceRouter, destRouter, index) == hop;
+              if(!kept) ++mismatches;
+            }
+            if(count != expectedCount) ++mismatches;
+            if(count > 1 && multipathPairs++ == 0)
+            {
+              splitSource = sourceRouter;
+              splitDest = destRouter;
+            }
+          }
+        System.out.println("router pairs with several next hops:" + multipathPairs);
+
+        // flows between hosts spread over the next hops of one pair
+        if(multipathPairs > 0)
+        {
+          int count = ecmpMatrix.getNextHopCount(splitSource, splitDest);
+          int[] flows = new int[count];
+          for(int host = 0; host < 1000; ++host)
+          {
+            int hop = ecmpMatrix.selectNextHop(splitSource, splitDest,
+              splitSource, host, splitDest, 1);
+            for(int index = 0; index < count; ++index)
+              if(ecmpMatrix.getNextHop(splitSource, splitDest, index) == hop)
+                ++flows[index];
+          }
+          System.out.println("1000 flows from router " + splitSource + " to router " +
+            splitDest + " per next hop: " + java.util.Arrays.toString(flows));
+        }
+        System.out.println(mismatches == 0 ? "Passed: next hops are the least-cost neighbors" :
+          "Failed: " + mismatches + " next-hop sets differ from Dijkstra");
+      }
+      catch(Exception e)
+      {
+        simLogger.logError("Exception loading configuration:" + e);
+        simLogger.logException(e);
+      }
+
+    }// end TestEcmpDijkstraRouting() constructor
+
+  }// end class TestEcmpDijkstraRouting
+
+  // test EcmpDijkstraRouting
+  public static void main(String args[])
+  {
+    configFileName = args[0];
+    TestEcmpDijkstraRouting testEcmpDijkstraRouting;
+    testEcmpDijkstraRouting = new TestEcmpDijkstraRouting();
+
+  }// end main()
+
+}// end class EcmpDijkstraRouting
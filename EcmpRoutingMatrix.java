@@ -0,0 +1,124 @@
+/**
+ * Java Network Workbench 2 (JNW2)
+ * Copyright 2013-2018 Networking and Simulation Laboratory/George Mason University
+ *
+ * Equal-cost multipath routing table: every next hop that lies on a
+ * least-cost path, for each source and destination router, with a
+ * per-flow choice among them
+ *
+ * @version 2.2.7
+ */
+
+package JNW2.utility;
+
+public class EcmpRoutingMatrix
+{
+  // instance variables
+  final int numberOfSubnets;
+
+  /**
+   * For each source router (first dimension) the next hops to
+   * destRouter are nextHops[source][offsets[source][destRouter]] up to
+   * (not including) nextHops[source][offsets[source][destRouter+1]],
+   * in ascending order; the source router's own entry is itself
+   */
+  final int[][] offsets;
+  final int[][] nextHops;
+
+  EcmpRoutingMatrix(int numberOfSubnets)
+  {
+    this.numberOfSubnets = numberOfSubnets;
+    offsets = new int[numberOfSubnets+1][];
+    nextHops = new int[numberOfSubnets+1][];
+  }
+
+  /**
+   * Stores the row for one source router
+   */
+  void setRow(int sourceRouter, int[] rowOffsets, int[] rowNextHops)
+  {
+    offsets[sourceRouter] = rowOffsets;
+    nextHops[sourceRouter] = rowNextHops;
+  }
+
+  public int getNumberOfSubnets()
+  {
+    return numberOfSubnets;
+  }
+
+  /**
+   * @return number of equal-cost next hops; zero if unreachable
+   */
+  public int getNextHopCount(int sourceRouter, int destRouter)
+  {
+    return offsets[sourceRouter][destRouter+1] - offsets[sourceRouter][destRouter];
+  }
+
+  /**
+   * @param index - from 0 to getNextHopCount()-1
+   * @return one of the equal-cost next hops
+   */
+  public int getNextHop(int sourceRouter, int destRouter, int index)
+  {
+    return nextHops[sourceRouter][offsets[sourceRouter][destRouter] + index];
+  }
+
+  /**
+   * Forwarding decision for a packet: all packets of one flow take
+   * the same next hop so they stay in order, while different flows
+   * spread across the equal-cost next hops
+   * @param routerNumber - router forwarding the packet
+   * @param destRouter - router of the destination subnet
+   * @return next-hop router, or zero if unreachable
+   */
+  public int selectNextHop(int routerNumber, int destRouter,
+    int sourceNetworkNumber, int sourceHostNumber,
+    int destNetworkNumber, int destHostNumber)
+  {
+    int count = getNextHopCount(routerNumber, destRouter);
+    if(count == 0) return 0;
+    int first = offsets[routerNumber][destRouter];
+    if(count == 1) return nextHops[routerNumber][first];
+    int hash = flowHash(routerNumber, sourceNetworkNumber, sourceHostNumber,
+      destNetworkNumber, destHostNumber);
+    return nextHops[routerNumber][first + (hash >>> 1) % count];
+  }
+
+  /**
+   * Mixes the addresses of a flow so that nearby host and network
+   * numbers still spread evenly; the router number salts the hash,
+   * so the flows that share a next hop at one router split again
+   * at the next instead of all taking the same index there
+   * @param routerNumber - router making the choice
+   */
+  public static int flowHash(int routerNumber, int sourceNetworkNumber,
+    int sourceHostNumber, int destNetworkNumber, int destHostNumber)
+  {
+    int hash = routerNumber * 0x9e3779b9;
+    hash = hash * 31 + sourceNetworkNumber;
+    hash = hash * 31 + sourceHostNumber;
+    hash = hash * 31 + destNetworkNumber;
+    hash = hash * 31 + destHostNumber;
+    hash ^= hash >>> 16;
+    hash *= 0x85ebca6b;
+    hash ^= hash >>> 13;
+    hash *= 0xc2b2ae35;
+    hash ^= hash >>> 16;
+    return hash;
+  }
+
+  /**
+   * @return single-path routingMatrix using the lowest-numbered
+   * next hop, for code that expects one next hop per destination
+   */
+  public int[][] toRoutingMatrix()
+  {
+    int[][] routingMatrix = new int[numberOfSubnets+1][numberOfSubnets+1];
+    for(int sourceRouter = 1; sourceRouter <= numberOfSubnets; ++sourceRouter)
+      for(int destRouter = 1; destRouter <= numberOfSubnets; ++destRouter)
+        if(getNextHopCount(sourceRouter, destRouter) > 0)
+          routingMatrix[sourceRouter][destRouter] = getNextHop(sourceRouter, destRouter, 0);
+    return routingMatrix;
+  }
+
+}// end class EcmpRoutingMatrix
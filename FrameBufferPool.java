@@ -0,0 +1,158 @@
+/**
+ * Java Network Workbench 2 (JNW2)
+ * Copyright 2013/2017 Networking and Simulation Laboratory/George Mason University
+ *
+ * Description: Pool of frame buffers reused for stuffed and unstuffed
+ * DLC frames, so steady-state framing does not allocate
+ *
+ * @version 2.2.3
+ */
+
+package JNW2.message;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+public class FrameBufferPool
+{
+  /**
+   * Initial capacity of a new buffer: a 1500-byte frame after
+   * worst-case stuffing; buffers grow if a frame is larger and
+   * keep that size when returned to the pool
+   */
+  public static final int DEFAULT_FRAME_BITS =
+    BitStuffingEngine.maxStuffedBits(1500 * 8);
+
+  // instance variables
+  private final PackedBitSequence[] freeBuffers;
+  private int freeCount = 0;
+  private final int frameBits;
+
+  // statistics
+  private long buffersCreated = 0;
+  private long buffersReused = 0;
+
+  /**
+   * @param maxPooled - most buffers kept for reuse; extra buffers
+   * released are left to the garbage collector
+   * @param frameBits - initial capacity of each buffer
+   */
+  public FrameBufferPool(int maxPooled, int frameBits)
+  {
+    freeBuffers = new PackedBitSequence[maxPooled];
+    this.frameBits = frameBits;
+  }
+
+  /**
+   * @return an empty buffer
+   */
+  public PackedBitSequence acquire()
+  {
+    if(freeCount > 0)
+    {
+      ++buffersReused;
+      PackedBitSequence buffer = freeBuffers[--freeCount];
+      freeBuffers[freeCount] = null;
+      return buffer;
+    }
+    ++buffersCreated;
+    return PackedBitSequence.withCapacity(frameBits);
+  }
+
+  /**
+   * Returns a buffer to the pool; the caller must not use it again
+   * @param buffer - buffer from acquire(); null is ignored
+   */
+  public void release(PackedBitSequence buffer)
+  {
+    if(buffer == null) return;
+    buffer.reset();
+    if(freeCount < freeBuffers.length)
+      freeBuffers[freeCount++] = buffer;
+  }
+
+  public int getFreeCount()
+  {
+    return freeCount;
+  }
+
+  public long getBuffersCreated()
+  {
+    return buffersCreated;
+  }
+
+  public long getBuffersReused()
+  {
+    return buffersReused;
+  }
+
+  /**
+   * @return bytes allocated so far by the current thread, or -1 if
+   * the JVM cannot measure it
+   */
+  static long allocatedBytes()
+  {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if(!(bean instanceof com.sun.management.ThreadMXBean)) return -1;
+    com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean)bean;
+    if(!sunBean.isThreadAllocatedMemorySupported()) return -1;
+    return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  /**
+   * Measures bytes allocated per frame when stuffing and unstuffing
+   * 1500-byte frames into new buffers and into pooled buffers
+   * @param args - optional number of frames (default 100000)
+   */
+  public static void main(String[] args)
+  {
+    int frames = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+    System.out.println("Allocation per 1500-byte frame, stuff then unstuff:");
+    if(allocatedBytes() < 0)
+    {
+      System.out.println("this JVM cannot measure thread allocation");
+      return;
+    }
+
+    byte[] payload = new byte[1500];
+    new Random(1).nextBytes(payload);
+    PackedBitSequence frame = PackedBitSequence.withCapacity(payload.length * 8);
+    frame.appendBytes(payload, 0, payload.length);
+    FrameBufferPool pool = new FrameBufferPool(8, DEFAULT_FRAME_BITS);
+
+    for(int round = 0; round < 3; ++round)
+    {
+      // a new buffer for each result
+      long before = allocatedBytes();
+      long check = 0;
+      for(int count = 0; count < frames; ++count)
+      {
+        PackedBitSequence stuffed = BitStuffing.stuff(frame);
+        check += BitStuffing.unstuff(stuffed).size();
+      }
+      long newBuffers = allocatedBytes() - before;
+
+      // buffers from the pool, returned after use
+      before = allocatedBytes();
+      for(int count = 0; count < frames; ++count)
+      {
+        PackedBitSequence stuffed = pool.acquire();
+        PackedBitSequence unstuffed = pool.acquire();
+        BitStuffing.stuff(frame, stuffed);
+        check += BitStuffing.unstuff(stuffed, unstuffed);
+        pool.release(stuffed);
+        pool.release(unstuffed);
+      }
+      long pooledBuffers = allocatedBytes() - before;
+
+      System.out.println("round " + (round + 1) +
+        ": new buffers " + newBuffers / frames + " bytes/frame," +
+        " pooled buffers " + pooledBuffers / frames + " bytes/frame" +
+        " (" + check + " bits)");
+    }
+    System.out.println("pool created " + pool.getBuffersCreated() +
+      " buffers, reused " + pool.getBuffersReused());
+
+  }// end main()
+
+}// end class FrameBufferPool
@@ -0,0 +1,145 @@
+/**
+ * Java Network Workbench 2 (JNW2)
+ * Copyright 2013-2018 Networking and Simulation Laboratory/George Mason University
+ *
+ * The send window of a go-back-n link: a ring of unACKed frames whose
+ * size is the DLC counter range, a power of two, so a sequence number
+ * is its slot and wraparound is a mask. head and tail count frames
+ * since the link started; SNmin and SNmax are them masked.
+ *
+ * @version 2.2.7
+ */
+
+package JNW2.interfaces;
+
+import JNW2.message.*;
+
+public class FrameWindow
+{
+  // instance variables
+  private final PackedBitSequence[] frames;
+  private final int mask;
+  private final int windowFrames;
+
+  // head: oldest frame not ACKed; tail: next frame to be added
+  private int head = 0;
+  private int tail = 0;
+
+  /**
+   * @param windowMax - DLC counter range; a power of two
+   * @param windowFrames - frames that may be outstanding; less
+   * than windowMax
+   */
+  public FrameWindow(int windowMax, int windowFrames)
+  {
+    if(Integer.bitCount(windowMax) != 1 || windowFrames < 1 || windowFrames >= windowMax)
+      throw new IllegalArgumentException("frame window of " + windowFrames +
+        " in range " + windowMax + " is not valid");
+    frames = new PackedBitSequence[windowMax];
+    mask = windowMax - 1;
+    this.windowFrames = windowFrames;
+  }
+
+  /**
+   * Buffers a frame in position SNmax and advances SNmax
+   * @param frame - the frame, kept until ACKed
+   * @return SN of the frame
+   */
+  public int add(PackedBitSequence frame)
+  {
+    if(isFull())
+      throw new IllegalStateException("frame window is full");
+    int SN = tail & mask;
+    frames[SN] = frame;
+    ++tail;
+    return SN;
+  }
+
+  /**
+   * @param SN - sequence number of a frame in the window
+   * @return the frame buffered in position SN
+   */
+  public PackedBitSequence get(int SN)
+  {
+    return frames[SN & mask];
+  }
+
+  /**
+   * Releases every frame before receivedRN by moving SNmin up to it;
+   * their slots are reused as frames are added, so no slot is cleared
+   * @param receivedRN - RN from the other end
+   * @return number of frames released; 0 if RN is not in the window
+   */
+  public int release(int receivedRN)
+  {
+    int acked = (receivedRN - head) & mask;
+    if(acked > tail - head) return 0;
+    head += acked;
+    return acked;
+  }
+
+  /**
+   * @return true if RN from the other end ACKs no frame past SNmax
+   */
+  public boolean isValidRN(int receivedRN)
+  {
+    return ((receivedRN - head) & mask) <= tail - head;
+  }
+
+  /**
+   * @return true if SN is of a frame sent and not ACKed
+   */
+  public boolean contains(int SN)
+  {
+    return ((SN - head) & mask) < tail - head;
+  }
+
+  /**
+   * Discards all frames, as when the link is initiated again
+   */
+  public void clear()
+  {
+    for(int slot = 0; slot < frames.length; ++slot)
+      frames[slot] = null;
+    head = tail = 0;
+  }
+
+  public int getSNmin()
+  {
+    return head & mask;
+  }
+
+  public int getSNmax()
+  {
+    return tail & mask;
+  }
+
+  /**
+   * @return frames sent and not ACKed
+   */
+  public int size()
+  {
+    return tail - head;
+  }
+
+  public boolean isEmpty()
+  {
+    return tail == head;
+  }
+
+  public boolean isFull()
+  {
+    return tail - head >= windowFrames;
+  }
+
+  public int getWindowFrames()
+  {
+    return windowFrames;
+  }
+
+  public int getWindowMax()
+  {
+    return frames.length;
+  }
+
+}// end class FrameWindow
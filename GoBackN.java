@@ -17,11 +17,94 @@ import JNW2.*;
 import JNW2.message.*;
 import JNW2.nodes.*;
 import JNW2.stack.*;
+import java.util.concurrent.ForkJoinPool;
 
 public class GoBackN extends Interface
 {    
    // instance variable
    int interfaceToWhichAttached;
+
+   /**
+    * DLC counter range: sequence numbers run from 0 to windowMax-1;
+    * greater than windowFrames, and a power of two once setWindow()
+    * is called. windowMask is windowMax-1 when windowMax is a power
+    * of two, so wrapping is a mask; otherwise -1, and wrapping is
+    * done with modulo as the classic DL_WINDOW_MAX range may need
+    */
+   int windowMax = DL_WINDOW_MAX;
+   int windowMask = Integer.bitCount(DL_WINDOW_MAX) == 1 ? DL_WINDOW_MAX - 1 : -1;
+
+   /**
+    * frames that may be sent while waiting for an ACK
+    */
+   int windowFrames = DL_WINDOW_FRAMES;
+
+   /**
+    * unACKed frames, each in the position of its SN; null until
+    * setWindow() or the first use through getSendWindow(), so a
+    * DL_WINDOW_MAX that is not a power of two does not stop the
+    * interface from being created
+    */
+   FrameWindow sendWindow = null;
+
+   /**
+    * Buffers for stuffed and unstuffed frames of this link, enough
+    * for a full window in each direction; resized by setWindow()
+    */
+   FrameBufferPool framePool =
+      new FrameBufferPool(2 * DL_WINDOW_MAX, FrameBufferPool.DEFAULT_FRAME_BITS);
+
+   /**
+    * Decides when RN is sent back for received frames; null to
+    * send a supervisory frame for every data frame, the classic
+    * behavior described in the notes below
+    */
+   AckBatcher ackBatcher = null;
+
+   /**
+    * When the SNmin frame is sent again: IDLE_LINE resends it
+    * whenever the line is idle and frames remain unACKed, as the
+    * notes below describe; TIMER resends it only when the
+    * retransmit timer, set from the measured RTT, expires
+    */
+   public enum RetransmitMode { IDLE_LINE, TIMER }
+   RetransmitMode retransmitMode = RetransmitMode.IDLE_LINE;
+
+   /**
+    * round trip time of this link, measured from ACKed frames
+    */
+   RttEstimator rttEstimator = new RttEstimator(MAX_LINK_RTT);
+
+   /**
+    * in TIMER mode, the time the SNmin frame is sent again if
+    * it has not been ACKed
+    */
+   long retransmitTicks = 0;
+
+   /**
+    * link initiation state of this end: linkActive once the
+    * INIT_LINK / receiver_ready exchange is done; initPending while
+    * this end waits for receiver_ready. LinkInitializer only sets
+    * them; the DLC send path must test isLinkActive() itself
+    */
+   boolean linkActive = false;
+   boolean initPending = false;
+
+   /**
+    * counters and histograms of this link; null until
+    * enableMetrics() is called. firstSentTicks holds the time each
+    * frame in the window was first sent, for ACK latency, and
+    * sentPayloadBits its payload, counted as goodput when it is ACKed
+    */
+   LinkMetrics metrics = null;
+   long[] firstSentTicks = null;
+   int[] sentPayloadBits = null;
+
+   /**
+    * Pool that stuffs batches of frames off the event thread;
+    * null to stuff them on the event thread
+    */
+   ForkJoinPool framingPool = null;
     
    /** 
     * Creates a new instance of GoBackN 
@@ -65,12 +148,20 @@ public class GoBackN extends Interface
 //
 //   dlInit
 //
-//   The current JNW2 DLC provides only an unreliable
+//   The JNW2 DLC by default provides only an unreliable
 //   link initiation. It just sets linkActive true,
 //   dlSendState to DL_SENDING, and initializes the sequence
 //   number state for this end of the link.
 //
-//   This is how a reliable DL initialization would work:
+//   LinkInitializer runs the reliable DL initialization below for
+//   all links at once, using linkInitStarted(), initLinkReceived()
+//   and receiverReadyReceived(); INIT_LINK is sent again after the
+//   retransmit timeout, which is MAX_LINK_RTT until the link has
+//   been timed. It does not hold back data frames: sendReliableFrame()
+//   must check isLinkActive() and send nothing but the handshake on
+//   a link that is not yet active, or that went down in a flap.
+//
+//   This is how a reliable DL initialization works:
 //
 //   Before DlcLayer.send() is called for a link, that link must be
 //   initialized; connection is established using the normal
@@ -174,20 +265,170 @@ public class GoBackN extends Interface
 // }.
 //
    
+   // window sizing for this link
+
+   /**
+    * SN and RN are one byte in the frame header, so the counter range
+    * of a link's window can be no larger than this until the field
+    * is widened
+    */
+   static final int HEADER_WINDOW_MAX = 256;
+
+   /**
+    * frames needed to keep a link busy for one round trip: its
+    * bandwidth-delay product in frames, plus the frame being sent
+    * @param dataRate - link data rate in kb/s, as in the links matrix
+    * @param propagationDelay - one-way propagation delay in seconds
+    * @param frameBits - size of a full frame in bits
+    * @return window in frames, never below DL_WINDOW_FRAMES and never
+    *         above HEADER_WINDOW_MAX - 1, the most a byte SN allows
+    */
+   public static int windowFramesFor(int dataRate, double propagationDelay, int frameBits)
+   {
+      double bitsInFlight = 2.0 * propagationDelay * dataRate * 1000.0;
+      int frames = (int)Math.ceil(bitsInFlight / frameBits) + 1;
+      return Math.min(HEADER_WINDOW_MAX - 1, Math.max(DL_WINDOW_FRAMES, frames));
+   }
+
+   /**
+    * @param windowFrames - frames that may be outstanding
+    * @return smallest power of two greater than windowFrames, so
+    *         go-back-n can tell a full window from an empty one, but
+    *         no more than HEADER_WINDOW_MAX
+    */
+   public static int windowMaxFor(int windowFrames)
+   {
+      return Math.min(HEADER_WINDOW_MAX, Integer.highestOneBit(windowFrames) << 1);
+   }
+
+   /**
+    * sizes the window of this link from its bandwidth-delay product;
+    * call when the link is created, before any frame is sent
+    * @param dataRate - link data rate in kb/s, as in the links matrix
+    * @param propagationDelay - one-way propagation delay in seconds
+    * @param frameBits - size of a full frame in bits
+    */
+   public void setWindowForLink(int dataRate, double propagationDelay, int frameBits)
+   {
+      int frames = windowFramesFor(dataRate, propagationDelay, frameBits);
+      setWindow(windowMaxFor(frames), frames);
+   }
+
+   /**
+    * sets the DLC counter range and window of this link; call it
+    * before enableMetrics(), whose histograms are sized by the window
+    * @param windowMax - number of sequence numbers; a power of two
+    * @param windowFrames - frames that may be outstanding; less
+    *        than windowMax
+    */
+   public void setWindow(int windowMax, int windowFrames)
+   {
+      if(metrics != null)
+         throw new IllegalStateException("set the go-back-n window of " +
+            metrics.getName() + " before enableMetrics()");
+      if(Integer.bitCount(windowMax) != 1)
+         throw new IllegalArgumentException("go-back-n counter range " + windowMax +
+            " must be a power of two");
+      if(windowFrames < 1 || windowFrames >= windowMax)
+         throw new IllegalArgumentException("go-back-n window " + windowFrames +
+            " must be from 1 to " + (windowMax - 1));
+      this.windowMax = windowMax;
+      this.windowMask = windowMax - 1;
+      this.windowFrames = windowFrames;
+      framePool = new FrameBufferPool(2 * windowMax, FrameBufferPool.DEFAULT_FRAME_BITS);
+      sendWindow = new FrameWindow(windowMax, windowFrames);
+   }
+
+   // metrics
+
+   /**
+    * starts recording metrics for this link in the LinkMetricsRegistry;
+    * call after the window is set, so occupancy is bucketed by it
+    * @param name - name of the interface, unique in the run
+    * @return the metrics
+    */
+   public LinkMetrics enableMetrics(String name)
+   {
+      metrics = LinkMetricsRegistry.getInstance().register(name, windowFrames);
+      firstSentTicks = new long[windowMax];
+      sentPayloadBits = new int[windowMax];
+      if(ackBatcher != null)
+         ackBatcher.setMetrics(metrics);
+      return metrics;
+   }
+
+   public LinkMetrics getMetrics()
+   {
+      return metrics;
+   }
+
+   public int getWindowMax()
+   {
+      return windowMax;
+   }
+
+   public int getWindowFrames()
+   {
+      return windowFrames;
+   }
+
    // methods implementing logic of go-back-n ARQ
-   // these were in dllogic.cpp in C++ NW
+   // these were in dllogic.cpp in C++ NW; the byte versions are
+   // kept for callers that hold SN and RN in a byte, and call the
+   // int versions, which use the range of this link
+
+   /**
+    * @return N modulo windowMax, from 0 to windowMax-1
+    */
+   int wrap(int N)
+   {
+      if(windowMask >= 0)
+         return N & windowMask;
+      return Math.floorMod(N, windowMax);
+   }
+
+   /**
+    * @return range from Nmin up to Nmax, modulo windowMax
+    */
+   int range(int Nmin, int Nmax)
+   {
+      return wrap(Nmax - Nmin);
+   }
+
+   /**
+    * the byte versions work only while every SN and RN of this link
+    * fits in a byte; a wider range set by setWindow() would lose
+    * their high bits
+    */
+   void checkByteRange()
+   {
+      if(windowMax > HEADER_WINDOW_MAX)
+         throw new IllegalStateException("go-back-n counter range " + windowMax +
+            " does not fit in a byte SN or RN; use the int methods");
+   }
+
+   /** tests whether range between two numbers is smaller than
+    *  the window (windowFrames), given DLC counter range (windowMax)
+    *  @param Nmin is logically lower end of range, the lowest number not ACKed
+    *  @param Nmax is logically higher end of range, the next number to be used 
+    * @return true if range is smaller
+    */
+   public boolean LTwindow(int Nmin, int Nmax) 
+   {
+      return range(Nmin, Nmax) < windowFrames;
+   }
 
    /** tests whether range between two numbers is smaller than
-    *  the window (DL_WINDOW_FRAMES), given DLC counter range (DL_WINDOW_MAX)
+    *  the window (windowFrames), given DLC counter range (windowMax),
+    *  which must be no more than 256
     *  @param Nmin is logically lower end of range, the lowest number not ACKed
     *  @param Nmax is logically higher end of range, the next number to be used 
     * @return true if range is smaller
     */
    public boolean LTwindow(byte Nmin, byte Nmax) 
    {
-      int testmax = Nmax;
-      if(Nmin > Nmax) testmax = testmax + DL_WINDOW_MAX;
-      return(testmax-Nmin < DL_WINDOW_FRAMES);
+      checkByteRange();
+      return LTwindow(Nmin & 0xff, Nmax & 0xff);
    }
 
    //************************************************************
@@ -196,67 +437,110 @@ public class GoBackN extends Interface
    // student name: Laura Alvarez
   /**  
     * tests whether range between two numbers is within the
-    * window (DL_WINDOW_FRAMES), given DLC counter range (DL_WINDOW_MAX)
+    * window (windowFrames), given DLC counter range (windowMax),
+    * which must be no more than 256
     * @param Nmin is logically lower end of range, the lowest number not ACKed
     * @param Nmax is logically higher end of range, the next number to be used 
     * @return true if range is within
     */
    public boolean INwindow(byte Nmin, byte Nmax) 
    {
-     //// student replaces false with appropriate code
-     
+      checkByteRange();
+      return INwindow(Nmin & 0xff, Nmax & 0xff);
+   }
+
+   /**  
+    * tests whether range between two numbers is within the
+    * window (windowFrames), given DLC counter range (windowMax)
+    * @param Nmin is logically lower end of range, the lowest number not ACKed
+    * @param Nmax is logically higher end of range, the next number to be used 
+    * @return true if range is within
+    */
+   public boolean INwindow(int Nmin, int Nmax) 
+   {
      // similar to LTwindow, but in this case "within"
-     // return true also if range between numbers is equal to DL_WINDOW_FRAMES
-      int testmax = Nmax;
-      if(Nmin > Nmax) testmax = testmax + DL_WINDOW_MAX;
-      return(testmax-Nmin <= DL_WINDOW_FRAMES);
+     // return true also if range between numbers is equal to windowFrames
+      return range(Nmin, Nmax) <= windowFrames;
    }
 
    /** 
-    * tests whether the window has become full 
+    * tests whether the window has become full; windowMax must
+    * be no more than 256
     * @param SNmin is SN of the lowest frame sent and not ACKed
-    * @param SNmax is one greater (mod DL_WINDOW_MAX) than SN of
+    * @param SNmax is one greater (mod windowMax) than SN of
     *         highest frame sent and not ACKed 
     * @return true if window is full
     */
    public boolean windowFull(byte SNmin, byte SNmax) 
    {
-     //// student replaces false with appropriate code
-     
+      checkByteRange();
+      return windowFull(SNmin & 0xff, SNmax & 0xff);
+   }
+
+   /** 
+    * tests whether the window has become full 
+    * @param SNmin is SN of the lowest frame sent and not ACKed
+    * @param SNmax is one greater (mod windowMax) than SN of
+    *         highest frame sent and not ACKed 
+    * @return true if window is full
+    */
+   public boolean windowFull(int SNmin, int SNmax) 
+   {
      // As SNmax is the next number to use (out of the window),
      // then is full if the range is equal
-     int testmax = SNmax;
-     if(SNmin > SNmax) testmax = testmax + DL_WINDOW_MAX;
-     return (testmax - SNmin >= DL_WINDOW_FRAMES);
+     return range(SNmin, SNmax) >= windowFrames;
    }
 
    /** 
     * tests whether frames have been sent for which ACKs
-    * have not been received
+    * have not been received; windowMax must be no more than 256
     * @param SNmin is SN of the lowest frame sent and not ACKed
-    * @param SNmax is one greater (mod DL_WINDOW_MAX) than SN of
+    * @param SNmax is one greater (mod windowMax) than SN of
     *         highest frame sent and not ACKed
     * @return true if such frames have been sent
     */
    public boolean framesRemainUnacked(byte SNmin, byte SNmax) 
    {
-     //// student replaces false with appropriate code
-     
-     // is there are frames waiting for ACK, then SNmax or SNmin
-     // must be greater than 0
-     return (SNmin != 0 && SNmax !=0);
+      checkByteRange();
+      return framesRemainUnacked(SNmin & 0xff, SNmax & 0xff);
+   }
+
+   /** 
+    * tests whether frames have been sent for which ACKs
+    * have not been received
+    * @param SNmin is SN of the lowest frame sent and not ACKed
+    * @param SNmax is one greater (mod windowMax) than SN of
+    *         highest frame sent and not ACKed
+    * @return true if such frames have been sent
+    */
+   public boolean framesRemainUnacked(int SNmin, int SNmax) 
+   {
+     // frames wait for an ACK whenever the window is not empty
+     return SNmin != SNmax;
    }
 
    /** 
     * returns incremented SNmax for an interface within
-    * the modular range, which is of size DL_WINDOW_MAX 
+    * the modular range, which is of size windowMax and must
+    * be no more than 256
     * @param SNmax is logical top end of window
     * @return incremented SNmax
     */
    public byte incrementSNmax(byte SNmax) 
    {
-     //// student replaces 0 with appropriate code
-     return (byte) ( SNmax++ % DL_WINDOW_MAX );
+      checkByteRange();
+      return (byte)incrementSNmax(SNmax & 0xff);
+   }
+
+   /** 
+    * returns incremented SNmax for an interface within
+    * the modular range, which is of size windowMax 
+    * @param SNmax is logical top end of window
+    * @return incremented SNmax
+    */
+   public int incrementSNmax(int SNmax) 
+   {
+     return wrap(SNmax + 1);
    }
 
    /** 
@@ -290,24 +574,469 @@ public class GoBackN extends Interface
    }
 
    /** tests whether to accept frame, based on its SN
-    *  and the RN associated with receiving interface
+    *  and the RN associated with receiving interface;
+    *  windowMax must be no more than 256
     * @param  receivedSN is SN found in the frame
     * @param  interfaceRN is RN state of the Interface
     * @return true to accept frame
     */
    public boolean acceptFrame(byte receivedSN, byte interfaceRN) {
-     
-      //// student replaces false with appropriate code
-      
-      // to accept the frame, the receivedSN must be >= to interfaceRN
-      // and within current sliding window     
-      // The last ACK moved the start of the window to RN (next frame requested)
-      // Cosequently interfaceRN is the start of the current window
+      checkByteRange();
+      return acceptFrame(receivedSN & 0xff, interfaceRN & 0xff);
+   }
 
-      int windowEnd = interfaceRN + DL_WINDOW_FRAMES;
-      return (receivedSN >= interfaceRN) && (receivedSN < windowEnd);
+   /** tests whether to accept frame, based on its SN
+    *  and the RN associated with receiving interface
+    * @param  receivedSN is SN found in the frame
+    * @param  interfaceRN is RN state of the Interface
+    * @return true to accept frame
+    */
+   public boolean acceptFrame(int receivedSN, int interfaceRN) {
+      // to accept the frame, the receivedSN must be at or past
+      // interfaceRN and within current sliding window, counting
+      // modulo windowMax so the window can wrap past zero.
+      // The last ACK moved the start of the window to RN (next frame requested)
+      // Consequently interfaceRN is the start of the current window
+      return range(interfaceRN, receivedSN) < windowFrames;
    }
    
+   // reliable link initiation, as described in the notes above;
+   // LinkInitializer carries the frames between the two ends
+
+   /**
+    * this end starts or restarts the link: it sends INIT_LINK with
+    * SN=0 and is not active until receiver_ready comes back
+    * @param nowTicks is simulation time the INIT_LINK is sent
+    */
+   public void linkInitStarted(long nowTicks)
+   {
+      restartSendWindow();
+      linkActive = false;
+      initPending = true;
+      rttEstimator.frameSent(0, nowTicks);
+   }
+
+   /**
+    * this end sends INIT_LINK again, receiver_ready not having
+    * come back within the retransmit timeout
+    * @return ticks to wait for receiver_ready before the next try
+    */
+   public long linkInitResent()
+   {
+      rttEstimator.backoff();
+      return rttEstimator.getTimeoutTicks();
+   }
+
+   /**
+    * @return ticks to wait for receiver_ready after an INIT_LINK;
+    *         MAX_LINK_RTT until the link has been timed
+    */
+   public long getLinkInitTimeoutTicks()
+   {
+      return rttEstimator.getTimeoutTicks();
+   }
+
+   /**
+    * the other end sent INIT_LINK: save its SN as RN, restart this
+    * end's sending at SN=0 and become active; the caller replies with
+    * receiver_ready, SN=0
+    * @param receivedSN is SN found in the INIT_LINK frame
+    * @return RN to keep for the Interface
+    */
+   public int initLinkReceived(int receivedSN)
+   {
+      restartSendWindow();
+      linkActive = true;
+      return receivedSN;
+   }
+
+   /**
+    * the other end answered INIT_LINK with receiver_ready: save its
+    * SN as RN, start with SNmin=SNmax=0 and become active
+    * @param nowTicks is simulation time
+    * @return true if this end was waiting for it; false for a
+    *         repeat answering an INIT_LINK sent again
+    */
+   public boolean receiverReadyReceived(long nowTicks)
+   {
+      if(!initPending) return false;
+      initPending = false;
+      linkActive = true;
+      rttEstimator.timedFrameAcked(nowTicks);
+      return true;
+   }
+
+   /**
+    * the DLC must consult this before sending a data frame: a link
+    * is not active until its handshake is done, nor after linkDown()
+    * @return true if this end may send data frames
+    */
+   public boolean isLinkActive()
+   {
+      return linkActive;
+   }
+
+   /**
+    * the link failed: this end stops until it is initiated again,
+    * and its unACKed frames are dropped
+    */
+   public void linkDown()
+   {
+      restartSendWindow();
+      linkActive = false;
+      initPending = false;
+   }
+
+   /**
+    * both ends of a link that is initiated again start at SN=0, so
+    * frames not ACKed before are dropped with their timers
+    */
+   private void restartSendWindow()
+   {
+      if(sendWindow != null)
+         sendWindow.clear();
+      retransmitTicks = 0;
+      rttEstimator.frameResent();
+   }
+
+   // the send window
+
+   /**
+    * buffers a frame taken from the input queue in position SNmax
+    * and advances SNmax, as in state DL_SENDING
+    * @param frame - the frame; kept until it is ACKed
+    * @return SN of the frame
+    */
+   public int bufferFrame(PackedBitSequence frame)
+   {
+      return getSendWindow().add(frame);
+   }
+
+   /**
+    * @param SN is SN of a frame sent and not ACKed
+    * @return the frame buffered in position SN
+    */
+   public PackedBitSequence getBufferedFrame(int SN)
+   {
+      return getSendWindow().get(SN);
+   }
+
+   /**
+    * takes an RN from the other end: if it is in the window, every
+    * frame before it is released and SNmin moves up to it
+    * @param receivedRN is RN found in the frame
+    * @param nowTicks is simulation time
+    * @return number of frames ACKed; 0 if RN was not in the window
+    */
+   public int ackReceived(int receivedRN, long nowTicks)
+   {
+      FrameWindow window = getSendWindow();
+      if(!window.isValidRN(receivedRN)) return 0;
+      RNreceived(window.getSNmin(), receivedRN, nowTicks);
+      return window.release(receivedRN);
+   }
+
+   /**
+    * @return the send window, created at the range of this link
+    *         on first use
+    * @throws IllegalStateException if the range is not a power of
+    *         two, which only setWindow() can fix
+    */
+   public FrameWindow getSendWindow()
+   {
+      if(sendWindow == null)
+      {
+         if(windowMask < 0)
+            throw new IllegalStateException("go-back-n counter range " + windowMax +
+               " is not a power of two; call setWindow() before buffering frames");
+         sendWindow = new FrameWindow(windowMax, windowFrames);
+      }
+      return sendWindow;
+   }
+
+   // retransmission timing
+
+   /**
+    * sets when unACKed frames are sent again
+    * @param retransmitMode - IDLE_LINE for the classic behavior,
+    *        TIMER to wait for the RTT-based retransmit timer
+    */
+   public void setRetransmitMode(RetransmitMode retransmitMode)
+   {
+      this.retransmitMode = retransmitMode;
+   }
+
+   public RetransmitMode getRetransmitMode()
+   {
+      return retransmitMode;
+   }
+
+   public RttEstimator getRttEstimator()
+   {
+      return rttEstimator;
+   }
+
+   /**
+    * records that a data frame went to the physical layer
+    * @param SN is SN of the frame
+    * @param SNmin is SN of the lowest frame sent and not ACKed
+    * @param SNmax is one greater (mod windowMax) than SN of the
+    *        highest frame buffered, so range(SNmin, SNmax) frames
+    *        occupy the window
+    * @param resent is true if the frame was sent before
+    * @param nowTicks is simulation time
+    */
+   public void frameSent(int SN, int SNmin, int SNmax, boolean resent, long nowTicks)
+   {
+      frameSent(SN, SNmin, SNmax, resent, nowTicks, 0);
+   }
+
+   /**
+    * as frameSent(SN, SNmin, SNmax, resent, nowTicks), also keeping
+    * the payload of the frame to count as goodput when it is ACKed
+    * @param SN is SN of the frame
+    * @param SNmin is SN of the lowest frame sent and not ACKed
+    * @param SNmax is one greater (mod windowMax) than SN of the
+    *        highest frame buffered
+    * @param resent is true if the frame was sent before
+    * @param nowTicks is simulation time
+    * @param payloadBits is bits of the frame's packet
+    */
+   public void frameSent(int SN, int SNmin, int SNmax, boolean resent, long nowTicks,
+      int payloadBits)
+   {
+      if(resent)
+         rttEstimator.frameResent();
+      else
+         rttEstimator.frameSent(SN, nowTicks);
+      if(metrics != null)
+      {
+         if(!resent)
+         {
+            firstSentTicks[SN] = nowTicks;
+            sentPayloadBits[SN] = payloadBits;
+         }
+         metrics.frameSent(resent, range(SNmin, SNmax), nowTicks);
+      }
+      // the timer runs for the oldest unACKed frame
+      if(SN == SNmin)
+         retransmitTicks = nowTicks + rttEstimator.getTimeoutTicks();
+   }
+
+   /**
+    * records an RN received from the other end, after it has
+    * been checked to be in the window
+    * @param SNmin is SN of the lowest frame not ACKed, before this RN
+    * @param receivedRN acknowledges every frame before it
+    * @param nowTicks is simulation time
+    */
+   public void RNreceived(int SNmin, int receivedRN, long nowTicks)
+   {
+      if(receivedRN == SNmin) return; // nothing new ACKed
+      if(rttEstimator.isTiming() &&
+         range(SNmin, rttEstimator.getTimedSN()) < range(SNmin, receivedRN))
+         rttEstimator.timedFrameAcked(nowTicks);
+      if(metrics != null)
+         for(int SN = SNmin; SN != receivedRN; SN = incrementSNmax(SN))
+            metrics.frameAcked(nowTicks - firstSentTicks[SN], sentPayloadBits[SN]);
+      // restart the timer for the new oldest frame
+      retransmitTicks = nowTicks + rttEstimator.getTimeoutTicks();
+   }
+
+   /**
+    * tests whether to send the SNmin frame again now; in TIMER
+    * mode an expired timer backs off the retransmit timeout
+    * @param SNmin is SN of the lowest frame sent and not ACKed
+    * @param SNmax is one greater (mod windowMax) than SN of
+    *         highest frame sent and not ACKed
+    * @param nowTicks is simulation time
+    * @return true to go back to SNmin and send again
+    */
+   public boolean resendDue(int SNmin, int SNmax, long nowTicks)
+   {
+      if(!framesRemainUnacked(SNmin, SNmax)) return false;
+      if(retransmitMode == RetransmitMode.IDLE_LINE)
+      {
+         if(metrics != null)
+            metrics.resend(true);
+         return true;
+      }
+      if(nowTicks < retransmitTicks) return false;
+      rttEstimator.backoff();
+      if(metrics != null)
+         metrics.resend(false);
+      return true;
+   }
+
+   /**
+    * @return time of the next retransmit in TIMER mode, so the
+    *         DLC can schedule a wake-up instead of sending
+    */
+   public long getRetransmitTicks()
+   {
+      return retransmitTicks;
+   }
+
+   // acknowledgement of received frames
+
+   /**
+    * sets how this link acknowledges received frames; an ACK timer
+    * only runs when the DLC calls pumpAckTimer()
+    * @param ackBatcher - ACK policy; null for one supervisory frame
+    *        per data frame
+    */
+   public void setAckBatcher(AckBatcher ackBatcher)
+   {
+      this.ackBatcher = ackBatcher;
+      if(ackBatcher != null && metrics != null)
+         ackBatcher.setMetrics(metrics);
+   }
+
+   public AckBatcher getAckBatcher()
+   {
+      return ackBatcher;
+   }
+
+   /**
+    * runs the ACK timer of this link up to the simulation time: the
+    * timer is on the batcher's LocalEventQueue, which the JNW2 DES
+    * does not run, so the DLC calls this with the DES time before each
+    * frameReceived() and at each chance to send; an ACK held below
+    * framesPerAck goes out at the first call at or after its timer
+    * expires
+    * @param nowTicks - simulation time in ticks
+    * @throws Exception from the ACK batcher
+    */
+   public void pumpAckTimer(long nowTicks) throws Exception
+   {
+      if(ackBatcher != null)
+         ackBatcher.pumpTimer(nowTicks);
+   }
+
+   /**
+    * handles the SN of a data frame that passed the CRC check: the
+    * frame is released to the network layer only if its SN is RN;
+    * the ACK batcher, if set, is told either way
+    * @param receivedSN is SN found in the frame
+    * @param interfaceRN is RN state of the Interface
+    * @return RN to keep for the Interface
+    * @throws Exception from the ACK batcher
+    */
+   public int frameReceived(int receivedSN, int interfaceRN) throws Exception
+   {
+      return frameReceived(receivedSN, interfaceRN, 0);
+   }
+
+   /**
+    * as frameReceived(receivedSN, interfaceRN), also counting the
+    * payload of a frame released to the network layer as goodput
+    * @param receivedSN is SN found in the frame
+    * @param interfaceRN is RN state of the Interface
+    * @param payloadBits is bits of the frame's packet
+    * @return RN to keep for the Interface
+    * @throws Exception from the ACK batcher
+    */
+   public int frameReceived(int receivedSN, int interfaceRN, int payloadBits)
+      throws Exception
+   {
+      if(receivedSN != interfaceRN)
+      {
+         if(ackBatcher != null)
+            ackBatcher.frameOutOfOrder(interfaceRN);
+         return interfaceRN;
+      }
+      int newRN = wrap(interfaceRN + 1);
+      if(metrics != null)
+         metrics.frameDelivered(payloadBits);
+      if(ackBatcher != null)
+         ackBatcher.frameAccepted(newRN);
+      return newRN;
+   }
+
+   /**
+    * RN to insert while finishing a data frame; with an ACK batcher
+    * this frame carries the ACK for everything received so far
+    * @param interfaceRN is RN state of the Interface
+    * @return RN for the frame
+    */
+   public int RNforDataFrame(int interfaceRN)
+   {
+      return ackBatcher == null ? interfaceRN : ackBatcher.piggybackRN();
+   }
+
+   // framing with pooled buffers, so a busy link does not
+   // allocate a new frame for every stuff and unstuff
+
+   /**
+    * stuffs a finished frame (RN and CRC-FCS inserted) for sending
+    * @param frame - the unstuffed frame
+    * @return stuffed frame; give it back with releaseFrameBuffer()
+    *         once the physical layer has sent it
+    */
+   public PackedBitSequence stuffFrameForSend(PackedBitSequence frame)
+   {
+      PackedBitSequence stuffed = framePool.acquire();
+      BitStuffing.stuff(frame, stuffed);
+      if(metrics != null)
+         metrics.frameStuffed(frame.size(), stuffed.size());
+      return stuffed;
+   }
+
+   /**
+    * unstuffs a frame received from the physical layer
+    * @param stuffed - the frame as received
+    * @return unstuffed frame; give it back with releaseFrameBuffer()
+    *         once it has been checked and delivered
+    */
+   public PackedBitSequence unstuffReceivedFrame(PackedBitSequence stuffed)
+   {
+      PackedBitSequence frame = framePool.acquire();
+      BitStuffing.unstuff(stuffed, frame);
+      return frame;
+   }
+
+   /**
+    * stuffs a batch of queued frames ahead of transmission, in
+    * parallel when a framing pool is set; the frames must already
+    * be finished (RN and CRC-FCS inserted), so a frame whose RN
+    * changes before it is sent must be stuffed again
+    * @param frames - the unstuffed frames
+    * @param count - number of frames, starting at index 0
+    * @return stuffed frames, in the same order; give each back with
+    *         releaseFrameBuffer() once it has been sent
+    */
+   public PackedBitSequence[] prestuffFrames(PackedBitSequence[] frames, int count)
+   {
+      // the buffer pool is not thread-safe, so take buffers here
+      PackedBitSequence[] stuffed = new PackedBitSequence[count];
+      for(int index = 0; index < count; ++index)
+         stuffed[index] = framePool.acquire();
+      BitStuffing.stuff(frames, stuffed, count, framingPool);
+      if(metrics != null)
+         for(int index = 0; index < count; ++index)
+            metrics.frameStuffed(frames[index].size(), stuffed[index].size());
+      return stuffed;
+   }
+
+   /**
+    * sets the pool used by prestuffFrames()
+    * @param framingPool - pool to stuff in; null for the event thread
+    */
+   public void setFramingPool(ForkJoinPool framingPool)
+   {
+      this.framingPool = framingPool;
+   }
+
+   /**
+    * returns a frame buffer to this link's pool
+    * @param frame - buffer from stuffFrameForSend() or
+    *        unstuffReceivedFrame(); not to be used again
+    */
+   public void releaseFrameBuffer(PackedBitSequence frame)
+   {
+      framePool.release(frame);
+   }
+
   // Test code
    @SuppressWarnings("empty-statement")
   void testGoBackN()
@@ -0,0 +1,258 @@
+/**
+ * Java Network Workbench 2 (JNW2)
+ * Copyright 2013-2018 Networking and Simulation Laboratory/George Mason University
+ *
+ * Calculate routingMatrix using Dijkstra's algorithm with an indexed
+ * binary heap over a CsrTopology, O((V+E) log V) per source router
+ *
+ * @version 2.2.7
+ */
+
+package JNW2.utility;
+
+import JNW2.*;
+import static JNW2.Constants.*;
+import JNW2.parsers.*;
+
+public class HeapDijkstraRouting implements RoutingRowEngine
+{
+  // simulation environment
+  static SimLogger simLogger = SimLogger.getInstance(SimLogger.INFO);
+
+  // instance variables
+  int numberOfSubnets;
+  static String configFileName;
+
+  /**
+   * Count times through inner loop to compare with DijkstraRouting
+   * and BellmanFordRouting; here it counts links relaxed
+   */
+  int innerLoopCount = 0;
+
+  /**
+   * Links of the WAN, built once from ConnectivityMatrix
+   * if not supplied
+   */
+  CsrTopology csr;
+
+  /**
+   * Scratch state reused for every row
+   */
+  float[] C;
+  boolean[] visited;
+  IndexedMinHeap heap;
+
+  /**
+   * Creates an engine for the topology of the current simulation
+   */
+  public HeapDijkstraRouting()
+  {
+    numberOfSubnets = SimulationEngine.getInstance().getTopology().getNumberOfSubnets();
+  }
+
+  /**
+   * Creates an engine for a given topology; engines may share one
+   * topology since each has its own scratch state
+   * @param csr - links of the WAN
+   */
+  public HeapDijkstraRouting(CsrTopology csr)
+  {
+    this.csr = csr;
+    numberOfSubnets = csr.getNumberOfSubnets();
+    allocateScratch();
+  }
+
+  /**
+   * Builds a routing table
+   * @return routingMatrix
+   * @throws Exception
+   */
+  public int[][] computeRoutingMatrix() throws Exception
+  {
+    // JNW2 network array indexes range from 1 to numberOfSubnets
+    // thus arrays must have dimension numberOfSubnets+1
+    int[][] routingMatrix = new int[numberOfSubnets+1][];
+
+    buildTopology();
+
+    // compute each row of the matrix
+    for(int rowNumber = 1; rowNumber <= numberOfSubnets; ++rowNumber)
+      routingMatrix[rowNumber] = computeRoutingRow(rowNumber);
+
+    // print out inner loop count for comparison
+    simLogger.logInfo("Heap Dijkstra inner loop count:" + innerLoopCount);
+
+    // return to composite
+    return routingMatrix;
+  }
+
+  /**
+   * Builds a routing table, computing rows in parallel
+   * @param parallelism - number of worker threads (zero or less for
+   * one per processor)
+   * @return routingMatrix
+   * @throws Exception
+   */
+  public int[][] computeRoutingMatrix(int parallelism) throws Exception
+  {
+    buildTopology();
+    final CsrTopology shared = csr;
+    ParallelRouting parallelRouting = new ParallelRouting(parallelism);
+    return parallelRouting.computeRoutingMatrix(numberOfSubnets,
+      new ParallelRouting.EngineFactory()
+      {
+        public RoutingRowEngine newEngine()
+        {
+          return new HeapDijkstraRouting(shared);
+        }
+      }, "Heap Dijkstra");
+  }
+
+  /**
+   * @return count of times through the inner loop
+   */
+  public int getInnerLoopCount()
+  {
+    return innerLoopCount;
+  }
+
+  /**
+   * Reads every link out of ConnectivityMatrix once, if no
+   * topology was supplied, and allocates the scratch state
+   * @throws Exception
+   */
+  void buildTopology() throws Exception
+  {
+    if(csr != null) return;
+    csr = CsrTopology.fromSimulation();
+    allocateScratch();
+  }
+
+  private void allocateScratch()
+  {
+    C = new float[numberOfSubnets+1];
+    visited = new boolean[numberOfSubnets+1];
+    heap = new IndexedMinHeap(numberOfSubnets+1);
+  }
+
+  /**
+   * Builds a row in a routing table
+   * @param sourceRouter - subnet number of router (at packet source)
+   * that seeks to find an optimal set of routes for its packets
+   * @return forwardRouters - next-hop router to reach each network number;
+   * the source router for itself and zero if there is no route
+   */
+  public int[] computeRoutingRow(int sourceRouter) throws Exception
+  {
+    // a row may be asked for before any matrix was computed
+    buildTopology();
+    int[] forwardRouters = new int[numberOfSubnets+1];
+
+    // initialize costs; only the source router is reachable so far
+    for(int router = 1; router <= numberOfSubnets; ++router)
+    {
+      C[router] = HUGEFLOAT;
+      visited[router] = false;
+    }
+    heap.clear();
+    C[sourceRouter] = 0;
+    forwardRouters[sourceRouter] = sourceRouter;
+    heap.insertOrDecrease(sourceRouter, 0);
+    int[] offsets = csr.offsets;
+    int[] neighbors = csr.neighbors;
+    float[] costs = csr.costs;
+
+    // settle routers in order of least cost, relaxing links out of each
+    while(!heap.isEmpty())
+    {
+      int fromRouter = heap.extractMin();
+      visited[fromRouter] = true;
+      int endLink = offsets[fromRouter+1];
+      for(int link = offsets[fromRouter]; link < endLink; ++link)
+      {
+        innerLoopCount++;
+        int toRouter = neighbors[link];
+        if(visited[toRouter]) continue;
+        float possibleCost = C[fromRouter] + costs[link];
+        if(possibleCost < C[toRouter])
+        {
+          C[toRouter] = possibleCost;
+          if(fromRouter == sourceRouter)
+            forwardRouters[toRouter] = toRouter;
+          else
+            forwardRouters[toRouter] = forwardRouters[fromRouter];
+          heap.insertOrDecrease(toRouter, possibleCost);
+        }
+      }
+    }
+
+    return forwardRouters;
+
+  }// end computeRoutingRow()
+
+  /**
+   * make a test run of HeapDijkstraRouting
+   *
+   * includes printing routing table but not running simulation
+   */
+  static class TestHeapDijkstraRouting
+  {
+    public TestHeapDijkstraRouting()
+    {
+      // setup simulation environment
+      Topology testTopology = new Topology(configFileName);
+      SimulationEngine testSimEngine = new SimulationEngine(testTopology);
+      testSimEngine.setInstance(testSimEngine);
+      simLogger.setPrintAtLayers(testTopology.getPrintAtLayers());
+      System.out.println("Running heap Dijkstra routing test");
+
+      // load network topology from config file
+      ConfigParser configParser = new ConfigParser(testTopology);
+
+      // parse the configuration
+      try
+      {
+        if(!configParser.parseConfig())return;
+      }
+      catch(Exception e)
+      {
+        System.out.println("parse of file:" + configFileName + " bad input:" +
+          e.getMessage());
+        return;
+      }
+
+      // load the configuration into ConnectivityMatrix
+      // and compare against the classic engines
+      try
+      {
+        testSimEngine.loadConfiguration();
+        int[][] routingMatrix = new HeapDijkstraRouting().computeRoutingMatrix();
+        new BellmanFordRouting().computeRoutingMatrix();
+        for(int rowNumber = 1; rowNumber < routingMatrix.length; ++rowNumber)
+        {
+          String row = "";
+          for(int colNumber = 1; colNumber < routingMatrix.length; ++colNumber)
+            row += routingMatrix[rowNumber][colNumber] + " ";
+          simLogger.logInfo("Heap Dijkstra routing row " + rowNumber + ": " + row);
+        }
+      }
+      catch(Exception e)
+      {
+        simLogger.logError("Exception loading configuration:" + e);
+        simLogger.logException(e);
+      }
+
+    }// end TestHeapDijkstraRouting() constructor
+
+  }// end class TestHeapDijkstraRouting
+
+  // test HeapDijkstraRouting
+  public static void main(String args[])
+  {
+    configFileName = args[0];
+    TestHeapDijkstraRouting testHeapDijkstraRouting;
+    testHeapDijkstraRouting = new TestHeapDijkstraRouting();
+
+  }// end main()
+
+}// end class HeapDijkstraRouting
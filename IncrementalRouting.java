@@ -0,0 +1,450 @@
+/**
+ * Java Network Workbench 2 (JNW2)
+ * Copyright 2013-2018 Networking and Simulation Laboratory/George Mason University
+ *
+ * Keeps a shortest-path tree for every source router and repairs only
+ * the affected part of each tree when the cost of one link changes
+ * (dynamic shortest paths in the style of Ramalingam and Reps)
+ *
+ * @version 2.2.7
+ */
+
+package JNW2.utility;
+
+import JNW2.*;
+import static JNW2.Constants.*;
+import JNW2.parsers.*;
+import java.util.ArrayList;
+import java.util.List;
+
+public class IncrementalRouting
+{
+  // simulation environment
+  static SimLogger simLogger = SimLogger.getInstance(SimLogger.INFO);
+
+  // instance variables
+  int numberOfSubnets;
+  static String configFileName;
+
+  /**
+   * Count links relaxed, to compare a repair with a full recomputation
+   */
+  int innerLoopCount = 0;
+
+  /**
+   * Links of the WAN with their current costs; a link that is down
+   * keeps its place with cost HUGEFLOAT
+   */
+  CsrTopology csr;
+
+  /**
+   * Shortest-path tree for each source router (first dimension):
+   * C is the cost, parents the previous router on the path (zero for
+   * the source and unreachable routers), routingMatrix the next hop
+   */
+  float[][] C;
+  int[][] parents;
+  int[][] routingMatrix;
+
+  // scratch state for repairs: routers whose path may change
+  // with their next hop before the repair
+  IndexedMinHeap heap;
+  boolean[] affected;
+  int[] affectedRouters;
+  int[] oldForwardRouters;
+  int affectedCount;
+
+  /**
+   * A next-hop entry of the routingMatrix that was changed by a repair
+   */
+  public static class RouteChange
+  {
+    public final int sourceRouter;
+    public final int destRouter;
+    public final int oldForwardRouter;
+    public final int newForwardRouter;
+
+    RouteChange(int sourceRouter, int destRouter,
+      int oldForwardRouter, int newForwardRouter)
+    {
+      this.sourceRouter = sourceRouter;
+      this.destRouter = destRouter;
+      this.oldForwardRouter = oldForwardRouter;
+      this.newForwardRouter = newForwardRouter;
+    }
+
+    @Override
+    public String toString()
+    {
+      return "source router:" + sourceRouter + " dest router:" + destRouter +
+        " next hop:" + oldForwardRouter + "->" + newForwardRouter;
+    }
+  }// end class RouteChange
+
+  /**
+   * Creates the service for the topology of the current simulation
+   */
+  public IncrementalRouting()
+  {
+    numberOfSubnets = SimulationEngine.getInstance().getTopology().getNumberOfSubnets();
+  }
+
+  /**
+   * Creates the service for a given topology, whose link
+   * costs it will change
+   * @param csr - links of the WAN, including those that are down
+   * with cost HUGEFLOAT, since only links in it can change cost
+   */
+  public IncrementalRouting(CsrTopology csr)
+  {
+    this.csr = csr;
+    numberOfSubnets = csr.getNumberOfSubnets();
+  }
+
+  /**
+   * Builds every shortest-path tree from scratch
+   * @return routingMatrix, whose rows are updated in place by
+   * later calls to changeLinkCost()
+   * @throws Exception
+   */
+  public int[][] computeRoutingMatrix() throws Exception
+  {
+    // links that are down stay in the topology, so they can come up
+    if(csr == null)
+      csr = CsrTopology.fromSimulation(true);
+    csr.buildInLinks();
+
+    // JNW2 network array indexes range from 1 to numberOfSubnets
+    // thus arrays must have dimension numberOfSubnets+1
+    C = new float[numberOfSubnets+1][numberOfSubnets+1];
+    parents = new int[numberOfSubnets+1][numberOfSubnets+1];
+    routingMatrix = new int[numberOfSubnets+1][numberOfSubnets+1];
+    heap = new IndexedMinHeap(numberOfSubnets+1);
+    affected = new boolean[numberOfSubnets+1];
+    affectedRouters = new int[numberOfSubnets];
+    oldForwardRouters = new int[numberOfSubnets];
+
+    for(int sourceRouter = 1; sourceRouter <= numberOfSubnets; ++sourceRouter)
+    {
+      float[] cost = C[sourceRouter];
+      for(int router = 1; router <= numberOfSubnets; ++router)
+        cost[router] = HUGEFLOAT;
+      cost[sourceRouter] = 0;
+      routingMatrix[sourceRouter][sourceRouter] = sourceRouter;
+      heap.clear();
+      heap.insertOrDecrease(sourceRouter, 0);
+      settle(sourceRouter, false);
+    }
+
+    simLogger.logInfo("Incremental routing inner loop count:" + innerLoopCount);
+    return routingMatrix;
+  }
+
+  /**
+   * Changes the cost of the link in both directions between two routers
+   * @see #changeLinkCost(int, int, float)
+   */
+  public List<RouteChange> changeLink(int routerA, int routerB, float newCost)
+    throws Exception
+  {
+    List<RouteChange> changes = changeLinkCost(routerA, routerB, newCost);
+    changes.addAll(changeLinkCost(routerB, routerA, newCost));
+    return changes;
+  }
+
+  /**
+   * Changes the cost of one existing link and repairs every
+   * shortest-path tree the change affects
+   * @param fromRouter - router at the sending end of the link
+   * @param toRouter - router at the receiving end of the link
+   * @param newCost - new cost; zero or HUGEFLOAT takes the link down
+   * @return next-hop entries of the routingMatrix that changed
+   * @throws Exception if the topology has no link, up or down,
+   * between the routers
+   */
+  public List<RouteChange> changeLinkCost(int fromRouter, int toRouter, float newCost)
+    throws Exception
+  {
+    int link = csr.findLink(fromRouter, toRouter);
+    if(link < 0)
+      throw new Exception("no link from router " + fromRouter +
+        " to router " + toRouter);
+    if(newCost < 0.0001 || newCost >= HUGEFLOAT)
+      newCost = HUGEFLOAT;
+
+    float oldCost = csr.getCost(link);
+    csr.setCost(link, newCost);
+    List<RouteChange> changes = new ArrayList<RouteChange>();
+    if(newCost == oldCost) return changes;
+
+    for(int sourceRouter = 1; sourceRouter <= numberOfSubnets; ++sourceRouter)
+    {
+      if(newCost < oldCost)
+        repairDecrease(sourceRouter, fromRouter, toRouter, newCost, changes);
+      else if(parents[sourceRouter][toRouter] == fromRouter)
+        repairIncrease(sourceRouter, toRouter, changes);
+      // otherwise the link is not in this source's tree: nothing to do
+    }
+    return changes;
+  }
+
+  /**
+   * A cheaper link can only shorten paths through it; push the
+   * improvement outwards from toRouter
+   */
+  private void repairDecrease(int sourceRouter, int fromRouter, int toRouter,
+    float newCost, List<RouteChange> changes)
+  {
+    float[] cost = C[sourceRouter];
+    float possibleCost = cost[fromRouter] + newCost;
+    if(possibleCost >= cost[toRouter]) return;
+
+    affectedCount = 0;
+    markAffected(sourceRouter, toRouter);
+    cost[toRouter] = possibleCost;
+    parents[sourceRouter][toRouter] = fromRouter;
+    heap.clear();
+    heap.insertOrDecrease(toRouter, possibleCost);
+    settle(sourceRouter, true);
+    reportChanges(sourceRouter, changes);
+  }
+
+  /**
+   * A dearer (or failed) tree link invalidates the subtree below it;
+   * reattach that subtree through the cheapest links from outside it
+   */
+  private void repairIncrease(int sourceRouter, int subtreeRoot,
+    List<RouteChange> changes)
+  {
+    float[] cost = C[sourceRouter];
+    int[] parent = parents[sourceRouter];
+    int[] forwardRouters = routingMatrix[sourceRouter];
+
+    // collect the subtree: children of a router are among its neighbors
+    affectedCount = 0;
+    markAffected(sourceRouter, subtreeRoot);
+    for(int next = 0; next < affectedCount; ++next)
+    {
+      int router = affectedRouters[next];
+      for(int link = csr.offsets[router]; link < csr.offsets[router+1]; ++link)
+      {
+        int child = csr.neighbors[link];
+        if(!affected[child] && parent[child] == router)
+          markAffected(sourceRouter, child);
+      }
+    }
+
+    // best cost into each affected router from the unaffected tree
+    heap.clear();
+    for(int next = 0; next < affectedCount; ++next)
+    {
+      int router = affectedRouters[next];
+      cost[router] = HUGEFLOAT;
+      parent[router] = 0;
+      forwardRouters[router] = 0;
+      for(int in = csr.inOffsets[router]; in < csr.inOffsets[router+1]; ++in)
+      {
+        innerLoopCount++;
+        int fromRouter = csr.inSources[in];
+        if(affected[fromRouter]) continue;
+        float possibleCost = cost[fromRouter] + csr.costs[csr.inLinks[in]];
+        if(possibleCost < cost[router])
+        {
+          cost[router] = possibleCost;
+          parent[router] = fromRouter;
+        }
+      }
+      if(cost[router] < HUGEFLOAT)
+        heap.insertOrDecrease(router, cost[router]);
+    }
+
+    settle(sourceRouter, false);
+    reportChanges(sourceRouter, changes);
+  }
+
+  private void markAffected(int sourceRouter, int router)
+  {
+    affected[router] = true;
+    oldForwardRouters[affectedCount] = routingMatrix[sourceRouter][router];
+    affectedRouters[affectedCount++] = router;
+  }
+
+  /**
+   * Adds the next hops that differ from those saved by markAffected()
+   * to changes and clears the affected set
+   */
+  private void reportChanges(int sourceRouter, List<RouteChange> changes)
+  {
+    int[] forwardRouters = routingMatrix[sourceRouter];
+    for(int next = 0; next < affectedCount; ++next)
+    {
+      int router = affectedRouters[next];
+      affected[router] = false;
+      if(oldForwardRouters[next] != forwardRouters[router])
+        changes.add(new RouteChange(sourceRouter, router,
+          oldForwardRouters[next], forwardRouters[router]));
+    }
+    affectedCount = 0;
+  }
+
+  /**
+   * Dijkstra's algorithm from the routers already on the heap, whose
+   * costs and parents are set; with markImproved, routers that get a
+   * lower cost are added to the affected set
+   */
+  private void settle(int sourceRouter, boolean markImproved)
+  {
+    float[] cost = C[sourceRouter];
+    int[] parent = parents[sourceRouter];
+    int[] forwardRouters = routingMatrix[sourceRouter];
+    while(!heap.isEmpty())
+    {
+      int fromRouter = heap.extractMin();
+      if(parent[fromRouter] != 0)
+        forwardRouters[fromRouter] = nextHop(sourceRouter, parent[fromRouter], fromRouter);
+      for(int link = csr.offsets[fromRouter]; link < csr.offsets[fromRouter+1]; ++link)
+      {
+        innerLoopCount++;
+        int toRouter = csr.neighbors[link];
+        float possibleCost = cost[fromRouter] + csr.costs[link];
+        if(possibleCost < cost[toRouter])
+        {
+          if(markImproved && !affected[toRouter])
+            markAffected(sourceRouter, toRouter);
+          cost[toRouter] = possibleCost;
+          parent[toRouter] = fromRouter;
+          heap.insertOrDecrease(toRouter, possibleCost);
+        }
+      }
+    }
+  }
+
+  private int nextHop(int sourceRouter, int parentRouter, int router)
+  {
+    if(parentRouter == sourceRouter) return router;
+    return routingMatrix[sourceRouter][parentRouter];
+  }
+
+  /**
+   * @return count of links relaxed so far
+   */
+  public int getInnerLoopCount()
+  {
+    return innerLoopCount;
+  }
+
+  /**
+   * @return current cost from sourceRouter to destRouter
+   */
+  public float getCost(int sourceRouter, int destRouter)
+  {
+    return C[sourceRouter][destRouter];
+  }
+
+  /**
+   * make a test run of IncrementalRouting
+   *
+   * takes each link of the WAN down and up again and checks every
+   * repaired cost against a full HeapDijkstraRouting recomputation
+   */
+  static class TestIncrementalRouting
+  {
+    public TestIncrementalRouting()
+    {
+      // setup simulation environment
+      Topology testTopology = new Topology(configFileName);
+      SimulationEngine testSimEngine = new SimulationEngine(testTopology);
+      testSimEngine.setInstance(testSimEngine);
+      simLogger.setPrintAtLayers(testTopology.getPrintAtLayers());
+      System.out.println("Running incremental routing test");
+
+      // load network topology from config file
+      ConfigParser configParser = new ConfigParser(testTopology);
+
+      // parse the configuration
+      try
+      {
+        if(!configParser.parseConfig())return;
+      }
+      catch(Exception e)
+      {
+        System.out.println("parse of file:" + configFileName + " bad input:" +
+          e.getMessage());
+        return;
+      }
+
+      // load the configuration into ConnectivityMatrix, then change
+      // each link and compare against a full recomputation
+      try
+      {
+        testSimEngine.loadConfiguration();
+        IncrementalRouting incrementalRouting = new IncrementalRouting();
+        incrementalRouting.computeRoutingMatrix();
+        CsrTopology csr = incrementalRouting.csr;
+        int mismatches = 0;
+        int routeChanges = 0;
+        for(int fromRouter = 1; fromRouter <= csr.getNumberOfSubnets(); ++fromRouter)
+          for(int link = csr.offsets[fromRouter]; link < csr.offsets[fromRouter+1]; ++link)
+          {
+            // a link that is up goes down, one that is down comes up
+            int toRouter = csr.neighbors[link];
+            float cost = csr.getCost(link);
+            float changedCost = cost < HUGEFLOAT ? HUGEFLOAT : 1.0f;
+            routeChanges += incrementalRouting.changeLinkCost(fromRouter, toRouter, changedCost).size();
+            mismatches += compareWithFullRecomputation(incrementalRouting);
+            routeChanges += incrementalRouting.changeLinkCost(fromRouter, toRouter, cost).size();
+            mismatches += compareWithFullRecomputation(incrementalRouting);
+          }
+        System.out.println("links changed:" + 2 * csr.getNumberOfLinks() +
+          " next hops changed:" + routeChanges + " inner loop count:" +
+          incrementalRouting.getInnerLoopCount());
+        System.out.println(mismatches == 0 ? "Passed: repairs match full recomputation" :
+          "Failed: " + mismatches + " costs differ from full recomputation");
+      }
+      catch(Exception e)
+      {
+        simLogger.logError("Exception loading configuration:" + e);
+        simLogger.logException(e);
+      }
+
+    }// end TestIncrementalRouting() constructor
+
+    /**
+     * @return number of costs that differ from those found by
+     * HeapDijkstraRouting on the same link costs
+     */
+    static int compareWithFullRecomputation(IncrementalRouting incrementalRouting)
+      throws Exception
+    {
+      int numberOfSubnets = incrementalRouting.numberOfSubnets;
+      HeapDijkstraRouting heapDijkstraRouting =
+        new HeapDijkstraRouting(incrementalRouting.csr.copy());
+      int mismatches = 0;
+      for(int sourceRouter = 1; sourceRouter <= numberOfSubnets; ++sourceRouter)
+      {
+        heapDijkstraRouting.computeRoutingRow(sourceRouter);
+        for(int destRouter = 1; destRouter <= numberOfSubnets; ++destRouter)
+        {
+          float expected = heapDijkstraRouting.C[destRouter];
+          float repaired = incrementalRouting.getCost(sourceRouter, destRouter);
+          boolean reachable = expected < HUGEFLOAT;
+          if(reachable != (repaired < HUGEFLOAT) ||
+            (reachable && Math.abs(expected - repaired) > 0.001f * Math.max(1.0f, expected)))
+            ++mismatches;
+        }
+      }
+      return mismatches;
+    }
+
+  }// end class TestIncrementalRouting
+
+  // test IncrementalRouting
+  public static void main(String args[])
+  {
+    configFileName = args[0];
+    TestIncrementalRouting testIncrementalRouting;
+    testIncrementalRouting = new TestIncrementalRouting();
+
+  }// end main()
+
+}// end class IncrementalRouting
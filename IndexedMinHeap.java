@@ -0,0 +1,131 @@
+/**
+ * Java Network Workbench 2 (JNW2)
+ * Copyright 2013-2018 Networking and Simulation Laboratory/George Mason University
+ *
+ * Indexed binary min-heap of router numbers keyed by path cost,
+ * with decrease-key, used by the heap-based routing engines
+ *
+ * @version 2.2.7
+ */
+
+package JNW2.utility;
+
+class IndexedMinHeap
+{
+  // instance variables
+  private final int[] heap;      // router numbers in heap order
+  private final int[] position;  // heap index of each router, -1 if absent
+  private final float[] keys;    // current key of each router
+  private int size;
+
+  /**
+   * Creates a heap able to hold router numbers 0 to capacity-1
+   * @param capacity - one greater than the largest router number
+   */
+  IndexedMinHeap(int capacity)
+  {
+    heap = new int[capacity];
+    position = new int[capacity];
+    keys = new float[capacity];
+    for(int router = 0; router < capacity; ++router)
+      position[router] = -1;
+    size = 0;
+  }
+
+  /**
+   * Empties the heap so it can be reused for the next routing row
+   */
+  void clear()
+  {
+    for(int index = 0; index < size; ++index)
+      position[heap[index]] = -1;
+    size = 0;
+  }
+
+  boolean isEmpty()
+  {
+    return size == 0;
+  }
+
+  boolean contains(int router)
+  {
+    return position[router] >= 0;
+  }
+
+  /**
+   * Inserts router with the given key, or lowers its key if it is
+   * already in the heap with a higher one
+   * @param router - router number
+   * @param key - path cost to the router
+   */
+  void insertOrDecrease(int router, float key)
+  {
+    if(position[router] < 0)
+    {
+      heap[size] = router;
+      position[router] = size;
+      keys[router] = key;
+      siftUp(size++);
+    }
+    else if(key < keys[router])
+    {
+      keys[router] = key;
+      siftUp(position[router]);
+    }
+  }
+
+  /**
+   * Removes the router with the lowest key
+   * @return router number
+   */
+  int extractMin()
+  {
+    int minRouter = heap[0];
+    position[minRouter] = -1;
+    --size;
+    if(size > 0)
+    {
+      heap[0] = heap[size];
+      position[heap[0]] = 0;
+      siftDown(0);
+    }
+    return minRouter;
+  }
+
+  private void siftUp(int index)
+  {
+    int router = heap[index];
+    float key = keys[router];
+    while(index > 0)
+    {
+      int parent = (index - 1) >>> 1;
+      if(keys[heap[parent]] <= key) break;
+      heap[index] = heap[parent];
+      position[heap[index]] = index;
+      index = parent;
+    }
+    heap[index] = router;
+    position[router] = index;
+  }
+
+  private void siftDown(int index)
+  {
+    int router = heap[index];
+    float key = keys[router];
+    int half = size >>> 1;
+    while(index < half)
+    {
+      int child = 2*index + 1;
+      int right = child + 1;
+      if(right < size && keys[heap[right]] < keys[heap[child]])
+        child = right;
+      if(key <= keys[heap[child]]) break;
+      heap[index] = heap[child];
+      position[heap[index]] = index;
+      index = child;
+    }
+    heap[index] = router;
+    position[router] = index;
+  }
+
+}// end class IndexedMinHeap
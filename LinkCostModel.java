@@ -0,0 +1,144 @@
+/**
+ * Java Network Workbench 2 (JNW2)
+ * Copyright 2013-2018 Networking and Simulation Laboratory/George Mason University
+ *
+ * Cost of a WAN link for the routing engines, computed from the link's
+ * data rate, propagation delay and measured load instead of taken
+ * directly from ConnectivityMatrix
+ *
+ * @version 2.2.7
+ */
+
+package JNW2.utility;
+
+import static JNW2.Constants.*;
+
+public interface LinkCostModel
+{
+  /**
+   * @param fromRouter - router at the sending end of the link
+   * @param toRouter - router at the receiving end of the link
+   * @return cost of the link in seconds, or HUGEFLOAT if it is down
+   * @throws Exception
+   */
+  float linkCost(int fromRouter, int toRouter) throws Exception;
+
+  /**
+   * Measured state of the links, for example from interface statistics
+   */
+  interface LinkLoadSource
+  {
+    /**
+     * @return bits waiting to be sent on the link from fromRouter
+     * to toRouter
+     */
+    float queuedBits(int fromRouter, int toRouter) throws Exception;
+  }
+
+  /**
+   * Time to send a reference frame: slow links cost more
+   */
+  class InverseDataRate implements LinkCostModel
+  {
+    final int[][] links;
+    final float referenceBits;
+
+    /**
+     * @param links - data rate in kb/s between each pair of routers,
+     * zero if none (the <links> matrix of the config file)
+     * @param referenceBits - size of the reference frame
+     */
+    public InverseDataRate(int[][] links, float referenceBits)
+    {
+      this.links = links;
+      this.referenceBits = referenceBits;
+    }
+
+    public float linkCost(int fromRouter, int toRouter)
+    {
+      int dataRate = links[fromRouter][toRouter];
+      if(dataRate <= 0) return HUGEFLOAT;
+      return referenceBits / (dataRate * 1000f);
+    }
+  }// end class InverseDataRate
+
+  /**
+   * Propagation delay of each link
+   */
+  class PropagationDelay implements LinkCostModel
+  {
+    final float[][] delays;
+
+    /**
+     * @param delays - propagation delay in seconds between each pair
+     * of routers
+     */
+    public PropagationDelay(float[][] delays)
+    {
+      this.delays = delays;
+    }
+
+    public float linkCost(int fromRouter, int toRouter)
+    {
+      return delays[fromRouter][toRouter];
+    }
+  }// end class PropagationDelay
+
+  /**
+   * Time for the bits already queued on a link to drain, so that
+   * busy links cost more
+   */
+  class QueueOccupancy implements LinkCostModel
+  {
+    final int[][] links;
+    final LinkLoadSource loads;
+
+    /**
+     * @param links - data rate in kb/s between each pair of routers
+     * @param loads - bits queued on each link
+     */
+    public QueueOccupancy(int[][] links, LinkLoadSource loads)
+    {
+      this.links = links;
+      this.loads = loads;
+    }
+
+    public float linkCost(int fromRouter, int toRouter) throws Exception
+    {
+      int dataRate = links[fromRouter][toRouter];
+      if(dataRate <= 0) return HUGEFLOAT;
+      return loads.queuedBits(fromRouter, toRouter) / (dataRate * 1000f);
+    }
+  }// end class QueueOccupancy
+
+  /**
+   * Weighted sum of other models; the link is down if it is down
+   * in any of them
+   */
+  class Weighted implements LinkCostModel
+  {
+    final LinkCostModel[] models;
+    final float[] weights;
+
+    public Weighted(LinkCostModel[] models, float[] weights)
+    {
+      if(models.length != weights.length)
+        throw new IllegalArgumentException("need one weight per cost model");
+      this.models = models.clone();
+      this.weights = weights.clone();
+    }
+
+    public float linkCost(int fromRouter, int toRouter) throws Exception
+    {
+      float linkCost = 0;
+      for(int model = 0; model < models.length; ++model)
+      {
+        float modelCost = models[model].linkCost(fromRouter, toRouter);
+        if(modelCost >= HUGEFLOAT) return HUGEFLOAT;
+        linkCost += weights[model] * modelCost;
+      }
+      return linkCost;
+    }
+  }// end class Weighted
+
+}// end interface LinkCostModel
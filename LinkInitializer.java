@@ -0,0 +1,369 @@
+/**
+ * Java Network Workbench 2 (JNW2)
+ * Copyright 2013-2018 Networking and Simulation Laboratory/George Mason University
+ *
+ * Brings up the reliable links of a WAN with the INIT_LINK /
+ * receiver_ready handshake, every link at once in one scheduled
+ * batch: each link starts at a jittered time, its frames take the
+ * link's one-way delay, and an unanswered INIT_LINK is sent again
+ * after the retransmit timeout plus jitter, so links that restart
+ * together do not retry together
+ *
+ * @version 2.2.7
+ */
+
+package JNW2.interfaces;
+
+import JNW2.*;
+import JNW2.message.*;
+import JNW2.nodes.*;
+import JNW2.stack.*;
+import JNW2.utility.*;
+import java.util.Arrays;
+
+public class LinkInitializer
+{
+  /**
+   * Told when a link has finished its handshake
+   */
+  public interface LinkUpListener
+  {
+    void linkUp(int link, long ticks) throws Exception;
+  }
+
+  // instance variables
+  private final LocalEventQueue events;
+  private final RandomNumber random;
+  private LinkUpListener listener = null;
+
+  /**
+   * each retry waits the retransmit timeout times 1 to 1+retryJitter;
+   * each start is up to startSpreadTicks after the batch start
+   */
+  private float retryJitter = 0.5f;
+  private long startSpreadTicks = 0;
+
+  /**
+   * chance that an INIT_LINK or receiver_ready frame is lost, as on
+   * a noisy line
+   */
+  private float lossRate = 0.0f;
+
+  // the links: the end that sends INIT_LINK, the end that answers,
+  // one-way delay, and a count of starts so the events of an earlier
+  // start are ignored after a flap
+  private int linkCount = 0;
+  private GoBackN[] initiators = new GoBackN[16];
+  private GoBackN[] responders = new GoBackN[16];
+  private long[] oneWayTicks = new long[16];
+  private int[] generations = new int[16];
+  private long[] upTicks = new long[16];
+
+  // statistics
+  private long initFramesSent = 0;
+  private long readyFramesSent = 0;
+  private long framesLost = 0;
+  private long retries = 0;
+  private int linksUp = 0;
+  private long lastUpTicks = 0;
+
+  /**
+   * @param events - queue the handshake frames are scheduled on; the
+   * JNW2 DES does not run it, so the caller does, with nextEvent()
+   * until it is empty or with runUntil() at each DES time
+   * @param seed - seed for start jitter, retry jitter and loss
+   */
+  public LinkInitializer(LocalEventQueue events, long seed)
+  {
+    this.events = events;
+    random = new RandomNumber(seed);
+  }
+
+  public void setLinkUpListener(LinkUpListener listener)
+  {
+    this.listener = listener;
+  }
+
+  /**
+   * @param retryJitter - a retry waits up to this fraction of the
+   * retransmit timeout longer
+   * @param startSpreadTicks - links start at random over this long
+   */
+  public void setJitter(float retryJitter, long startSpreadTicks)
+  {
+    if(retryJitter < 0.0f || startSpreadTicks < 0)
+      throw new IllegalArgumentException("jitter must not be negative");
+    this.retryJitter = retryJitter;
+    this.startSpreadTicks = startSpreadTicks;
+  }
+
+  /**
+   * @param lossRate - chance from 0 to 1 that a handshake frame is lost
+   */
+  public void setLossRate(float lossRate)
+  {
+    this.lossRate = lossRate;
+  }
+
+  /**
+   * Adds a link to the batch
+   * @param initiator - end that sends INIT_LINK
+   * @param responder - end that answers with receiver_ready
+   * @param linkOneWayTicks - time for a handshake frame to reach the
+   * other end: its transmission time plus propagation delay
+   * @return number of the link, from 0
+   */
+  public int addLink(GoBackN initiator, GoBackN responder, long linkOneWayTicks)
+  {
+    if(linkCount == initiators.length)
+    {
+      int capacity = 2 * linkCount;
+      initiators = Arrays.copyOf(initiators, capacity);
+      responders = Arrays.copyOf(responders, capacity);
+      oneWayTicks = Arrays.copyOf(oneWayTicks, capacity);
+      generations = Arrays.copyOf(generations, capacity);
+      upTicks = Arrays.copyOf(upTicks, capacity);
+    }
+    initiators[linkCount] = initiator;
+    responders[linkCount] = responder;
+    oneWayTicks[linkCount] = linkOneWayTicks;
+    upTicks[linkCount] = -1;
+    return linkCount++;
+  }
+
+  /**
+   * Schedules the handshake of every link, each starting at a
+   * jittered time after startTicks
+   * @param startTicks - simulation time the batch starts
+   */
+  public void startAll(long startTicks)
+  {
+    for(int link = 0; link < linkCount; ++link)
+      restartLink(link, startTicks + (long)(random.getRandomFloat() * startSpreadTicks));
+  }
+
+  /**
+   * Takes a link down and starts its handshake again, as after a flap
+   * @param link - number of the link
+   * @param atTicks - simulation time the INIT_LINK is sent
+   */
+  public void restartLink(final int link, long atTicks)
+  {
+    final int generation = ++generations[link];
+    if(upTicks[link] >= 0)
+      --linksUp;
+    upTicks[link] = -1;
+    initiators[link].linkDown();
+    responders[link].linkDown();
+    events.schedule(new LocalEventQueue.TimedEvent()
+    {
+      public void fire() throws Exception
+      {
+        if(generation != generations[link]) return;
+        initiators[link].linkInitStarted(getTicks());
+        sendInitLink(link, generation, getTicks(),
+          initiators[link].getLinkInitTimeoutTicks());
+      }
+    }, atTicks);
+  }
+
+  /**
+   * Sends INIT_LINK and sets the timer that sends it again if
+   * receiver_ready does not come back
+   */
+  private void sendInitLink(final int link, final int generation, long nowTicks,
+    long timeoutTicks)
+  {
+    ++initFramesSent;
+    deliver(link, generation, nowTicks, new LocalEventQueue.TimedEvent()
+    {
+      public void fire()
+      {
+        responders[link].initLinkReceived(0);
+        sendReceiverReady(link, generation);
+      }
+    });
+    long waitTicks = timeoutTicks + (long)(random.getRandomFloat() * retryJitter * timeoutTicks);
+    events.schedule(new LocalEventQueue.TimedEvent()
+    {
+      public void fire() throws Exception
+      {
+        if(generation != generations[link] || upTicks[link] >= 0) return;
+        ++retries;
+        sendInitLink(link, generation, getTicks(), initiators[link].linkInitResent());
+      }
+    }, nowTicks + Math.max(1, waitTicks));
+  }
+
+  /**
+   * Answers INIT_LINK with receiver_ready, SN=0
+   */
+  private void sendReceiverReady(final int link, final int generation)
+  {
+    ++readyFramesSent;
+    deliver(link, generation, events.getTimeInTicks(), new LocalEventQueue.TimedEvent()
+    {
+      public void fire() throws Exception
+      {
+        long nowTicks = events.getTimeInTicks();
+        if(initiators[link].receiverReadyReceived(nowTicks))
+        {
+          upTicks[link] = nowTicks;
+          ++linksUp;
+          lastUpTicks = Math.max(lastUpTicks, nowTicks);
+          if(listener != null)
+            listener.linkUp(link, nowTicks);
+        }
+      }
+    });
+  }
+
+  /**
+   * Schedules the arrival of a handshake frame at the other end
+   * one-way delay later, unless it is lost
+   */
+  private void deliver(final int link, final int generation, long sentTicks,
+    final LocalEventQueue.TimedEvent arrival)
+  {
+    if(random.getRandomFloat() < lossRate)
+    {
+      ++framesLost;
+      return;
+    }
+    events.schedule(new LocalEventQueue.TimedEvent()
+    {
+      public void fire() throws Exception
+      {
+        if(generation == generations[link])
+          arrival.fire();
+      }
+    }, sentTicks + oneWayTicks[link]);
+  }
+
+  public int getLinkCount()
+  {
+    return linkCount;
+  }
+
+  /**
+   * @return true when every link has finished its handshake
+   */
+  public boolean allLinksUp()
+  {
+    return linksUp == linkCount;
+  }
+
+  /**
+   * @return time the link came up; -1 if it is not up
+   */
+  public long getUpTicks(int link)
+  {
+    return upTicks[link];
+  }
+
+  /**
+   * @return time the last link came up
+   */
+  public long getLastUpTicks()
+  {
+    return lastUpTicks;
+  }
+
+  /**
+   * @return statistics as one line
+   */
+  public String getStatistics()
+  {
+    return "links up:" + linksUp + " of " + linkCount +
+      " INIT_LINK sent:" + initFramesSent + " receiver_ready sent:" + readyFramesSent +
+      " lost:" + framesLost + " retries:" + retries + " last up at:" + lastUpTicks;
+  }
+
+  /**
+   * Brings up 1000 links at once over lossy lines with start and
+   * retry jitter, then flaps some of them, and checks that every link
+   * comes up with both ends active
+   * @param args - no arguments passed
+   */
+  public static void main(String[] args)
+  {
+    // simulation environment
+    Topology topology = new Topology();
+    SimulationEngine simEngine = new SimulationEngine(topology);
+    simEngine.setInstance(simEngine);
+
+    try
+    {
+      Host testHost = new Host(1,1,(byte)1,1);
+      Stack testStack = new Stack(testHost);
+      LocalEventQueue events = new LocalEventQueue();
+      LinkInitializer initializer = new LinkInitializer(events, 1);
+      initializer.setJitter(0.5f, 100);
+      initializer.setLossRate(0.15f);
+      RandomNumber random = new RandomNumber(2);
+      final int linkCount = 1000;
+      GoBackN[][] ends = new GoBackN[linkCount][2];
+      for(int link = 0; link < linkCount; ++link)
+      {
+        ends[link][0] = new GoBackN(testStack, 2 * link);
+        ends[link][1] = new GoBackN(testStack, 2 * link + 1);
+        initializer.addLink(ends[link][0], ends[link][1],
+          1 + (long)(random.getRandomFloat() * 40));
+      }
+
+      initializer.startAll(0);
+      while(events.nextEvent());
+      boolean passed = initializer.allLinksUp() && bothEndsActive(ends);
+      System.out.println("start: " + initializer.getStatistics());
+
+      // every tenth link flaps while both ends hold unACKed frames,
+      // and must come up again
+      long flapTicks = initializer.getLastUpTicks() + 1000;
+      for(int link = 0; link < linkCount; link += 10)
+      {
+        for(int frame = 0; frame < 3; ++frame)
+        {
+          ends[link][0].bufferFrame(PackedBitSequence.withCapacity(32));
+          ends[link][1].bufferFrame(PackedBitSequence.withCapacity(32));
+        }
+        initializer.restartLink(link, flapTicks);
+      }
+      passed &= !initializer.allLinksUp() && !ends[0][0].isLinkActive();
+      while(events.nextEvent());
+      passed &= initializer.allLinksUp() && bothEndsActive(ends) &&
+        initializer.getLastUpTicks() > flapTicks;
+      System.out.println("flap: " + initializer.getStatistics());
+
+      // both ends start again at SN=0, so the first data frame each
+      // way is the one the other end, with RN=0, accepts
+      int staleFrames = 0;
+      for(int link = 0; link < linkCount; link += 10)
+        for(int end = 0; end < 2; ++end)
+        {
+          int SN = ends[link][end].bufferFrame(PackedBitSequence.withCapacity(32));
+          if(ends[link][1 - end].frameReceived(SN, 0) != 1)
+            ++staleFrames;
+        }
+      System.out.println("flap: first frames not accepted after restart:" + staleFrames);
+      passed &= staleFrames == 0;
+
+      System.out.println(passed ? "Passed: all " + linkCount + " links up by tick " +
+        initializer.getLastUpTicks() : "Failed: links not up, or not restarted at SN=0");
+    }
+    catch(Exception e)
+    {
+      System.out.println("Exception in LinkInitializer test:" + e.getMessage());
+      e.printStackTrace(System.err);
+    }
+
+  }// end main()
+
+  private static boolean bothEndsActive(GoBackN[][] ends)
+  {
+    for(GoBackN[] link : ends)
+      if(!link[0].isLinkActive() || !link[1].isLinkActive())
+        return false;
+    return true;
+  }
+
+}// end class LinkInitializer
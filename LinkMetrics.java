@@ -0,0 +1,386 @@
+/**
+ * Java Network Workbench 2 (JNW2)
+ * Copyright 2013-2018 Networking and Simulation Laboratory/George Mason University
+ *
+ * Counters and histograms for one serial interface: frames sent and
+ * sent again, ACK latency, window occupancy, supervisory overhead,
+ * bits added by stuffing, and goodput against the bits put on the
+ * line. Goodput counts the payload of frames this interface sent
+ * that the other end ACKed, so it is measured in the same direction
+ * as the line bits; payload this interface received is kept apart. Counters are LongAdders and histograms have fixed buckets,
+ * so recording takes no lock; export as CSV or JSON at run end.
+ *
+ * @version 2.2.7
+ */
+
+package JNW2.interfaces;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public class LinkMetrics
+{
+  /**
+   * Counts of values falling in fixed buckets; bucket i holds values
+   * up to bounds[i], and a last bucket holds values above them all
+   */
+  public static class Histogram
+  {
+    private final long[] bounds;
+    private final AtomicLongArray counts;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * @param bounds - upper bound of each bucket, ascending
+     */
+    public Histogram(long[] bounds)
+    {
+      for(int i = 1; i < bounds.length; ++i)
+        if(bounds[i] <= bounds[i - 1])
+          throw new IllegalArgumentException("histogram bounds must ascend");
+      this.bounds = bounds.clone();
+      counts = new AtomicLongArray(bounds.length + 1);
+    }
+
+    /**
+     * @return bounds 0, 1, 2 ... max
+     */
+    public static long[] linearBounds(int max)
+    {
+      long[] bounds = new long[max + 1];
+      for(int i = 0; i <= max; ++i)
+        bounds[i] = i;
+      return bounds;
+    }
+
+    /**
+     * @return bounds first, 2*first, 4*first ... count of them
+     */
+    public static long[] exponentialBounds(long first, int count)
+    {
+      long[] bounds = new long[count];
+      for(int i = 0; i < count; ++i)
+        bounds[i] = first << i;
+      return bounds;
+    }
+
+    public void record(long value)
+    {
+      int low = 0, high = bounds.length;
+      while(low < high)
+      {
+        int middle = (low + high) >>> 1;
+        if(bounds[middle] < value) low = middle + 1;
+        else high = middle;
+      }
+      counts.incrementAndGet(low);
+      count.increment();
+      sum.add(value);
+    }
+
+    public long getCount()
+    {
+      return count.sum();
+    }
+
+    public double getMean()
+    {
+      long n = count.sum();
+      return n == 0 ? 0.0 : (double)sum.sum() / n;
+    }
+
+    /**
+     * @param fraction - from 0 to 1; 0.99 for the 99th percentile
+     * @return upper bound of the bucket holding that percentile;
+     *         Long.MAX_VALUE if it is in the last, open bucket
+     */
+    public long getPercentile(double fraction)
+    {
+      long n = count.sum();
+      if(n == 0) return 0;
+      long rank = (long)Math.ceil(fraction * n), seen = 0;
+      for(int i = 0; i < bounds.length; ++i)
+      {
+        seen += counts.get(i);
+        if(seen >= rank) return bounds[i];
+      }
+      return Long.MAX_VALUE;
+    }
+
+    /**
+     * @return bucket counts as "bound:count" pairs separated by spaces
+     */
+    public String toBucketString()
+    {
+      StringBuilder text = new StringBuilder();
+      for(int i = 0; i <= bounds.length; ++i)
+      {
+        if(i > 0) text.append(' ');
+        text.append(i < bounds.length ? Long.toString(bounds[i]) : "inf")
+          .append(':').append(counts.get(i));
+      }
+      return text.toString();
+    }
+
+    /**
+     * @return the histogram as a JSON object
+     */
+    public String toJson()
+    {
+      StringBuilder text = new StringBuilder("{\"count\":").append(getCount())
+        .append(",\"mean\":").append(String.format(Locale.ROOT, "%.3f", getMean()))
+        .append(",\"bounds\":[");
+      for(int i = 0; i < bounds.length; ++i)
+        text.append(i > 0 ? "," : "").append(bounds[i]);
+      text.append("],\"counts\":[");
+      for(int i = 0; i <= bounds.length; ++i)
+        text.append(i > 0 ? "," : "").append(counts.get(i));
+      return text.append("]}").toString();
+    }
+
+  }// end class Histogram
+
+  // instance variables
+  private final String name;
+  private final int windowFrames;
+
+  // counters
+  private final LongAdder framesSent = new LongAdder();
+  private final LongAdder framesResent = new LongAdder();
+  private final LongAdder idleResends = new LongAdder();
+  private final LongAdder timerResends = new LongAdder();
+  private final LongAdder windowFullSends = new LongAdder();
+  private final LongAdder framesDelivered = new LongAdder();
+  private final LongAdder payloadBitsDelivered = new LongAdder();
+  private final LongAdder payloadBitsAcked = new LongAdder();
+  private final LongAdder lineBitsSent = new LongAdder();
+  private final LongAdder stuffingBitsAdded = new LongAdder();
+  private final LongAdder supervisoryFramesSent = new LongAdder();
+  private final LongAdder acksPiggybacked = new LongAdder();
+
+  // histograms
+  private final Histogram ackLatency =
+    new Histogram(Histogram.exponentialBounds(1, 24));
+  private final Histogram windowOccupancy;
+
+  // span of simulated time over which frames were sent
+  private volatile long firstTicks = -1;
+  private volatile long lastTicks = -1;
+
+  /**
+   * @param name - name of the interface, for export
+   * @param windowFrames - window of the link, so occupancy has a
+   * bucket for each number of outstanding frames
+   */
+  public LinkMetrics(String name, int windowFrames)
+  {
+    this.name = name;
+    this.windowFrames = windowFrames;
+    windowOccupancy = new Histogram(Histogram.linearBounds(windowFrames));
+  }
+
+  public String getName()
+  {
+    return name;
+  }
+
+  /**
+   * A data frame went to the physical layer
+   * @param resent - true if it was sent before
+   * @param outstanding - frames in the window, from SNmin to SNmax
+   * @param nowTicks - simulation time
+   */
+  public void frameSent(boolean resent, int outstanding, long nowTicks)
+  {
+    if(resent) framesResent.increment();
+    else framesSent.increment();
+    windowOccupancy.record(outstanding);
+    if(outstanding >= windowFrames)
+      windowFullSends.increment();
+    if(firstTicks < 0) firstTicks = nowTicks;
+    lastTicks = nowTicks;
+  }
+
+  /**
+   * The SNmin frame is being sent again
+   * @param idleLine - true if only because the line was idle,
+   *        false if the retransmit timer expired
+   */
+  public void resend(boolean idleLine)
+  {
+    if(idleLine) idleResends.increment();
+    else timerResends.increment();
+  }
+
+  /**
+   * @param latencyTicks - from first sending a frame to its ACK
+   */
+  public void frameAcked(long latencyTicks)
+  {
+    frameAcked(latencyTicks, 0);
+  }
+
+  /**
+   * @param latencyTicks - from first sending a frame to its ACK
+   * @param payloadBits - bits of the frame's packet, now delivered
+   * to the other end
+   */
+  public void frameAcked(long latencyTicks, int payloadBits)
+  {
+    ackLatency.record(latencyTicks);
+    payloadBitsAcked.add(payloadBits);
+  }
+
+  /**
+   * @param payloadBits - bits of a frame this interface received and
+   * released to the network layer; the other direction of the link
+   */
+  public void frameDelivered(int payloadBits)
+  {
+    framesDelivered.increment();
+    payloadBitsDelivered.add(payloadBits);
+  }
+
+  /**
+   * @param frameBits - bits of the frame before stuffing
+   * @param stuffedBits - bits after stuffing, as sent on the line
+   */
+  public void frameStuffed(int frameBits, int stuffedBits)
+  {
+    lineBitsSent.add(stuffedBits);
+    stuffingBitsAdded.add(stuffedBits - frameBits);
+  }
+
+  public void supervisoryFrameSent()
+  {
+    supervisoryFramesSent.increment();
+  }
+
+  public void ackPiggybacked()
+  {
+    acksPiggybacked.increment();
+  }
+
+  public long getFramesSent()
+  {
+    return framesSent.sum();
+  }
+
+  public long getFramesResent()
+  {
+    return framesResent.sum();
+  }
+
+  public Histogram getAckLatency()
+  {
+    return ackLatency;
+  }
+
+  public Histogram getWindowOccupancy()
+  {
+    return windowOccupancy;
+  }
+
+  /**
+   * @return fraction of new and resent frames sent with the window
+   *         full; near 1 for a window-limited link
+   */
+  public double getWindowFullFraction()
+  {
+    long sends = framesSent.sum() + framesResent.sum();
+    return sends == 0 ? 0.0 : (double)windowFullSends.sum() / sends;
+  }
+
+  /**
+   * @return payload bits ACKed per bit this interface sent on the line
+   */
+  public double getEfficiency()
+  {
+    long lineBits = lineBitsSent.sum();
+    return lineBits == 0 ? 0.0 : (double)payloadBitsAcked.sum() / lineBits;
+  }
+
+  /**
+   * @return payload bits ACKed per tick while frames were sent
+   */
+  public double getGoodputBitsPerTick()
+  {
+    long span = lastTicks - firstTicks;
+    return span <= 0 ? 0.0 : (double)payloadBitsAcked.sum() / span;
+  }
+
+  /**
+   * @return line bits sent per tick while frames were sent
+   */
+  public double getLineBitsPerTick()
+  {
+    long span = lastTicks - firstTicks;
+    return span <= 0 ? 0.0 : (double)lineBitsSent.sum() / span;
+  }
+
+  static final String CSV_HEADER = "interface,windowFrames,framesSent,framesResent," +
+    "idleResends,timerResends,windowFullFraction,framesDelivered,payloadBitsDelivered," +
+    "payloadBitsAcked,lineBits,stuffingBits,supervisoryFrames,acksPiggybacked,efficiency," +
+    "goodputBitsPerTick,lineBitsPerTick,ackLatencyMean,ackLatencyP99," +
+    "windowOccupancyMean,windowOccupancyBuckets";
+
+  /**
+   * @return column names for toCsvRow()
+   */
+  public static String csvHeader()
+  {
+    return CSV_HEADER;
+  }
+
+  /**
+   * @return the metrics as one CSV row, in csvHeader() order
+   */
+  public String toCsvRow()
+  {
+    return csvQuote(name) + "," + windowFrames + "," + framesSent.sum() + "," +
+      framesResent.sum() + "," + idleResends.sum() + "," + timerResends.sum() + "," +
+      String.format(Locale.ROOT, "%.4f", getWindowFullFraction()) + "," + framesDelivered.sum() + "," +
+      payloadBitsDelivered.sum() + "," + payloadBitsAcked.sum() + "," + lineBitsSent.sum() + "," +
+      stuffingBitsAdded.sum() + "," + supervisoryFramesSent.sum() + "," +
+      acksPiggybacked.sum() + "," + String.format(Locale.ROOT, "%.4f", getEfficiency()) + "," +
+      String.format(Locale.ROOT, "%.3f", getGoodputBitsPerTick()) + "," +
+      String.format(Locale.ROOT, "%.3f", getLineBitsPerTick()) + "," +
+      String.format(Locale.ROOT, "%.2f", ackLatency.getMean()) + "," + ackLatency.getPercentile(0.99) + "," +
+      String.format(Locale.ROOT, "%.3f", windowOccupancy.getMean()) + "," +
+      csvQuote(windowOccupancy.toBucketString());
+  }
+
+  private static String csvQuote(String text)
+  {
+    return "\"" + text.replace("\"", "\"\"") + "\"";
+  }
+
+  /**
+   * @return the metrics as a JSON object
+   */
+  public String toJson()
+  {
+    return "{\"interface\":\"" + name.replace("\\", "\\\\").replace("\"", "\\\"") + "\"" +
+      ",\"windowFrames\":" + windowFrames +
+      ",\"framesSent\":" + framesSent.sum() +
+      ",\"framesResent\":" + framesResent.sum() +
+      ",\"idleResends\":" + idleResends.sum() +
+      ",\"timerResends\":" + timerResends.sum() +
+      ",\"windowFullFraction\":" + String.format(Locale.ROOT, "%.4f", getWindowFullFraction()) +
+      ",\"framesDelivered\":" + framesDelivered.sum() +
+      ",\"payloadBitsDelivered\":" + payloadBitsDelivered.sum() +
+      ",\"payloadBitsAcked\":" + payloadBitsAcked.sum() +
+      ",\"lineBits\":" + lineBitsSent.sum() +
+      ",\"stuffingBits\":" + stuffingBitsAdded.sum() +
+      ",\"supervisoryFrames\":" + supervisoryFramesSent.sum() +
+      ",\"acksPiggybacked\":" + acksPiggybacked.sum() +
+      ",\"efficiency\":" + String.format(Locale.ROOT, "%.4f", getEfficiency()) +
+      ",\"goodputBitsPerTick\":" + String.format(Locale.ROOT, "%.3f", getGoodputBitsPerTick()) +
+      ",\"lineBitsPerTick\":" + String.format(Locale.ROOT, "%.3f", getLineBitsPerTick()) +
+      ",\"ackLatency\":" + ackLatency.toJson() +
+      ",\"windowOccupancy\":" + windowOccupancy.toJson() + "}";
+  }
+
+}// end class LinkMetrics
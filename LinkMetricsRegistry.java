@@ -0,0 +1,121 @@
+/**
+ * Java Network Workbench 2 (JNW2)
+ * Copyright 2013-2018 Networking and Simulation Laboratory/George Mason University
+ *
+ * Holds the LinkMetrics of every serial interface of a run, in the
+ * order they were registered, and writes them all as CSV or JSON
+ *
+ * @version 2.2.7
+ */
+
+package JNW2.interfaces;
+
+import java.io.*;
+import java.util.*;
+
+public class LinkMetricsRegistry
+{
+  private static LinkMetricsRegistry instance = new LinkMetricsRegistry();
+
+  // instance variables
+  private final Map<String, LinkMetrics> metrics = new LinkedHashMap<String, LinkMetrics>();
+
+  /**
+   * @return the registry shared by the whole simulation
+   */
+  public static LinkMetricsRegistry getInstance()
+  {
+    return instance;
+  }
+
+  /**
+   * @param name - name of the interface; must be unique in the run
+   * @param windowFrames - window of the link
+   * @return new metrics for the interface
+   */
+  public synchronized LinkMetrics register(String name, int windowFrames)
+  {
+    if(metrics.containsKey(name))
+      throw new IllegalArgumentException("link metrics already registered for " + name);
+    LinkMetrics linkMetrics = new LinkMetrics(name, windowFrames);
+    metrics.put(name, linkMetrics);
+    return linkMetrics;
+  }
+
+  /**
+   * @return metrics of the named interface; null if none
+   */
+  public synchronized LinkMetrics get(String name)
+  {
+    return metrics.get(name);
+  }
+
+  /**
+   * @return metrics of every interface, in registration order
+   */
+  public synchronized List<LinkMetrics> getAll()
+  {
+    return new ArrayList<LinkMetrics>(metrics.values());
+  }
+
+  /**
+   * Forgets all metrics, for the next run
+   */
+  public synchronized void clear()
+  {
+    metrics.clear();
+  }
+
+  /**
+   * Writes a header line and one row per interface
+   */
+  public void writeCsv(Writer out) throws IOException
+  {
+    out.write(LinkMetrics.csvHeader());
+    out.write('\n');
+    for(LinkMetrics linkMetrics : getAll())
+    {
+      out.write(linkMetrics.toCsvRow());
+      out.write('\n');
+    }
+    out.flush();
+  }
+
+  /**
+   * Writes a JSON array with one object per interface
+   */
+  public void writeJson(Writer out) throws IOException
+  {
+    out.write("[");
+    String separator = "\n";
+    for(LinkMetrics linkMetrics : getAll())
+    {
+      out.write(separator);
+      out.write(linkMetrics.toJson());
+      separator = ",\n";
+    }
+    out.write("\n]\n");
+    out.flush();
+  }
+
+  /**
+   * Writes the metrics to a file, as JSON if its name ends in
+   * .json and as CSV otherwise
+   */
+  public void writeFile(String fileName) throws IOException
+  {
+    Writer out = new BufferedWriter(new FileWriter(fileName));
+    try
+    {
+      if(fileName.endsWith(".json"))
+        writeJson(out);
+      else
+        writeCsv(out);
+    }
+    finally
+    {
+      out.close();
+    }
+  }
+
+}// end class LinkMetricsRegistry
@@ -0,0 +1,309 @@
+/**
+ * Java Network Workbench 2 (JNW2)
+ * Copyright 2013-2018 Networking and Simulation Laboratory/George Mason University
+ *
+ * Keeps a routingMatrix up to date with a link cost model that depends
+ * on measured load: at each update the model is consulted again and
+ * links whose cost moved enough are repaired incrementally
+ *
+ * @version 2.2.7
+ */
+
+package JNW2.utility;
+
+import JNW2.*;
+import static JNW2.Constants.*;
+import JNW2.parsers.*;
+import java.util.*;
+
+public class LoadSensitiveRouting
+{
+  // simulation environment
+  static SimLogger simLogger = SimLogger.getInstance(SimLogger.INFO);
+
+  /**
+   * Told of the next-hop entries that changed at an update
+   */
+  public interface RouteChangeListener
+  {
+    void routesChanged(List<IncrementalRouting.RouteChange> changes, long ticks)
+      throws Exception;
+  }
+
+  // instance variables
+  final CsrTopology csr;
+  final LinkCostModel costModel;
+  final IncrementalRouting incrementalRouting;
+
+  /**
+   * A link's cost is only changed when it moves by more than this
+   * fraction of its current cost, so that small swings in load do
+   * not make routes flap
+   */
+  float changeThreshold = 0.1f;
+
+  static String configFileName;
+
+  // statistics
+  long updates = 0;
+  long linksChanged = 0;
+  long routesChanged = 0;
+
+  /**
+   * @param links - data rate in kb/s between each pair of routers,
+   * zero if none (the <links> matrix of the config file)
+   * @param numberOfSubnets - routers are numbered 1 to numberOfSubnets
+   * @param costModel - gives the cost of each link
+   * @throws Exception
+   */
+  public LoadSensitiveRouting(int[][] links, int numberOfSubnets,
+    LinkCostModel costModel) throws Exception
+  {
+    this.costModel = costModel;
+    csr = CsrTopology.fromLinksMatrix(links, numberOfSubnets, costModel);
+    incrementalRouting = new IncrementalRouting(csr);
+  }
+
+  /**
+   * @param changeThreshold - relative change in a link's cost
+   * needed before routes are recomputed for it
+   */
+  public void setChangeThreshold(float changeThreshold)
+  {
+    this.changeThreshold = Math.max(0, changeThreshold);
+  }
+
+  /**
+   * Builds the routing table from the current link costs
+   * @return routingMatrix, whose rows are updated in place by update()
+   * @throws Exception
+   */
+  public int[][] computeRoutingMatrix() throws Exception
+  {
+    return incrementalRouting.computeRoutingMatrix();
+  }
+
+  /**
+   * Consults the cost model for every link and repairs the routes
+   * through links whose cost changed by more than changeThreshold,
+   * or that went down or came back up. Repairing one link after
+   * another can move an entry more than once, so the changes are
+   * coalesced to one per (source, dest) pair, from its next hop
+   * before the update to its next hop after it, and pairs that end
+   * where they started are left out.
+   * @return next-hop entries of the routingMatrix that changed
+   * @throws Exception
+   */
+  public List<IncrementalRouting.RouteChange> update() throws Exception
+  {
+    int numberOfSubnets = csr.getNumberOfSubnets();
+    Map<Integer, IncrementalRouting.RouteChange> netChanges =
+      new LinkedHashMap<Integer, IncrementalRouting.RouteChange>();
+    for(int fromRouter = 1; fromRouter <= numberOfSubnets; ++fromRouter)
+      for(int link = csr.offsets[fromRouter]; link < csr.offsets[fromRouter+1]; ++link)
+      {
+        float oldCost = csr.getCost(link);
+        float newCost = csr.modelCost(fromRouter, link, costModel);
+        boolean upOrDown = (oldCost >= HUGEFLOAT) != (newCost >= HUGEFLOAT);
+        if(!upOrDown && Math.abs(newCost - oldCost) <= changeThreshold * oldCost)
+          continue;
+        for(IncrementalRouting.RouteChange change :
+          incrementalRouting.changeLinkCost(fromRouter, csr.neighbors[link], newCost))
+        {
+          Integer pair = change.sourceRouter * (numberOfSubnets+1) + change.destRouter;
+          IncrementalRouting.RouteChange earlier = netChanges.get(pair);
+          if(earlier != null)
+            change = new IncrementalRouting.RouteChange(change.sourceRouter,
+              change.destRouter, earlier.oldForwardRouter, change.newForwardRouter);
+          netChanges.put(pair, change);
+        }
+        ++linksChanged;
+      }
+    List<IncrementalRouting.RouteChange> changes =
+      new ArrayList<IncrementalRouting.RouteChange>();
+    for(IncrementalRouting.RouteChange change : netChanges.values())
+      if(change.oldForwardRouter != change.newForwardRouter)
+        changes.add(change);
+    ++updates;
+    routesChanged += changes.size();
+    return changes;
+  }
+
+  /**
+   * Runs update() every intervalTicks on an event queue
+   * @param events - queue to schedule the updates on
+   * @param firstTicks - time of the first update
+   * @param intervalTicks - time between updates
+   * @param stopTicks - no update is scheduled after this time
+   * @param listener - told of changed routes; may be null
+   */
+  public void schedulePeriodicUpdates(final LocalEventQueue events,
+    long firstTicks, final long intervalTicks, final long stopTicks,
+    final RouteChangeListener listener)
+  {
+    if(intervalTicks <= 0)
+      throw new IllegalArgumentException("update interval must be positive");
+    if(firstTicks > stopTicks) return;
+    events.schedule(new LocalEventQueue.TimedEvent()
+    {
+      public void fire() throws Exception
+      {
+        List<IncrementalRouting.RouteChange> changes = update();
+        if(listener != null && !changes.isEmpty())
+          listener.routesChanged(changes, getTicks());
+        if(getTicks() + intervalTicks <= stopTicks)
+          events.schedule(this, getTicks() + intervalTicks);
+      }
+    }, firstTicks);
+  }
+
+  /**
+   * @return cost of the path from sourceRouter to destRouter
+   * under the current link costs
+   */
+  public float getCost(int sourceRouter, int destRouter)
+  {
+    return incrementalRouting.getCost(sourceRouter, destRouter);
+  }
+
+  /**
+   * Logs how much routing work the updates caused
+   */
+  public void logStatistics()
+  {
+    simLogger.logInfo("Load-sensitive routing updates:" + updates +
+      " links changed:" + linksChanged + " routes changed:" + routesChanged +
+      " inner loop count:" + incrementalRouting.getInnerLoopCount());
+  }
+
+  /**
+   * make a test run of LoadSensitiveRouting
+   *
+   * loads random queues onto the links of a configured WAN and checks
+   * that the changes returned by each update, applied to the routes
+   * before it, give the routes after it, and that the costs match
+   * HeapDijkstraRouting under the new loads
+   */
+  static class TestLoadSensitiveRouting
+  {
+    public TestLoadSensitiveRouting()
+    {
+      // setup simulation environment
+      Topology testTopology = new Topology(configFileName);
+      SimulationEngine testSimEngine = new SimulationEngine(testTopology);
+      testSimEngine.setInstance(testSimEngine);
+      simLogger.setPrintAtLayers(testTopology.getPrintAtLayers());
+      System.out.println("Running load-sensitive routing test");
+
+      // load network topology from config file
+      ConfigParser configParser = new ConfigParser(testTopology);
+
+      // parse the configuration
+      try
+      {
+        if(!configParser.parseConfig())return;
+      }
+      catch(Exception e)
+      {
+        System.out.println("parse of file:" + configFileName + " bad input:" +
+          e.getMessage());
+        return;
+      }
+
+      // load the configuration into ConnectivityMatrix; every usable
+      // link gets a 1000 kb/s data rate and a queue set by the test
+      try
+      {
+        testSimEngine.loadConfiguration();
+        CsrTopology configured = CsrTopology.fromSimulation();
+        final int numberOfSubnets = configured.getNumberOfSubnets();
+        int[][] links = new int[numberOfSubnets+1][numberOfSubnets+1];
+        for(int fromRouter = 1; fromRouter <= numberOfSubnets; ++fromRouter)
+          for(int link = configured.offsets[fromRouter]; link < configured.offsets[fromRouter+1]; ++link)
+            links[fromRouter][configured.neighbors[link]] = 1000;
+        final float[][] queuedBits = new float[numberOfSubnets+1][numberOfSubnets+1];
+        LinkCostModel costModel = new LinkCostModel.Weighted(new LinkCostModel[]
+          {
+            new LinkCostModel.InverseDataRate(links, 1000f),
+            new LinkCostModel.QueueOccupancy(links, new LinkCostModel.LinkLoadSource()
+            {
+              public float queuedBits(int fromRouter, int toRouter)
+              {
+                return queuedBits[fromRouter][toRouter];
+              }
+            })
+          }, new float[]{1.0f, 1.0f});
+        LoadSensitiveRouting loadSensitiveRouting =
+          new LoadSensitiveRouting(links, numberOfSubnets, costModel);
+        loadSensitiveRouting.setChangeThreshold(0);
+        int[][] routingMatrix = loadSensitiveRouting.computeRoutingMatrix();
+
+        Random random = new Random(1);
+        int mismatches = 0;
+        int changeCount = 0;
+        for(int round = 0; round < 10; ++round)
+        {
+          int[][] before = new int[numberOfSubnets+1][];
+          for(int router = 1; router <= numberOfSubnets; ++router)
+            before[router] = routingMatrix[router].clone();
+          for(int fromRouter = 1; fromRouter <= numberOfSubnets; ++fromRouter)
+            for(int toRouter = 1; toRouter <= numberOfSubnets; ++toRouter)
+              if(links[fromRouter][toRouter] > 0 && random.nextInt(4) == 0)
+                queuedBits[fromRouter][toRouter] = random.nextInt(8000);
+          List<IncrementalRouting.RouteChange> changes = loadSensitiveRouting.update();
+          changeCount += changes.size();
+
+          // each pair changes at most once, from its old next hop
+          Set<Integer> pairs = new HashSet<Integer>();
+          for(IncrementalRouting.RouteChange change : changes)
+          {
+            if(!pairs.add(change.sourceRouter * (numberOfSubnets+1) + change.destRouter) ||
+              change.oldForwardRouter == change.newForwardRouter ||
+              before[change.sourceRouter][change.destRouter] != change.oldForwardRouter)
+              ++mismatches;
+            before[change.sourceRouter][change.destRouter] = change.newForwardRouter;
+          }
+          for(int router = 1; router <= numberOfSubnets; ++router)
+            if(!Arrays.equals(before[router], routingMatrix[router]))
+              ++mismatches;
+
+          // costs under the new loads
+          HeapDijkstraRouting heapDijkstraRouting = new HeapDijkstraRouting(
+            CsrTopology.fromLinksMatrix(links, numberOfSubnets, costModel));
+          for(int sourceRouter = 1; sourceRouter <= numberOfSubnets; ++sourceRouter)
+          {
+            heapDijkstraRouting.computeRoutingRow(sourceRouter);
+            for(int destRouter = 1; destRouter <= numberOfSubnets; ++destRouter)
+            {
+              float expected = heapDijkstraRouting.C[destRouter];
+              float actual = loadSensitiveRouting.getCost(sourceRouter, destRouter);
+              if(Math.abs(actual - expected) > 1e-4f * Math.max(1.0f, expected))
+                ++mismatches;
+            }
+          }
+        }
+        loadSensitiveRouting.logStatistics();
+        System.out.println("net route changes over 10 updates:" + changeCount);
+        System.out.println(mismatches == 0 ? "Passed: one net change per pair, costs match Dijkstra" :
+          "Failed: " + mismatches + " route changes or costs are wrong");
+      }
+      catch(Exception e)
+      {
+        simLogger.logError("Exception loading configuration:" + e);
+        simLogger.logException(e);
+      }
+
+    }// end TestLoadSensitiveRouting() constructor
+
+  }// end class TestLoadSensitiveRouting
+
+  // test LoadSensitiveRouting
+  public static void main(String args[])
+  {
+    configFileName = args[0];
+    TestLoadSensitiveRouting testLoadSensitiveRouting;
+    testLoadSensitiveRouting = new TestLoadSensitiveRouting();
+
+  }// end main()
+
+}// end class LoadSensitiveRouting
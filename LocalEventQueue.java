@@ -0,0 +1,98 @@
+/**
+ * Java Network Workbench 2 (JNW2)
+ * Copyright 2013-2018 Networking and Simulation Laboratory/George Mason University
+ *
+ * Time-ordered queue of control-plane events, fired in order of
+ * simulation time in ticks (events at the same tick fire in the
+ * order they were scheduled)
+ *
+ * @version 2.2.7
+ */
+
+package JNW2.utility;
+
+import java.util.PriorityQueue;
+
+public class LocalEventQueue
+{
+  /**
+   * An event to fire at a given simulation time
+   */
+  public static abstract class TimedEvent implements Comparable<TimedEvent>
+  {
+    long ticks;
+    long sequence;
+
+    public long getTicks()
+    {
+      return ticks;
+    }
+
+    public abstract void fire() throws Exception;
+
+    public int compareTo(TimedEvent other)
+    {
+      if(ticks != other.ticks) return ticks < other.ticks ? -1 : 1;
+      return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+    }
+  }// end class TimedEvent
+
+  // instance variables
+  private final PriorityQueue<TimedEvent> events = new PriorityQueue<TimedEvent>();
+  private long nowTicks = 0;
+  private long nextSequence = 0;
+
+  /**
+   * Schedules an event
+   * @param event - event to fire
+   * @param atTicks - simulation time; times already past fire now
+   */
+  public void schedule(TimedEvent event, long atTicks)
+  {
+    event.ticks = Math.max(atTicks, nowTicks);
+    event.sequence = nextSequence++;
+    events.add(event);
+  }
+
+  /**
+   * Fires the next event
+   * @return false if there was no event to fire
+   * @throws Exception
+   */
+  public boolean nextEvent() throws Exception
+  {
+    TimedEvent event = events.poll();
+    if(event == null) return false;
+    nowTicks = event.ticks;
+    event.fire();
+    return true;
+  }
+
+  /**
+   * Fires every event due at or before nowTicks, then moves the
+   * clock to nowTicks; lets a caller driven by another scheduler
+   * catch the queue up to that scheduler's time
+   * @param nowTicks - simulation time to run to
+   * @throws Exception
+   */
+  public void runUntil(long nowTicks) throws Exception
+  {
+    while(!events.isEmpty() && events.peek().ticks <= nowTicks)
+      nextEvent();
+    this.nowTicks = Math.max(this.nowTicks, nowTicks);
+  }
+
+  /**
+   * @return simulation time of the event being fired (or last fired)
+   */
+  public long getTimeInTicks()
+  {
+    return nowTicks;
+  }
+
+  public boolean isEmpty()
+  {
+    return events.isEmpty();
+  }
+
+}// end class LocalEventQueue
@@ -0,0 +1,295 @@
+/**
+ * Java Network Workbench 2 (JNW2)
+ * Copyright 2013/2017 Networking and Simulation Laboratory/George Mason University
+ *
+ * Description: Sequence of bits packed 64 to a long, most significant
+ * bit first, with bulk operations for building and copying frames
+ *
+ * @version 2.2.3
+ */
+
+package JNW2.message;
+
+import java.util.Arrays;
+
+public class PackedBitSequence
+{
+  /**
+   * Bit i is bit 63-(i%64) of words[i/64]; bits at and beyond size
+   * are always zero, so whole words can be compared and hashed
+   */
+  long[] words;
+  int size;
+
+  /**
+   * Creates an empty sequence
+   */
+  public PackedBitSequence()
+  {
+    this(64);
+  }
+
+  private PackedBitSequence(int capacityBits)
+  {
+    words = new long[Math.max(1, (capacityBits + 63) >>> 6)];
+  }
+
+  /**
+   * Unlike new BitSequence(int), which makes a sequence of that
+   * size, this makes an empty one that only has room for the bits
+   * @return empty sequence with room for capacityBits bits
+   */
+  public static PackedBitSequence withCapacity(int capacityBits)
+  {
+    return new PackedBitSequence(capacityBits);
+  }
+
+  /**
+   * @return copy of a BitSequence
+   */
+  public static PackedBitSequence fromBitSequence(BitSequence bitSequence)
+  {
+    int bits = bitSequence.size();
+    PackedBitSequence packed = new PackedBitSequence(bits);
+    for(int bit = 0; bit < bits; ++bit)
+      if(bitSequence.getValue(bit))
+        packed.words[bit >>> 6] |= 1L << (63 - (bit & 63));
+    packed.size = bits;
+    return packed;
+  }
+
+  /**
+   * @return copy as a BitSequence, for code that uses that API
+   */
+  public BitSequence toBitSequence()
+  {
+    BitSequence bitSequence = new BitSequence(size);
+    for(int bit = 0; bit < size; ++bit)
+      bitSequence.setValue(bit, getValue(bit));
+    return bitSequence;
+  }
+
+  public int size()
+  {
+    return size;
+  }
+
+  /**
+   * Makes room for at least capacityBits bits without changing size
+   */
+  public void ensureCapacity(int capacityBits)
+  {
+    int neededWords = (capacityBits + 63) >>> 6;
+    if(neededWords > words.length)
+      words = Arrays.copyOf(words, Math.max(neededWords, 2 * words.length));
+  }
+
+  /**
+   * Empties the sequence, keeping its storage for reuse
+   */
+  public void reset()
+  {
+    Arrays.fill(words, 0, (size + 63) >>> 6, 0L);
+    size = 0;
+  }
+
+  /**
+   * Drops the bits from newSize on
+   */
+  public void truncate(int newSize)
+  {
+    if(newSize >= size) return;
+    newSize = Math.max(0, newSize);
+    int lastWord = (size - 1) >>> 6;
+    int word = newSize >>> 6;
+    if((newSize & 63) != 0)
+    {
+      words[word] &= -1L << (64 - (newSize & 63));
+      ++word;
+    }
+    if(word <= lastWord)
+      Arrays.fill(words, word, lastWord + 1, 0L);
+    size = newSize;
+  }
+
+  public boolean getValue(int index)
+  {
+    if(index >= size)
+      throw new IndexOutOfBoundsException("bit " + index + " of " + size);
+    return (words[index >>> 6] & (1L << (63 - (index & 63)))) != 0;
+  }
+
+  /**
+   * Sets a bit; the sequence grows if index is at or past its end,
+   * as with BitSequence.setValue()
+   */
+  public void setValue(int index, boolean value)
+  {
+    if(index >= size)
+    {
+      ensureCapacity(index + 1);
+      size = index + 1;
+    }
+    long mask = 1L << (63 - (index & 63));
+    if(value)
+      words[index >>> 6] |= mask;
+    else
+      words[index >>> 6] &= ~mask;
+  }
+
+  public void appendBit(boolean value)
+  {
+    appendBits(value ? 1L : 0L, 1);
+  }
+
+  /**
+   * Appends the low count bits of bits, most significant first
+   * @param count - from 0 to 64
+   */
+  public void appendBits(long bits, int count)
+  {
+    if(count == 0) return;
+    ensureCapacity(size + count);
+    if(count < 64)
+      bits &= (1L << count) - 1;
+    int word = size >>> 6;
+    int free = 64 - (size & 63);
+    if(count <= free)
+      words[word] |= bits << (free - count);
+    else
+    {
+      words[word] |= bits >>> (count - free);
+      words[word+1] = bits << (64 - (count - free));
+    }
+    size += count;
+  }
+
+  /**
+   * Appends whole bytes, most significant bit first
+   */
+  public void appendBytes(byte[] bytes, int offset, int length)
+  {
+    ensureCapacity(size + (length << 3));
+    int index = offset, end = offset + length;
+    for(; index + 8 <= end; index += 8)
+    {
+      long bits = 0;
+      for(int b = index; b < index + 8; ++b)
+        bits = (bits << 8) | (bytes[b] & 0xff);
+      appendBits(bits, 64);
+    }
+    for(; index < end; ++index)
+      appendBits(bytes[index] & 0xff, 8);
+  }
+
+  /**
+   * Appends count bits of another sequence starting at from
+   */
+  public void appendRange(PackedBitSequence source, int from, int count)
+  {
+    if(from < 0 || count < 0 || from + count > source.size)
+      throw new IndexOutOfBoundsException("bits " + from + " to " +
+        (from + count) + " of " + source.size);
+    ensureCapacity(size + count);
+    while(count >= 64)
+    {
+      appendBits(source.getBits(from, 64), 64);
+      from += 64;
+      count -= 64;
+    }
+    appendBits(source.getBits(from, count), count);
+  }
+
+  /**
+   * @return new sequence holding count bits starting at from
+   */
+  public PackedBitSequence copyRange(int from, int count)
+  {
+    PackedBitSequence copy = new PackedBitSequence(count);
+    copy.appendRange(this, from, count);
+    return copy;
+  }
+
+  /**
+   * @param count - from 0 to 64
+   * @return count bits starting at index, right aligned
+   */
+  public long getBits(int index, int count)
+  {
+    if(count == 0) return 0;
+    if(index < 0 || index + count > size)
+      throw new IndexOutOfBoundsException("bits " + index + " to " +
+        (index + count) + " of " + size);
+    int word = index >>> 6;
+    int offset = index & 63;
+    long bits = words[word] << offset;
+    if(offset + count > 64)
+      bits |= words[word+1] >>> (64 - offset);
+    return bits >>> (64 - count);
+  }
+
+  /**
+   * @return bits 64*wordIndex to 64*wordIndex+63, zero past the end
+   */
+  public long getWord(int wordIndex)
+  {
+    return words[wordIndex];
+  }
+
+  /**
+   * Replaces bits 64*wordIndex to 64*wordIndex+63, which must be
+   * within the sequence
+   */
+  public void setWord(int wordIndex, long bits)
+  {
+    int firstBit = wordIndex << 6;
+    if(firstBit >= size)
+      throw new IndexOutOfBoundsException("word " + wordIndex + " of " + size + " bits");
+    int bitsInWord = Math.min(64, size - firstBit);
+    if(bitsInWord < 64)
+      bits &= -1L << (64 - bitsInWord);
+    words[wordIndex] = bits;
+  }
+
+  /**
+   * @return number of words holding bits
+   */
+  public int getWordCount()
+  {
+    return (size + 63) >>> 6;
+  }
+
+  @Override
+  public boolean equals(Object other)
+  {
+    if(this == other) return true;
+    if(!(other instanceof PackedBitSequence)) return false;
+    PackedBitSequence sequence = (PackedBitSequence)other;
+    if(sequence.size != size) return false;
+    for(int word = getWordCount() - 1; word >= 0; --word)
+      if(words[word] != sequence.words[word]) return false;
+    return true;
+  }
+
+  @Override
+  public int hashCode()
+  {
+    long hash = size;
+    for(int word = 0; word < getWordCount(); ++word)
+      hash = hash * 31 + words[word];
+    return (int)(hash ^ (hash >>> 32));
+  }
+
+  /**
+   * @return the bits as 0 and 1 characters, as BitSequence prints them
+   */
+  @Override
+  public String toString()
+  {
+    StringBuilder bits = new StringBuilder(size);
+    for(int bit = 0; bit < size; ++bit)
+      bits.append(getValue(bit) ? '1' : '0');
+    return bits.toString();
+  }
+
+}// end class PackedBitSequence
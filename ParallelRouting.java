@@ -0,0 +1,158 @@
+/**
+ * Java Network Workbench 2 (JNW2)
+ * Copyright 2013-2018 Networking and Simulation Laboratory/George Mason University
+ *
+ * Computes the rows of a routingMatrix in parallel on a ForkJoinPool;
+ * each task gets its own engine so no scratch state is shared
+ *
+ * @version 2.2.7
+ */
+
+package JNW2.utility;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ParallelRouting
+{
+  static SimLogger simLogger = SimLogger.getInstance(SimLogger.INFO);
+
+  /**
+   * Creates the per-task engine; called once for each range of rows
+   */
+  public interface EngineFactory
+  {
+    RoutingRowEngine newEngine() throws Exception;
+  }
+
+  // instance variables
+  private final int parallelism;
+
+  /**
+   * @param parallelism - number of worker threads; zero or less
+   * uses one per available processor
+   */
+  public ParallelRouting(int parallelism)
+  {
+    if(parallelism <= 0)
+      parallelism = Runtime.getRuntime().availableProcessors();
+    this.parallelism = parallelism;
+  }
+
+  public int getParallelism()
+  {
+    return parallelism;
+  }
+
+  /**
+   * Builds a routing table, computing rows in parallel
+   * @param numberOfSubnets - number of rows (and columns) in the table
+   * @param engineFactory - creates an engine for each task
+   * @param label - algorithm name for the inner loop count message
+   * @return routingMatrix
+   * @throws Exception
+   */
+  public int[][] computeRoutingMatrix(
+    int numberOfSubnets,
+    EngineFactory engineFactory,
+    String label) throws Exception
+  {
+    // JNW2 network array indexes range from 1 to numberOfSubnets
+    // thus arrays must have dimension numberOfSubnets+1
+    int[][] routingMatrix = new int[numberOfSubnets+1][];
+    routingMatrix[0] = new int[numberOfSubnets+1];
+    AtomicLong innerLoopCount = new AtomicLong();
+
+    // split so every worker gets several ranges to balance load
+    int rowsPerTask = Math.max(1, numberOfSubnets / (parallelism * 8));
+
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    try
+    {
+      pool.invoke(new RowRangeTask(routingMatrix, 1, numberOfSubnets+1,
+        rowsPerTask, engineFactory, innerLoopCount));
+    }
+    catch(RowException e)
+    {
+      throw e.getCause();
+    }
+    finally
+    {
+      pool.shutdown();
+    }
+
+    // print out inner loop count for comparison
+    simLogger.logInfo(label + " parallel inner loop count:" + innerLoopCount.get() +
+      " threads:" + parallelism);
+
+    return routingMatrix;
+  }
+
+  /**
+   * Carries a checked exception from a worker thread
+   */
+  private static class RowException extends RuntimeException
+  {
+    RowException(Exception cause)
+    {
+      super(cause);
+    }
+
+    @Override
+    public Exception getCause()
+    {
+      return (Exception)super.getCause();
+    }
+  }
+
+  /**
+   * Computes rows firstRow up to (not including) endRow,
+   * splitting in half until the range is small enough
+   */
+  private static class RowRangeTask extends RecursiveAction
+  {
+    private final int[][] routingMatrix;
+    private final int firstRow, endRow, rowsPerTask;
+    private final EngineFactory engineFactory;
+    private final AtomicLong innerLoopCount;
+
+    RowRangeTask(int[][] routingMatrix, int firstRow, int endRow,
+      int rowsPerTask, EngineFactory engineFactory, AtomicLong innerLoopCount)
+    {
+      this.routingMatrix = routingMatrix;
+      this.firstRow = firstRow;
+      this.endRow = endRow;
+      this.rowsPerTask = rowsPerTask;
+      this.engineFactory = engineFactory;
+      this.innerLoopCount = innerLoopCount;
+    }
+
+    @Override
+    protected void compute()
+    {
+      if(endRow - firstRow > rowsPerTask)
+      {
+        int middleRow = (firstRow + endRow) >>> 1;
+        invokeAll(
+          new RowRangeTask(routingMatrix, firstRow, middleRow,
+            rowsPerTask, engineFactory, innerLoopCount),
+          new RowRangeTask(routingMatrix, middleRow, endRow,
+            rowsPerTask, engineFactory, innerLoopCount));
+        return;
+      }
+      try
+      {
+        RoutingRowEngine engine = engineFactory.newEngine();
+        for(int rowNumber = firstRow; rowNumber < endRow; ++rowNumber)
+          routingMatrix[rowNumber] = engine.computeRoutingRow(rowNumber);
+        innerLoopCount.addAndGet(engine.getInnerLoopCount());
+      }
+      catch(Exception e)
+      {
+        throw new RowException(e);
+      }
+    }
+  }// end class RowRangeTask
+
+}// end class ParallelRouting
@@ -0,0 +1,295 @@
+/**
+ * Java Network Workbench 2 (JNW2)
+ * Copyright 2013-2018 Networking and Simulation Laboratory/George Mason University
+ *
+ * Calculate routingMatrix using the queue-based Bellman-Ford algorithm
+ * (shortest path faster algorithm): only links out of routers whose
+ * cost changed are relaxed, and paths are kept as predecessors
+ *
+ * @version 2.2.7
+ */
+
+package JNW2.utility;
+
+import JNW2.*;
+import static JNW2.Constants.*;
+import JNW2.parsers.*;
+
+public class QueueBellmanFordRouting implements RoutingRowEngine
+{
+  // simulation environment
+  static SimLogger simLogger = SimLogger.getInstance(SimLogger.INFO);
+
+  // instance variables
+  int numberOfSubnets;
+  static String configFileName;
+
+  /**
+   * Count times through inner loop to compare with BellmanFordRouting;
+   * here it counts links relaxed
+   */
+  int innerLoopCount = 0;
+
+  /**
+   * Links of the WAN, built once from ConnectivityMatrix
+   * if not supplied
+   */
+  CsrTopology csr;
+
+  /**
+   * Scratch state reused for every row: cost to each router, router
+   * before it on the best path, and a circular work list of routers
+   * whose cost changed and whose links must be relaxed
+   */
+  float[] C;
+  int[] predecessors;
+  int[] workList;
+  boolean[] inWorkList;
+
+  /**
+   * Creates an engine for the topology of the current simulation
+   */
+  public QueueBellmanFordRouting()
+  {
+    numberOfSubnets = SimulationEngine.getInstance().getTopology().getNumberOfSubnets();
+  }
+
+  /**
+   * Creates an engine for a given topology
+   * @param csr - links of the WAN
+   */
+  public QueueBellmanFordRouting(CsrTopology csr)
+  {
+    this.csr = csr;
+    numberOfSubnets = csr.getNumberOfSubnets();
+    allocateScratch();
+  }
+
+  /**
+   * Builds a routing table
+   * @return routingMatrix
+   * @throws Exception
+   */
+  public int[][] computeRoutingMatrix() throws Exception
+  {
+    // JNW2 network array indexes range from 1 to numberOfSubnets
+    // thus arrays must have dimension numberOfSubnets+1
+    int[][] routingMatrix = new int[numberOfSubnets+1][];
+
+    buildTopology();
+
+    // compute each row of the matrix
+    for(int rowNumber = 1; rowNumber <= numberOfSubnets; ++rowNumber)
+      routingMatrix[rowNumber] = computeRoutingRow(rowNumber);
+
+    // print out inner loop count for comparison
+    simLogger.logInfo("Queue Bellman-Ford inner loop count:" + innerLoopCount);
+
+    // return to composite
+    return routingMatrix;
+  }
+
+  /**
+   * Builds a routing table, computing rows in parallel
+   * @param parallelism - number of worker threads (zero or less for
+   * one per processor)
+   * @return routingMatrix
+   * @throws Exception
+   */
+  public int[][] computeRoutingMatrix(int parallelism) throws Exception
+  {
+    buildTopology();
+    final CsrTopology shared = csr;
+    ParallelRouting parallelRouting = new ParallelRouting(parallelism);
+    return parallelRouting.computeRoutingMatrix(numberOfSubnets,
+      new ParallelRouting.EngineFactory()
+      {
+        public RoutingRowEngine newEngine()
+        {
+          return new QueueBellmanFordRouting(shared);
+        }
+      }, "Queue Bellman-Ford");
+  }
+
+  /**
+   * @return count of times through the inner loop
+   */
+  public int getInnerLoopCount()
+  {
+    return innerLoopCount;
+  }
+
+  /**
+   * Reads every link out of ConnectivityMatrix once, if no
+   * topology was supplied
+   * @throws Exception
+   */
+  void buildTopology() throws Exception
+  {
+    if(csr != null) return;
+    csr = CsrTopology.fromSimulation();
+    allocateScratch();
+  }
+
+  private void allocateScratch()
+  {
+    C = new float[numberOfSubnets+1];
+    predecessors = new int[numberOfSubnets+1];
+    workList = new int[numberOfSubnets];
+    inWorkList = new boolean[numberOfSubnets+1];
+  }
+
+  /**
+   * Builds a row in a routing table
+   * @param sourceRouter - subnet number of router (at packet source)
+   * that seeks to find an optimal set of routes for its packets
+   * @return forwardRouters - next-hop router to reach each network number;
+   * the source router for itself and zero if there is no route
+   */
+  public int[] computeRoutingRow(int sourceRouter) throws Exception
+  {
+    int[] offsets = csr.offsets;
+    int[] neighbors = csr.neighbors;
+    float[] costs = csr.costs;
+
+    for(int router = 1; router <= numberOfSubnets; ++router)
+    {
+      C[router] = HUGEFLOAT;
+      predecessors[router] = 0;
+    }
+    C[sourceRouter] = 0;
+
+    // each router is in the work list at most once, so a circular
+    // list of numberOfSubnets entries cannot overflow
+    int head = 0, count = 1;
+    workList[0] = sourceRouter;
+    inWorkList[sourceRouter] = true;
+    while(count > 0)
+    {
+      int fromRouter = workList[head];
+      head = (head + 1 == numberOfSubnets) ? 0 : head + 1;
+      --count;
+      inWorkList[fromRouter] = false;
+
+      float fromCost = C[fromRouter];
+      for(int link = offsets[fromRouter]; link < offsets[fromRouter+1]; ++link)
+      {
+        innerLoopCount++;
+        int toRouter = neighbors[link];
+        float possibleCost = fromCost + costs[link];
+        if(possibleCost < C[toRouter])
+        {
+          C[toRouter] = possibleCost;
+          predecessors[toRouter] = fromRouter;
+          if(!inWorkList[toRouter])
+          {
+            int tail = head + count;
+            if(tail >= numberOfSubnets) tail -= numberOfSubnets;
+            workList[tail] = toRouter;
+            inWorkList[toRouter] = true;
+            ++count;
+          }
+        }
+      }
+    }
+
+    return forwardRoutersFromPredecessors(sourceRouter);
+  }
+
+  /**
+   * Follows predecessors back toward the source to find the first hop
+   * of each path; each router is visited once since hops found along
+   * the way are saved
+   */
+  private int[] forwardRoutersFromPredecessors(int sourceRouter)
+  {
+    int[] forwardRouters = new int[numberOfSubnets+1];
+    forwardRouters[sourceRouter] = sourceRouter;
+    int[] pending = workList;
+    for(int destRouter = 1; destRouter <= numberOfSubnets; ++destRouter)
+    {
+      if(forwardRouters[destRouter] != 0 || predecessors[destRouter] == 0)
+        continue;
+      int pendingCount = 0;
+      int router = destRouter;
+      while(forwardRouters[router] == 0 && predecessors[router] != sourceRouter)
+      {
+        pending[pendingCount++] = router;
+        router = predecessors[router];
+      }
+      int forwardRouter = forwardRouters[router] != 0 ? forwardRouters[router] : router;
+      forwardRouters[router] = forwardRouter;
+      while(pendingCount > 0)
+        forwardRouters[pending[--pendingCount]] = forwardRouter;
+    }
+    return forwardRouters;
+  }
+
+  /**
+   * make a test run of QueueBellmanFordRouting
+   *
+   * includes printing routing table but not running simulation
+   */
+  static class TestQueueBellmanFordRouting
+  {
+    public TestQueueBellmanFordRouting()
+    {
+      // setup simulation environment
+      Topology testTopology = new Topology(configFileName);
+      SimulationEngine testSimEngine = new SimulationEngine(testTopology);
+      testSimEngine.setInstance(testSimEngine);
+      simLogger.setPrintAtLayers(testTopology.getPrintAtLayers());
+      System.out.println("Running queue Bellman-Ford routing test");
+
+      // load network topology from config file
+      ConfigParser configParser = new ConfigParser(testTopology);
+
+      // parse the configuration
+      try
+      {
+        if(!configParser.parseConfig())return;
+      }
+      catch(Exception e)
+      {
+        System.out.println("parse of file:" + configFileName + " bad input:" +
+          e.getMessage());
+        return;
+      }
+
+      // load the configuration into ConnectivityMatrix
+      // and compare against the classic engine
+      try
+      {
+        testSimEngine.loadConfiguration();
+        int[][] routingMatrix = new QueueBellmanFordRouting().computeRoutingMatrix();
+        BellmanFordRouting bellmanFordRouting = new BellmanFordRouting();
+        bellmanFordRouting.showPaths = false;
+        bellmanFordRouting.computeRoutingMatrix();
+        for(int rowNumber = 1; rowNumber < routingMatrix.length; ++rowNumber)
+        {
+          String row = "";
+          for(int colNumber = 1; colNumber < routingMatrix.length; ++colNumber)
+            row += routingMatrix[rowNumber][colNumber] + " ";
+          simLogger.logInfo("Queue Bellman-Ford routing row " + rowNumber + ": " + row);
+        }
+      }
+      catch(Exception e)
+      {
+        simLogger.logError("Exception loading configuration:" + e);
+        simLogger.logException(e);
+      }
+
+    }// end TestQueueBellmanFordRouting() constructor
+
+  }// end class TestQueueBellmanFordRouting
+
+  // test QueueBellmanFordRouting
+  public static void main(String args[])
+  {
+    configFileName = args[0];
+    TestQueueBellmanFordRouting testQueueBellmanFordRouting;
+    testQueueBellmanFordRouting = new TestQueueBellmanFordRouting();
+
+  }// end main()
+
+}// end class QueueBellmanFordRouting
@@ -0,0 +1,313 @@
+/**
+ * Java Network Workbench 2 (JNW2)
+ * Copyright 2013-2018 Networking and Simulation Laboratory/George Mason University
+ *
+ * Saves a computed routingMatrix to a binary file together with a
+ * fingerprint of the topology it was computed for, so a later run
+ * with the same links can load it instead of recomputing routes
+ *
+ * @version 2.2.7
+ */
+
+package JNW2.utility;
+
+import java.io.*;
+import java.nio.file.*;
+import JNW2.*;
+import JNW2.parsers.*;
+
+public class RoutingCache
+{
+  static SimLogger simLogger = SimLogger.getInstance(SimLogger.INFO);
+
+  /**
+   * File layout: MAGIC, FORMAT_VERSION, fingerprint, routing engine
+   * name, numberOfSubnets, bytes per entry, then each row 1 to
+   * numberOfSubnets as entries for columns 1 to numberOfSubnets
+   */
+  static final int MAGIC = 0x4A4E5752; // "JNWR"
+  static final int FORMAT_VERSION = 1;
+
+  /**
+   * Computes the routingMatrix when the cache cannot supply it
+   */
+  public interface RoutingMatrixSource
+  {
+    int[][] computeRoutingMatrix() throws Exception;
+  }
+
+  // instance variables
+  private final File cacheFile;
+  static String configFileName;
+
+  /**
+   * @param cacheFile - file the routingMatrix is kept in
+   */
+  public RoutingCache(File cacheFile)
+  {
+    this.cacheFile = cacheFile;
+  }
+
+  /**
+   * 64-bit FNV-1a hash of the number of subnets and every link
+   * with its cost
+   * @param csr - links of the WAN
+   * @return fingerprint
+   */
+  public static long fingerprint(CsrTopology csr)
+  {
+    long hash = 0xcbf29ce484222325L;
+    hash = mix(hash, csr.numberOfSubnets);
+    for(int router = 1; router <= csr.numberOfSubnets + 1; ++router)
+      hash = mix(hash, csr.offsets[router]);
+    for(int link = 0; link < csr.neighbors.length; ++link)
+    {
+      hash = mix(hash, csr.neighbors[link]);
+      hash = mix(hash, Float.floatToIntBits(csr.costs[link]));
+    }
+    return hash;
+  }
+
+  private static long mix(long hash, int value)
+  {
+    for(int shift = 0; shift < 32; shift += 8)
+    {
+      hash ^= (value >>> shift) & 0xff;
+      hash *= 0x100000001b3L;
+    }
+    return hash;
+  }
+
+  /**
+   * Loads the cached routingMatrix if it was computed by the same
+   * engine for a topology with this fingerprint, otherwise computes
+   * it and saves it for next time
+   * @param engineName - name of the routing algorithm
+   * @param csr - links of the WAN
+   * @param source - computes the routingMatrix on a cache miss
+   * @return routingMatrix
+   * @throws Exception
+   */
+  public int[][] loadOrCompute(String engineName, CsrTopology csr,
+    RoutingMatrixSource source) throws Exception
+  {
+    long fingerprint = fingerprint(csr);
+    int[][] routingMatrix = load(fingerprint, engineName, csr.numberOfSubnets);
+    if(routingMatrix != null)
+    {
+      simLogger.logInfo("Routing loaded from cache " + cacheFile);
+      return routingMatrix;
+    }
+    routingMatrix = source.computeRoutingMatrix();
+    try
+    {
+      save(fingerprint, engineName, routingMatrix);
+    }
+    catch(IOException e)
+    {
+      simLogger.logWarn("Could not save routing cache " + cacheFile + ":" + e.getMessage());
+    }
+    return routingMatrix;
+  }
+
+  /**
+   * @return cached routingMatrix, or null if there is no cache file
+   * or it is for a different topology, engine or format
+   */
+  public int[][] load(long fingerprint, String engineName, int numberOfSubnets)
+  {
+    if(!cacheFile.isFile()) return null;
+    DataInputStream in = null;
+    try
+    {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+      if(in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) return null;
+      if(in.readLong() != fingerprint) return null;
+      if(!in.readUTF().equals(engineName)) return null;
+      if(in.readInt() != numberOfSubnets) return null;
+      int entryBytes = in.readByte();
+
+      // JNW2 network array indexes range from 1 to numberOfSubnets
+      // thus arrays must have dimension numberOfSubnets+1
+      int[][] routingMatrix = new int[numberOfSubnets+1][numberOfSubnets+1];
+      for(int rowNumber = 1; rowNumber <= numberOfSubnets; ++rowNumber)
+        for(int colNumber = 1; colNumber <= numberOfSubnets; ++colNumber)
+          routingMatrix[rowNumber][colNumber] = readEntry(in, entryBytes);
+      return routingMatrix;
+    }
+    catch(IOException e)
+    {
+      simLogger.logWarn("Ignoring unreadable routing cache " + cacheFile + ":" + e.getMessage());
+      return null;
+    }
+    finally
+    {
+      close(in);
+    }
+  }
+
+  /**
+   * Writes the routingMatrix to a temporary file, then atomically
+   * moves it over the cache file, so a crash leaves either the old
+   * cache or the new one. A failed write deletes the temporary file
+   * and leaves the cache as it was.
+   * @throws IOException
+   */
+  public void save(long fingerprint, String engineName, int[][] routingMatrix)
+    throws IOException
+  {
+    int numberOfSubnets = routingMatrix.length - 1;
+    int entryBytes = numberOfSubnets < 0x100 ? 1 : (numberOfSubnets < 0x10000 ? 2 : 4);
+    File tempFile = new File(cacheFile.getPath() + ".tmp");
+    DataOutputStream out = null;
+    boolean written = false;
+    try
+    {
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      out.writeLong(fingerprint);
+      out.writeUTF(engineName);
+      out.writeInt(numberOfSubnets);
+      out.writeByte(entryBytes);
+      for(int rowNumber = 1; rowNumber <= numberOfSubnets; ++rowNumber)
+        for(int colNumber = 1; colNumber <= numberOfSubnets; ++colNumber)
+          writeEntry(out, entryBytes, routingMatrix[rowNumber][colNumber]);
+      // close here, so a failed flush is thrown rather than swallowed
+      out.close();
+      written = true;
+    }
+    finally
+    {
+      if(!written)
+      {
+        close(out);
+        tempFile.delete();
+      }
+    }
+    Files.move(tempFile.toPath(), cacheFile.toPath(),
+      StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static int readEntry(DataInputStream in, int entryBytes) throws IOException
+  {
+    if(entryBytes == 1) return in.readUnsignedByte();
+    if(entryBytes == 2) return in.readUnsignedShort();
+    return in.readInt();
+  }
+
+  private static void writeEntry(DataOutputStream out, int entryBytes, int entry)
+    throws IOException
+  {
+    if(entryBytes == 1) out.writeByte(entry);
+    else if(entryBytes == 2) out.writeShort(entry);
+    else out.writeInt(entry);
+  }
+
+  private static void close(Closeable stream)
+  {
+    if(stream == null) return;
+    try
+    {
+      stream.close();
+    }
+    catch(IOException e)
+    {
+      // nothing more to do
+    }
+  }
+
+  /**
+   * make a test run of RoutingCache
+   *
+   * saves the routingMatrix of a configured WAN, loads it back and
+   * checks that a changed link cost is a cache miss
+   */
+  static class TestRoutingCache
+  {
+    public TestRoutingCache()
+    {
+      // setup simulation environment
+      Topology testTopology = new Topology(configFileName);
+      SimulationEngine testSimEngine = new SimulationEngine(testTopology);
+      testSimEngine.setInstance(testSimEngine);
+      simLogger.setPrintAtLayers(testTopology.getPrintAtLayers());
+      System.out.println("Running routing cache test");
+
+      // load network topology from config file
+      ConfigParser configParser = new ConfigParser(testTopology);
+
+      // parse the configuration
+      try
+      {
+        if(!configParser.parseConfig())return;
+      }
+      catch(Exception e)
+      {
+        System.out.println("parse of file:" + configFileName + " bad input:" +
+          e.getMessage());
+        return;
+      }
+
+      // load the configuration into ConnectivityMatrix, then save and
+      // reload its routes
+      File cacheFile = null;
+      try
+      {
+        testSimEngine.loadConfiguration();
+        final CsrTopology csr = CsrTopology.fromSimulation();
+        cacheFile = File.createTempFile("routing", ".cache");
+        cacheFile.delete();
+        RoutingCache routingCache = new RoutingCache(cacheFile);
+        final int[] computeCount = new int[1];
+        RoutingMatrixSource source = new RoutingMatrixSource()
+        {
+          public int[][] computeRoutingMatrix() throws Exception
+          {
+            ++computeCount[0];
+            return new HeapDijkstraRouting(csr).computeRoutingMatrix();
+          }
+        };
+        int[][] computed = routingCache.loadOrCompute("HeapDijkstra", csr, source);
+        int[][] loaded = routingCache.loadOrCompute("HeapDijkstra", csr, source);
+        boolean sameRoutes = true;
+        for(int rowNumber = 1; rowNumber <= csr.numberOfSubnets; ++rowNumber)
+          for(int colNumber = 1; colNumber <= csr.numberOfSubnets; ++colNumber)
+            sameRoutes &= computed[rowNumber][colNumber] == loaded[rowNumber][colNumber];
+        System.out.println("computed " + computeCount[0] + " time(s) for two loads, " +
+          "routes match:" + sameRoutes);
+
+        // any other cost must not match the saved fingerprint
+        csr.costs[0] += 1.0f;
+        boolean miss = routingCache.load(fingerprint(csr), "HeapDijkstra",
+          csr.numberOfSubnets) == null;
+        System.out.println("changed link cost is a miss:" + miss);
+        if(computeCount[0] == 1 && sameRoutes && miss)
+          System.out.println("Passed: cached routes reload and follow the topology");
+        else
+          System.out.println("Failed: routing cache");
+      }
+      catch(Exception e)
+      {
+        simLogger.logError("Exception loading configuration:" + e);
+        simLogger.logException(e);
+      }
+      finally
+      {
+        if(cacheFile != null) cacheFile.delete();
+      }
+
+    }// end TestRoutingCache() constructor
+
+  }// end class TestRoutingCache
+
+  // test RoutingCache
+  public static void main(String args[])
+  {
+    configFileName = args[0];
+    TestRoutingCache testRoutingCache;
+    testRoutingCache = new TestRoutingCache();
+
+  }// end main()
+
+}// end class RoutingCache
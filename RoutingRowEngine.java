@@ -0,0 +1,28 @@
+/**
+ * Java Network Workbench 2 (JNW2)
+ * Copyright 2013-2018 Networking and Simulation Laboratory/George Mason University
+ *
+ * A routing algorithm that computes each row of the routingMatrix
+ * independently of the others
+ *
+ * @version 2.2.7
+ */
+
+package JNW2.utility;
+
+public interface RoutingRowEngine
+{
+  /**
+   * Builds a row in a routing table
+   * @param sourceRouter - subnet number of router (at packet source)
+   * @return next-hop router to reach each network number
+   * @throws Exception
+   */
+  int[] computeRoutingRow(int sourceRouter) throws Exception;
+
+  /**
+   * @return count of times through the inner loop of the algorithm
+   */
+  int getInnerLoopCount();
+
+}// end interface RoutingRowEngine
@@ -0,0 +1,291 @@
+/**
+ * Java Network Workbench 2 (JNW2)
+ * Copyright 2013-2018 Networking and Simulation Laboratory/George Mason University
+ *
+ * Estimates the round trip time of one link from timed frames and
+ * gives the retransmit timeout, after Jacobson and Karels: SRTT and
+ * RTTVAR are smoothed from samples, and RTO = SRTT + 4*RTTVAR.
+ * Following Karn, a frame that was sent again is never timed, and a
+ * timeout doubles RTO until a frame sent once is ACKed.
+ *
+ * @version 2.2.7
+ */
+
+package JNW2.interfaces;
+
+import static JNW2.Constants.*;
+import JNW2.utility.*;
+
+public class RttEstimator
+{
+  // gains for SRTT and RTTVAR, as in TCP
+  static final double ALPHA = 1.0 / 8.0;
+  static final double BETA = 1.0 / 4.0;
+
+  // instance variables
+  private long minTimeoutTicks = 1;
+  private long maxTimeoutTicks = 64L * MAX_LINK_RTT;
+  private double smoothedRtt = 0.0;
+  private double rttVariation = 0.0;
+  private boolean haveSample = false;
+  private long timeoutTicks;
+
+  // the one frame being timed, if any
+  private boolean timing = false;
+  private int timedSN;
+  private long timedSentTicks;
+
+  // statistics
+  private long samples = 0;
+  private long samplesDiscarded = 0;
+  private long timeouts = 0;
+
+  /**
+   * @param initialTimeoutTicks - RTO until the first sample
+   */
+  public RttEstimator(long initialTimeoutTicks)
+  {
+    timeoutTicks = initialTimeoutTicks;
+  }
+
+  /**
+   * @param minTimeoutTicks - RTO is never less; at least the time
+   * to send a frame, so a slow link does not time out every frame
+   * @param maxTimeoutTicks - RTO is never more, however often it backs off
+   */
+  public void setTimeoutBounds(long minTimeoutTicks, long maxTimeoutTicks)
+  {
+    if(minTimeoutTicks < 1 || maxTimeoutTicks < minTimeoutTicks)
+      throw new IllegalArgumentException("RTO bounds " + minTimeoutTicks +
+        " to " + maxTimeoutTicks + " are not valid");
+    this.minTimeoutTicks = minTimeoutTicks;
+    this.maxTimeoutTicks = maxTimeoutTicks;
+    timeoutTicks = clamp(timeoutTicks);
+  }
+
+  /**
+   * Starts timing a frame sent for the first time, unless one is
+   * already being timed
+   * @param SN - sequence number of the frame
+   * @param sentTicks - when it was sent
+   */
+  public void frameSent(int SN, long sentTicks)
+  {
+    if(timing) return;
+    timing = true;
+    timedSN = SN;
+    timedSentTicks = sentTicks;
+  }
+
+  /**
+   * A frame was sent again: its ACK could answer either copy, so
+   * the frame being timed gives no sample (Karn's rule)
+   */
+  public void frameResent()
+  {
+    if(timing)
+      ++samplesDiscarded;
+    timing = false;
+  }
+
+  /**
+   * @return true if a frame is being timed
+   */
+  public boolean isTiming()
+  {
+    return timing;
+  }
+
+  /**
+   * @return SN of the frame being timed
+   */
+  public int getTimedSN()
+  {
+    return timedSN;
+  }
+
+  /**
+   * The frame being timed was ACKed: take its round trip as a sample
+   * @param ackTicks - when the ACK arrived
+   */
+  public void timedFrameAcked(long ackTicks)
+  {
+    if(!timing) return;
+    timing = false;
+    sample(ackTicks - timedSentTicks);
+  }
+
+  /**
+   * Adds one round trip sample and recomputes RTO
+   * @param rttTicks - measured round trip
+   */
+  public void sample(long rttTicks)
+  {
+    ++samples;
+    if(!haveSample)
+    {
+      smoothedRtt = rttTicks;
+      rttVariation = rttTicks / 2.0;
+      haveSample = true;
+    }
+    else
+    {
+      rttVariation = (1.0 - BETA) * rttVariation + BETA * Math.abs(smoothedRtt - rttTicks);
+      smoothedRtt = (1.0 - ALPHA) * smoothedRtt + ALPHA * rttTicks;
+    }
+    timeoutTicks = clamp((long)Math.ceil(smoothedRtt + Math.max(1.0, 4.0 * rttVariation)));
+  }
+
+  /**
+   * The retransmit timer expired: double RTO, which stays backed
+   * off until the next sample
+   */
+  public void backoff()
+  {
+    ++timeouts;
+    frameResent();
+    timeoutTicks = clamp(2 * timeoutTicks);
+  }
+
+  private long clamp(long ticks)
+  {
+    return Math.max(minTimeoutTicks, Math.min(maxTimeoutTicks, ticks));
+  }
+
+  /**
+   * @return retransmit timeout (RTO)
+   */
+  public long getTimeoutTicks()
+  {
+    return timeoutTicks;
+  }
+
+  /**
+   * @return smoothed round trip time (SRTT); 0 before any sample
+   */
+  public double getSmoothedRtt()
+  {
+    return smoothedRtt;
+  }
+
+  /**
+   * @return round trip time variation (RTTVAR)
+   */
+  public double getRttVariation()
+  {
+    return rttVariation;
+  }
+
+  /**
+   * @return statistics as one line
+   */
+  public String getStatistics()
+  {
+    return "SRTT:" + String.format("%.1f", smoothedRtt) +
+      " RTTVAR:" + String.format("%.1f", rttVariation) + " RTO:" + timeoutTicks +
+      " samples:" + samples + " discarded:" + samplesDiscarded + " timeouts:" + timeouts;
+  }
+
+  // Test code
+
+  /**
+   * Schedules a frame sent once, or again, and its ACK rttTicks later
+   */
+  private static void scheduleFrame(final RttEstimator estimator, final int SN,
+    final boolean resent, long sentTicks, long rttTicks, LocalEventQueue events)
+  {
+    events.schedule(new LocalEventQueue.TimedEvent()
+    {
+      public void fire()
+      {
+        if(resent) estimator.frameResent();
+        else estimator.frameSent(SN, getTicks());
+      }
+    }, sentTicks);
+    events.schedule(new LocalEventQueue.TimedEvent()
+    {
+      public void fire()
+      {
+        if(estimator.isTiming() && estimator.getTimedSN() == SN)
+          estimator.timedFrameAcked(getTicks());
+      }
+    }, sentTicks + rttTicks);
+  }
+
+  private static void printEstimates(String step, RttEstimator estimator)
+  {
+    System.out.println(step + ": SRTT " + estimator.getSmoothedRtt() +
+      " RTTVAR " + estimator.getRttVariation() + " RTO " + estimator.getTimeoutTicks());
+  }
+
+  /**
+   * Checks the Jacobson/Karels estimates, Karn's rule and backoff
+   * against values worked by hand, with frames and ACKs on a
+   * LocalEventQueue
+   * @param args - no arguments passed
+   */
+  public static void main(String[] args)
+  {
+    try
+    {
+      LocalEventQueue events = new LocalEventQueue();
+      RttEstimator estimator = new RttEstimator(100);
+      boolean passed = estimator.getTimeoutTicks() == 100;
+
+      // first sample R = 40: SRTT = R, RTTVAR = R/2, RTO = 40 + 4*20
+      scheduleFrame(estimator, 0, false, 0, 40, events);
+      while(events.nextEvent());
+      printEstimates("sample 40 (expect 40, 20, 120)", estimator);
+      passed &= estimator.getSmoothedRtt() == 40.0 && estimator.getRttVariation() == 20.0 &&
+        estimator.getTimeoutTicks() == 120;
+
+      // second sample R = 80: RTTVAR = 3/4*20 + 1/4*|40-80| = 25,
+      // SRTT = 7/8*40 + 1/8*80 = 45, RTO = 45 + 4*25
+      scheduleFrame(estimator, 1, false, 100, 80, events);
+      while(events.nextEvent());
+      printEstimates("sample 80 (expect 45, 25, 145)", estimator);
+      passed &= estimator.getSmoothedRtt() == 45.0 && estimator.getRttVariation() == 25.0 &&
+        estimator.getTimeoutTicks() == 145;
+
+      // only one frame is timed at a time
+      estimator.frameSent(2, 200);
+      estimator.frameSent(3, 210);
+      System.out.println("timed SN with frames 2 and 3 out: " + estimator.getTimedSN());
+      passed &= estimator.getTimedSN() == 2;
+
+      // Karn: frame 2 is sent again, so its ACK gives no sample
+      scheduleFrame(estimator, 2, true, 300, 500, events);
+      while(events.nextEvent());
+      printEstimates("ACK of a frame sent again (expect 45, 25, 145)", estimator);
+      passed &= !estimator.isTiming() && estimator.getSmoothedRtt() == 45.0 &&
+        estimator.getTimeoutTicks() == 145;
+
+      // each timeout doubles RTO, up to the bound
+      estimator.backoff();
+      passed &= estimator.getTimeoutTicks() == 290;
+      estimator.setTimeoutBounds(1, 500);
+      estimator.backoff();
+      System.out.println("RTO after two backoffs, bound 500: " + estimator.getTimeoutTicks());
+      passed &= estimator.getTimeoutTicks() == 500;
+
+      // the next sample ends the backoff; RTO stays above the floor
+      estimator.setTimeoutBounds(200, 500);
+      scheduleFrame(estimator, 4, false, 1000, 45, events);
+      while(events.nextEvent());
+      printEstimates("sample 45 after backoff, floor 200 (expect 45, 18.75, 200)", estimator);
+      passed &= estimator.getSmoothedRtt() == 45.0 && estimator.getRttVariation() == 18.75 &&
+        estimator.getTimeoutTicks() == 200;
+      System.out.println(estimator.getStatistics());
+
+      System.out.println(passed ? "Passed: estimates match the hand-worked values" :
+        "Failed: RTT estimator");
+    }
+    catch(Exception e)
+    {
+      System.out.println("Exception in RttEstimator test:" + e.getMessage());
+      e.printStackTrace(System.err);
+    }
+
+  }// end main()
+
+}// end class RttEstimator
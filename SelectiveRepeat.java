@@ -0,0 +1,589 @@
+/**
+ * Java Network Workbench 2 (JNW2)
+ * Copyright 2013-2018 Networking and Simulation Laboratory/George Mason University
+ *
+ * Reliable Data Link Control using selective-repeat ARQ: each frame is
+ * ACKed on its own, a gap in the received frames is NAKed, only lost
+ * frames are sent again, and the receiver holds frames that arrive
+ * out of order until the gap before them is filled.
+ *
+ * @version 2.2.7
+ */
+
+package JNW2.interfaces;
+
+import static JNW2.Constants.*;
+import JNW2.*;
+import JNW2.message.*;
+import JNW2.nodes.*;
+import JNW2.stack.*;
+import JNW2.utility.*;
+import java.util.Random;
+
+public class SelectiveRepeat extends Interface
+{
+   /**
+    * What this end of the link uses to send frames and to pass
+    * received frames up the stack
+    */
+   public interface Link
+   {
+      void sendFrame(int sequenceNumber, PackedBitSequence frame) throws Exception;
+      void sendAck(int sequenceNumber) throws Exception;
+      void sendNak(int sequenceNumber) throws Exception;
+      void deliver(PackedBitSequence frame) throws Exception;
+   }
+
+   // instance variables
+   int interfaceToWhichAttached;
+   Link link;
+
+   /**
+    * Sequence numbers run from 0 to modulus-1; the window can be at
+    * most half the modulus, so a resent frame is never mistaken for
+    * a new one
+    */
+   int modulus = DL_WINDOW_MAX;
+   int windowFrames = DL_WINDOW_MAX / 2;
+
+   /**
+    * An unACKed frame is sent again after this long
+    */
+   long retransmitTimeoutTicks = 2 * MAX_LINK_RTT;
+
+   // send state: SNmin is the oldest frame not ACKed,
+   // SNmax the next sequence number to use
+   int SNmin = 0;
+   int SNmax = 0;
+   PackedBitSequence[] sendBuffer;
+   boolean[] acked;
+   boolean[] naked;
+   long[] sentAtTicks;
+
+   // receive state: RN is the next frame to deliver in order
+   int RN = 0;
+   PackedBitSequence[] reorderBuffer;
+   boolean nakSentForRN = false;
+
+   // statistics
+   long framesSent = 0;
+   long framesResent = 0;
+   long acksSent = 0;
+   long naksSent = 0;
+   long framesDelivered = 0;
+   long duplicatesDiscarded = 0;
+
+   /**
+    * Creates a new instance of SelectiveRepeat
+    * @param stack - protocol stack for this Interface
+    * @param interfaceNumber - ID of this Interface
+    */
+   public SelectiveRepeat(Stack stack, int interfaceNumber)
+   {
+      super(stack);
+      interfaceToWhichAttached = interfaceNumber;
+      setSequenceRange(DL_WINDOW_MAX, DL_WINDOW_MAX / 2);
+   }
+
+   /**
+    * sets the sequence number range and window; clears all state
+    * @param modulus - number of distinct sequence numbers
+    * @param windowFrames - frames that may be outstanding, at most
+    *        half of modulus
+    */
+   public void setSequenceRange(int modulus, int windowFrames)
+   {
+      if(windowFrames < 1 || 2 * windowFrames > modulus)
+         throw new IllegalArgumentException("selective repeat window " + windowFrames +
+            " must be from 1 to half of " + modulus);
+      this.modulus = modulus;
+      this.windowFrames = windowFrames;
+      sendBuffer = new PackedBitSequence[modulus];
+      acked = new boolean[modulus];
+      naked = new boolean[modulus];
+      sentAtTicks = new long[modulus];
+      reorderBuffer = new PackedBitSequence[modulus];
+      SNmin = SNmax = RN = 0;
+      nakSentForRN = false;
+   }
+
+   public void setLink(Link link)
+   {
+      this.link = link;
+   }
+
+   public void setRetransmitTimeoutTicks(long retransmitTimeoutTicks)
+   {
+      this.retransmitTimeoutTicks = retransmitTimeoutTicks;
+   }
+
+   /**
+    * @return distance from low up to high, modulo modulus
+    */
+   int distance(int low, int high)
+   {
+      int range = high - low;
+      return range < 0 ? range + modulus : range;
+   }
+
+   // sender
+
+   /**
+    * @return true if the window has room for another new frame
+    */
+   public boolean canSend()
+   {
+      return distance(SNmin, SNmax) < windowFrames;
+   }
+
+   /**
+    * @return true if frames have been sent that are not yet ACKed
+    */
+   public boolean framesRemainUnacked()
+   {
+      return SNmin != SNmax;
+   }
+
+   /**
+    * sends a new frame if the window has room
+    * @param frame - finished frame; kept until it is ACKed
+    * @param nowTicks - simulation time
+    * @return false if the window is full and the frame was not sent
+    * @throws Exception
+    */
+   public boolean sendFrame(PackedBitSequence frame, long nowTicks) throws Exception
+   {
+      if(!canSend()) return false;
+      int sequenceNumber = SNmax;
+      sendBuffer[sequenceNumber] = frame;
+      acked[sequenceNumber] = false;
+      naked[sequenceNumber] = false;
+      SNmax = (SNmax + 1) % modulus;
+      transmit(sequenceNumber, nowTicks);
+      ++framesSent;
+      return true;
+   }
+
+   /**
+    * sends again each frame that was NAKed or has waited longer
+    * than the retransmit timeout for its ACK
+    * @param nowTicks - simulation time
+    * @return number of frames sent again
+    * @throws Exception
+    */
+   public int resendLostFrames(long nowTicks) throws Exception
+   {
+      int resent = 0;
+      for(int sequenceNumber = SNmin; sequenceNumber != SNmax;
+         sequenceNumber = (sequenceNumber + 1) % modulus)
+      {
+         if(acked[sequenceNumber]) continue;
+         if(naked[sequenceNumber] ||
+            nowTicks - sentAtTicks[sequenceNumber] >= retransmitTimeoutTicks)
+         {
+            naked[sequenceNumber] = false;
+            transmit(sequenceNumber, nowTicks);
+            ++framesResent;
+            ++resent;
+         }
+      }
+      return resent;
+   }
+
+   private void transmit(int sequenceNumber, long nowTicks) throws Exception
+   {
+      sentAtTicks[sequenceNumber] = nowTicks;
+      link.sendFrame(sequenceNumber, sendBuffer[sequenceNumber]);
+   }
+
+   /**
+    * an ACK marks one frame received; the window slides past
+    * every ACKed frame at its bottom
+    * @param sequenceNumber - SN of the frame ACKed
+    */
+   public void ackReceived(int sequenceNumber)
+   {
+      if(distance(SNmin, sequenceNumber) >= distance(SNmin, SNmax)) return;
+      acked[sequenceNumber] = true;
+      naked[sequenceNumber] = false;
+      while(SNmin != SNmax && acked[SNmin])
+      {
+         sendBuffer[SNmin] = null;
+         SNmin = (SNmin + 1) % modulus;
+      }
+   }
+
+   /**
+    * a NAK asks for one frame to be sent again
+    * @param sequenceNumber - SN of the frame the receiver is missing
+    */
+   public void nakReceived(int sequenceNumber)
+   {
+      if(distance(SNmin, sequenceNumber) >= distance(SNmin, SNmax)) return;
+      if(!acked[sequenceNumber])
+         naked[sequenceNumber] = true;
+   }
+
+   // receiver
+
+   /**
+    * tests whether a frame is in the receive window
+    * @param receivedSN is SN found in the frame
+    * @return true to accept frame
+    */
+   public boolean acceptFrame(int receivedSN)
+   {
+      return distance(RN, receivedSN) < windowFrames;
+   }
+
+   /**
+    * handles a data frame that passed the CRC check: ACKs it, holds
+    * it until the frames before it have arrived, and NAKs the first
+    * missing frame when a later one arrives
+    * @param receivedSN - SN found in the frame
+    * @param frame - the frame; kept until it is delivered
+    * @throws Exception
+    */
+   public void frameReceived(int receivedSN, PackedBitSequence frame) throws Exception
+   {
+      if(!acceptFrame(receivedSN))
+      {
+         // a resend of a frame already delivered, whose ACK was
+         // lost: ACK it again so the sender can move on
+         if(distance(receivedSN, RN) <= windowFrames)
+         {
+            link.sendAck(receivedSN);
+            ++acksSent;
+         }
+         ++duplicatesDiscarded;
+         return;
+      }
+      link.sendAck(receivedSN);
+      ++acksSent;
+      if(reorderBuffer[receivedSN] != null)
+      {
+         ++duplicatesDiscarded;
+         return;
+      }
+      reorderBuffer[receivedSN] = frame;
+
+      if(receivedSN != RN && !nakSentForRN)
+      {
+         link.sendNak(RN);
+         ++naksSent;
+         nakSentForRN = true;
+      }
+
+      // deliver everything now in order
+      while(reorderBuffer[RN] != null)
+      {
+         PackedBitSequence inOrder = reorderBuffer[RN];
+         reorderBuffer[RN] = null;
+         RN = (RN + 1) % modulus;
+         nakSentForRN = false;
+         link.deliver(inOrder);
+         ++framesDelivered;
+      }
+   }
+
+   /**
+    * @return statistics as one line
+    */
+   public String getArqStatistics()
+   {
+      return "frames sent:" + framesSent + " resent:" + framesResent +
+         " ACKs sent:" + acksSent + " NAKs sent:" + naksSent +
+         " delivered:" + framesDelivered + " duplicates:" + duplicatesDiscarded;
+   }
+
+  // Test code
+  /**
+   * One direction of a simulated serial line: a data frame takes one
+   * tick to send and waits for the frames ahead of it, ACKs and NAKs
+   * are not queued, and any frame may be lost
+   */
+  static class TestLine
+  {
+    final LocalEventQueue events;
+    final Random random;
+    final double lossRate;
+    final long propagationTicks;
+    long freeTicks = 0;
+
+    TestLine(LocalEventQueue events, Random random, double lossRate, long propagationTicks)
+    {
+      this.events = events;
+      this.random = random;
+      this.lossRate = lossRate;
+      this.propagationTicks = propagationTicks;
+    }
+
+    void send(LocalEventQueue.TimedEvent arrival, boolean dataFrame)
+    {
+      long sentTicks = events.getTimeInTicks();
+      if(dataFrame)
+      {
+        freeTicks = Math.max(freeTicks, sentTicks) + 1;
+        sentTicks = freeTicks;
+      }
+      if(random.nextDouble() >= lossRate)
+        events.schedule(arrival, sentTicks + propagationTicks);
+    }
+  }// end class TestLine
+
+  // window for the comparison, larger than the frames in flight
+  // in one round trip, so only the ARQ limits goodput
+  static final int TEST_WINDOW_MAX = 256;
+  static final int TEST_WINDOW_FRAMES = 128;
+
+  static PackedBitSequence testFrame(int number)
+  {
+    PackedBitSequence frame = PackedBitSequence.withCapacity(32);
+    frame.appendBits(number, 32);
+    return frame;
+  }
+
+  /**
+   * Sends frames in both directions over a simulated lossy line
+   * between two SelectiveRepeat ends and checks that every frame is
+   * delivered once and in order
+   * @param lossRate - chance that any frame, ACK or NAK is lost
+   * @param frameCount - number of data frames to send each way
+   * @return goodput in frames delivered per tick; -1 if frames were
+   *         lost or out of order
+   */
+  static double testSelectiveRepeat(Stack stack, final double lossRate,
+    final int frameCount) throws Exception
+  {
+    final LocalEventQueue events = new LocalEventQueue();
+    final Random random = new Random(1);
+    final SelectiveRepeat[] ends = { new SelectiveRepeat(stack, 1), new SelectiveRepeat(stack, 2) };
+    final int[][] delivered = new int[2][1];
+    final boolean[] inOrder = { true };
+
+    for(int side = 0; side < 2; ++side)
+    {
+      final SelectiveRepeat far = ends[1 - side];
+      final int farSide = 1 - side;
+      final TestLine line = new TestLine(events, random, lossRate, MAX_LINK_RTT / 2);
+      ends[side].setSequenceRange(TEST_WINDOW_MAX, TEST_WINDOW_FRAMES);
+      ends[side].setRetransmitTimeoutTicks(4 * MAX_LINK_RTT);
+      ends[side].setLink(new Link()
+      {
+        public void sendFrame(final int sequenceNumber, final PackedBitSequence frame)
+        {
+          line.send(new LocalEventQueue.TimedEvent()
+          {
+            public void fire() throws Exception
+            {
+              far.frameReceived(sequenceNumber, frame);
+            }
+          }, true);
+        }
+        public void sendAck(final int sequenceNumber)
+        {
+          line.send(new LocalEventQueue.TimedEvent()
+          {
+            public void fire()
+            {
+              far.ackReceived(sequenceNumber);
+            }
+          }, false);
+        }
+        public void sendNak(final int sequenceNumber)
+        {
+          line.send(new LocalEventQueue.TimedEvent()
+          {
+            public void fire()
+            {
+              far.nakReceived(sequenceNumber);
+            }
+          }, false);
+        }
+        public void deliver(PackedBitSequence frame)
+        {
+          int expected = delivered[farSide][0]++;
+          if(frame.getBits(0, 32) != expected) inOrder[0] = false;
+        }
+      });
+    }
+
+    // each end sends whenever its window has room and resends lost
+    // frames, once per tick of the line
+    final int[] nextFrame = new int[2];
+    events.schedule(new LocalEventQueue.TimedEvent()
+    {
+      public void fire() throws Exception
+      {
+        boolean busy = false;
+        for(int side = 0; side < 2; ++side)
+        {
+          SelectiveRepeat end = ends[side];
+          end.resendLostFrames(getTicks());
+          while(nextFrame[side] < frameCount && end.canSend())
+            end.sendFrame(testFrame(nextFrame[side]++), getTicks());
+          busy |= nextFrame[side] < frameCount || end.framesRemainUnacked();
+        }
+        if(busy)
+          events.schedule(this, getTicks() + 1);
+      }
+    }, 0);
+    while(events.nextEvent());
+
+    for(int side = 0; side < 2; ++side)
+      System.out.println("end " + (side + 1) + " " + ends[side].getArqStatistics());
+    return finish(events, inOrder[0] && delivered[0][0] == frameCount &&
+      delivered[1][0] == frameCount, 2 * frameCount);
+  }
+
+  /**
+   * Runs the same line and traffic as testSelectiveRepeat() with
+   * go-back-n: GoBackN keeps the frames in its FrameWindow, the
+   * receiver takes only frame RN and ACKs with RN, and the sender
+   * goes back to SNmin when its retransmit timer expires, or once
+   * when an RN shows a frame was lost
+   * @return goodput in frames delivered per tick; -1 if frames were
+   *         lost or out of order
+   */
+  static double testGoBackN(Stack stack, final double lossRate,
+    final int frameCount) throws Exception
+  {
+    final LocalEventQueue events = new LocalEventQueue();
+    final Random random = new Random(1);
+    final GoBackN[] ends = { new GoBackN(stack, 1), new GoBackN(stack, 2) };
+    final TestLine[] lines = new TestLine[2];
+    final int[] RN = new int[2];
+    final boolean[] goBackNow = new boolean[2];
+    final boolean[] wentBack = new boolean[2];
+    final int[] delivered = new int[2];
+    final boolean[] inOrder = { true };
+    final long[] framesSent = new long[2];
+    for(int side = 0; side < 2; ++side)
+    {
+      lines[side] = new TestLine(events, random, lossRate, MAX_LINK_RTT / 2);
+      ends[side].setWindow(TEST_WINDOW_MAX, TEST_WINDOW_FRAMES);
+      ends[side].setRetransmitMode(GoBackN.RetransmitMode.TIMER);
+      // no shorter than the selective repeat timer, which must cover
+      // a window queued on the line as well as the round trip
+      ends[side].getRttEstimator().setTimeoutBounds(4 * MAX_LINK_RTT, 64L * MAX_LINK_RTT);
+    }
+
+    final int[] nextFrame = new int[2];
+    events.schedule(new LocalEventQueue.TimedEvent()
+    {
+      /**
+       * puts frame SN of this side on the line
+       */
+      void transmit(final int side, final int SN, boolean resent)
+      {
+        final GoBackN end = ends[side];
+        final GoBackN far = ends[1 - side];
+        final int farSide = 1 - side;
+        final PackedBitSequence frame = end.getBufferedFrame(SN);
+        end.frameSent(SN, end.getSendWindow().getSNmin(), end.getSendWindow().getSNmax(),
+          resent, getTicks());
+        ++framesSent[side];
+        lines[side].send(new LocalEventQueue.TimedEvent()
+        {
+          public void fire() throws Exception
+          {
+            int newRN = far.frameReceived(SN, RN[farSide]);
+            if(newRN != RN[farSide])
+            {
+              if(frame.getBits(0, 32) != delivered[farSide]++) inOrder[0] = false;
+              RN[farSide] = newRN;
+            }
+            final int ackRN = newRN;
+            lines[farSide].send(new LocalEventQueue.TimedEvent()
+            {
+              public void fire()
+              {
+                FrameWindow window = end.getSendWindow();
+                if(end.ackReceived(ackRN, getTicks()) > 0)
+                  wentBack[side] = false;
+                else if(ackRN == window.getSNmin() && !window.isEmpty() && !wentBack[side])
+                  goBackNow[side] = wentBack[side] = true;
+              }
+            }, false);
+          }
+        }, true);
+      }
+
+      public void fire() throws Exception
+      {
+        boolean busy = false;
+        for(int side = 0; side < 2; ++side)
+        {
+          GoBackN end = ends[side];
+          FrameWindow window = end.getSendWindow();
+          if(end.resendDue(window.getSNmin(), window.getSNmax(), getTicks()) ||
+            (goBackNow[side] && !window.isEmpty()))
+          {
+            goBackNow[side] = false;
+            for(int SN = window.getSNmin(); SN != window.getSNmax(); SN = end.incrementSNmax(SN))
+              transmit(side, SN, true);
+          }
+          while(nextFrame[side] < frameCount && !window.isFull())
+            transmit(side, end.bufferFrame(testFrame(nextFrame[side]++)), false);
+          busy |= nextFrame[side] < frameCount || !window.isEmpty();
+        }
+        if(busy)
+          events.schedule(this, getTicks() + 1);
+      }
+    }, 0);
+    while(events.nextEvent());
+
+    for(int side = 0; side < 2; ++side)
+      System.out.println("end " + (side + 1) + " frames sent:" + framesSent[side] +
+        " delivered:" + delivered[1 - side] + " " + ends[side].getRttEstimator().getStatistics());
+    return finish(events, inOrder[0] && delivered[0] == frameCount &&
+      delivered[1] == frameCount, 2 * frameCount);
+  }
+
+  static double finish(LocalEventQueue events, boolean passed, int framesDelivered)
+  {
+    double goodput = (double)framesDelivered / events.getTimeInTicks();
+    System.out.println("finished at tick " + events.getTimeInTicks() +
+      String.format(", goodput %.3f frames/tick", goodput));
+    return passed ? goodput : -1.0;
+  }
+
+  /**
+   * Runs testSelectiveRepeat() and testGoBackN() without loss and
+   * with 10% loss, and compares their goodput
+   * @param args - no arguments passed
+   */
+  public static void main(String[] args)
+  {
+    // simulation environment
+    Topology topology = new Topology();
+    SimulationEngine simEngine = new SimulationEngine(topology);
+    simEngine.setInstance(simEngine);
+
+    try
+    {
+      Host testHost = new Host(1,1,(byte)1,1);
+      Stack testStack = new Stack(testHost);
+      boolean passed = true;
+      for(double lossRate : new double[] { 0.0, 0.1 })
+      {
+        System.out.println("Selective repeat, " + (int)(100 * lossRate) + "% loss:");
+        double selectiveRepeat = testSelectiveRepeat(testStack, lossRate, 1000);
+        System.out.println("Go-back-n, " + (int)(100 * lossRate) + "% loss:");
+        double goBackN = testGoBackN(testStack, lossRate, 1000);
+        passed &= selectiveRepeat > 0 && goBackN > 0;
+        System.out.println(String.format("Goodput at %d%% loss: selective repeat %.3f, " +
+          "go-back-n %.3f frames/tick", (int)(100 * lossRate), selectiveRepeat, goBackN));
+      }
+      System.out.println(passed ? "Passed: all frames delivered in order" :
+        "Failed: frames lost or out of order");
+    }
+    catch(Exception e)
+    {
+      System.out.println("Exception in SelectiveRepeat test:" + e.getMessage());
+      e.printStackTrace(System.err);
+    }
+
+  }// end main()
+
+}// end class SelectiveRepeat
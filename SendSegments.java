@@ -15,7 +15,9 @@
 
 package JNW2.message;
 
+import JNW2.*;
 import static JNW2.Constants.*;
+import JNW2.nodes.*;
 import JNW2.stack.*;
 
 /**
@@ -24,6 +26,16 @@ import JNW2.stack.*;
  */
 public class SendSegments extends Segments
 {
+  // congestion control of this connection; Reno until set
+  private CongestionControl congestionControl = null;
+
+  // sendWindowStart at the last ACK, to tell new ACKs from duplicates
+  private long lastAckedWindowStart = -1;
+
+  // set when congestion control asks for the segment at
+  // sendWindowStart to be sent again without waiting for its timeout
+  private boolean fastRetransmitPending = false;
+
   public SendSegments(
     Stack stackRef,
     int sourceNetworkNumberRef, 
@@ -116,6 +128,28 @@ public class SendSegments extends Segments
 
             }// end if(replySegment.size() > 0) 
         }// end if(replySeg != null)
+
+    // the first call of a transfer comes before any ACK, so this
+    // is where its window starts
+    startTransferIfNew();
+
+    // fast retransmit: the segment the duplicate ACKs ask for goes
+    // out now, ahead of new segments
+    if(fastRetransmitPending)
+    {
+      fastRetransmitPending = false;
+      int resendIndex = sequenceNumberToBufferIndex(sendWindowStart);
+      if(resendIndex >= 0 && savedSendSegments[resendIndex] != null)
+      {
+        sendNewSegment(
+          destNetworkNumber,
+          destHostNumber,
+          tlSendState.TL_SENDING,
+          savedSendSegments[resendIndex],
+          false);
+        segmentSendTicks[resendIndex] = des.getSimulationTimeInTicks();
+      }
+    }
     
     // Step 2: Send a segment within window size
     // Update window end
@@ -220,9 +254,203 @@ public class SendSegments extends Segments
     // student name:
     // ****************** TRN2 student work goes here ******************** 
 
+    long nowTicks = des.getSimulationTimeInTicks();
+    // already done by sendRtlSegments() unless no segment was sent
+    startTransferIfNew();
+
+    if(timeoutOccurred)
+      congestionControl.timeout(nowTicks);
+    else if(sendWindowStart > lastAckedWindowStart)
+      fastRetransmitPending = congestionControl.newAck(sendWindowStart,
+        sendWindowStart - lastAckedWindowStart, nowTicks);
+    else
+      fastRetransmitPending = congestionControl.duplicateAck(lastCharSent, nowTicks);
+    lastAckedWindowStart = sendWindowStart;
+
+    // the window from congestion control, after a timeout as after
+    // an ACK, so the two always agree
+    setSlowStartThreshold(congestionControl.getSlowStartThreshold());
+    int window = congestionControl.getCongestionWindow();
+    if(receiverMaxWindow > 0 && window > receiverMaxWindow)
+      window = receiverMaxWindow;
+    if(window != getCongestionWindowSize())
+      changeCongestionWindowSizeTo(window);
     
     // **************** end TRN2 student work  ***************************
     
   }// end updateCongestionWindowSize()
+
+  /**
+   * starts congestion control in slow start when a transfer begins,
+   * before its first ACK, so that ACK is measured from the window
+   * start the transfer began at and counts as a new ACK
+   */
+  private void startTransferIfNew()
+  {
+    if(congestionControl == null)
+      congestionControl = new CongestionControl.Reno();
+    if(lastAckedWindowStart < 0 || sendWindowStart < lastAckedWindowStart)
+    {
+      congestionControl.reset(TL_SEGMENT_DATA_SIZE, getSlowStartThreshold());
+      lastAckedWindowStart = sendWindowStart;
+    }
+  }
+
+  /**
+   * selects congestion control for this connection; call before
+   * the transfer starts
+   * @param congestionControl - CongestionControl.Reno, NewReno or Cubic
+   */
+  public void setCongestionControl(CongestionControl congestionControl)
+  {
+    this.congestionControl = congestionControl;
+    lastAckedWindowStart = -1;
+    fastRetransmitPending = false;
+  }
+
+  public CongestionControl getCongestionControl()
+  {
+    return congestionControl;
+  }
+
+  // Test code
+
+  /**
+   * Grows a window from one segment by ACKing a segment at a time:
+   * seven ACKs reach the 800 character slow start threshold and the
+   * eighth adds 100*100/800 in congestion avoidance
+   */
+  private static long growTo812(CongestionControl.Reno reno)
+  {
+    reno.reset(TL_SEGMENT_DATA_SIZE, 8 * TL_SEGMENT_DATA_SIZE);
+    long windowStart = 0;
+    for(int ack = 0; ack < 8; ++ack)
+    {
+      windowStart += TL_SEGMENT_DATA_SIZE;
+      reno.newAck(windowStart, TL_SEGMENT_DATA_SIZE, 0);
+    }
+    return windowStart;
+  }
+
+  /**
+   * Checks congestion control as this class drives it, then the
+   * window and threshold of Reno, NewReno and CUBIC after sequences
+   * of ACKs, duplicate ACKs and timeouts, against values worked by
+   * hand with TL_SEGMENT_DATA_SIZE of 100
+   * @param args - no arguments passed
+   */
+  public static void main(String[] args)
+  {
+    // simulation environment
+    Topology topology = new Topology();
+    SimulationEngine simEngine = new SimulationEngine(topology);
+    simEngine.setInstance(simEngine);
+
+    try
+    {
+      // the first ACK of a transfer is new: its 100 characters grow
+      // the window in slow start, and fast retransmit waits for the
+      // third real duplicate after it
+      Host testHost = new Host(1,1,(byte)1,1);
+      SendSegments sender = new SendSegments(new Stack(testHost), 1, 1);
+      sender.setCongestionControl(new CongestionControl.Reno());
+      sender.startTransferIfNew();
+      sender.sendWindowStart = 100;
+      sender.lastCharSent = 499;
+      sender.updateCongestionWindowSize(0, false);
+      System.out.println("first ACK of 100: window " + sender.getCongestionWindowSize());
+      boolean passed = sender.getCongestionWindowSize() == 200;
+      sender.updateCongestionWindowSize(0, false);
+      sender.updateCongestionWindowSize(0, false);
+      passed &= !sender.fastRetransmitPending;
+      sender.updateCongestionWindowSize(0, false);
+      System.out.println("fast retransmit on the third duplicate: " + sender.fastRetransmitPending);
+      passed &= sender.fastRetransmitPending;
+
+      // Reno: slow start, then one segment per window per round trip
+      CongestionControl.Reno reno = new CongestionControl.Reno();
+      reno.reset(100, 800);
+      passed &= !reno.newAck(100, 100, 0) && reno.getCongestionWindow() == 200;
+      growTo812(reno);
+      System.out.println("Reno after 8 ACKs: window " + reno.getCongestionWindow() +
+        " ssthresh " + reno.getSlowStartThreshold() + " (expect 812, 800)");
+      passed &= reno.getCongestionWindow() == 812 && reno.getSlowStartThreshold() == 800;
+
+      // third duplicate: ssthresh = 812/2, window inflated by 3
+      // segments, then by one per further duplicate
+      passed &= !reno.duplicateAck(2000, 0) && !reno.duplicateAck(2000, 0);
+      passed &= reno.duplicateAck(2000, 0);
+      System.out.println("Reno fast recovery: window " + reno.getCongestionWindow() +
+        " ssthresh " + reno.getSlowStartThreshold() + " (expect 706, 406)");
+      passed &= reno.getSlowStartThreshold() == 406 && reno.getCongestionWindow() == 706;
+      passed &= !reno.duplicateAck(2000, 0) && reno.getCongestionWindow() == 806;
+
+      // the first new ACK deflates to ssthresh; a timeout drops to
+      // one segment with half the window as ssthresh
+      passed &= !reno.newAck(1000, 200, 0) && reno.getCongestionWindow() == 406;
+      reno.timeout(0);
+      System.out.println("Reno timeout: window " + reno.getCongestionWindow() +
+        " ssthresh " + reno.getSlowStartThreshold() + " (expect 100, 203)");
+      passed &= reno.getSlowStartThreshold() == 203 && reno.getCongestionWindow() == 100;
+
+      // NewReno: a partial ACK stays in recovery and resends; the
+      // full ACK ends recovery at ssthresh
+      CongestionControl.NewReno newReno = new CongestionControl.NewReno();
+      long windowStart = growTo812(newReno);
+      for(int duplicate = 0; duplicate < 3; ++duplicate)
+        newReno.duplicateAck(windowStart + 2999, 0);
+      passed &= newReno.newAck(windowStart + 200, 200, 0) &&
+        newReno.getCongestionWindow() == 606;
+      passed &= !newReno.newAck(windowStart + 3000, 2800, 0) &&
+        newReno.getCongestionWindow() == 406;
+      System.out.println("NewReno after recovery: window " + newReno.getCongestionWindow() +
+        " (expect 406)");
+
+      // CUBIC at 1000 ticks per second, starting in congestion
+      // avoidance: a loss cuts ssthresh to 0.7 of the window, and the
+      // first new ACK deflates to it, remembering the window of 1000
+      CongestionControl.Cubic cubic = new CongestionControl.Cubic(1000.0);
+      cubic.reset(1000, 500);
+      for(int duplicate = 0; duplicate < 3; ++duplicate)
+        cubic.duplicateAck(5000, 0);
+      passed &= cubic.getSlowStartThreshold() == 700 && cubic.getCongestionWindow() == 1000;
+      cubic.newAck(6000, 100, 0);
+      passed &= cubic.getCongestionWindow() == 700 && cubic.maxWindow == 1000.0;
+
+      // K = cbrt((10 - 7) / 0.4) seconds to climb back to 10 segments;
+      // at t = 0 Reno's growth is faster, so it sets the window
+      cubic.newAck(6100, 100, 1000);
+      System.out.println("CUBIC K " + String.format("%.4f", cubic.cubicK) + " window " +
+        String.format("%.2f", cubic.congestionWindow) + " (expect 1.9574, 701.08)");
+      passed &= Math.abs(cubic.cubicK - 1.9574) < 0.01 &&
+        Math.abs(cubic.renoWindow - 7.0756) < 0.01 &&
+        Math.abs(cubic.congestionWindow - 701.08) < 0.01;
+
+      // at t = 10 s the cubic is 218.09 segments, but the target is
+      // capped at 1.5 * 7.0108 = 10.5162, and one ACK closes the gap
+      // by 1/7.0108 of it: half a segment, to 7.5108
+      cubic.newAck(6200, 100, 11000);
+      System.out.println("CUBIC far from the last loss: window " +
+        String.format("%.2f", cubic.congestionWindow) + " (expect 751.08)");
+      passed &= Math.abs(cubic.congestionWindow - 751.08) < 0.01;
+
+      // fast convergence: a loss below the remembered window lowers
+      // it further, to window * (1 + 0.7) / 2
+      cubic.reset(1000, 500);
+      cubic.maxWindow = 2000.0;
+      cubic.timeout(0);
+      passed &= cubic.maxWindow == 850.0 && cubic.getSlowStartThreshold() == 700 &&
+        cubic.getCongestionWindow() == 100;
+
+      System.out.println(passed ? "Passed: windows match the hand-worked values" :
+        "Failed: congestion control");
+    }
+    catch(Exception e)
+    {
+      System.out.println("Exception in SendSegments test:" + e.getMessage());
+      e.printStackTrace(System.err);
+    }
+
+  }// end main()
    
 }// end class SendSegments
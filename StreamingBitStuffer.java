@@ -0,0 +1,88 @@
+/**
+ * Java Network Workbench 2 (JNW2)
+ * Copyright 2013/2017 Networking and Simulation Laboratory/George Mason University
+ *
+ * Description: Stuffs a frame delivered in chunks of any length,
+ * carrying the run of ones from one chunk to the next, and writes
+ * the flags that delimit frames on the line
+ *
+ * @version 2.2.3
+ */
+
+package JNW2.message;
+
+public class StreamingBitStuffer
+{
+  /**
+   * Flag that starts and ends each frame on the line
+   */
+  public static final int FLAG = 0x7e; // 01111110
+  public static final int FLAG_BITS = 8;
+
+  // ones (0 to 4) at the end of the bits stuffed so far
+  private int ones = 0;
+
+  // statistics
+  private long bitsIn = 0;
+  private long bitsOut = 0;
+
+  /**
+   * Stuffs a whole chunk
+   * @param chunk - next bits of the frame
+   * @param out - stuffed bits are appended to it
+   * @return number of bits appended
+   */
+  public int write(PackedBitSequence chunk, PackedBitSequence out)
+  {
+    return write(chunk, 0, chunk.size(), out);
+  }
+
+  /**
+   * Stuffs part of a chunk
+   * @param chunk - holds the next bits of the frame
+   * @param from - first bit of chunk to stuff
+   * @param count - number of bits to stuff
+   * @param out - stuffed bits are appended to it
+   * @return number of bits appended
+   */
+  public int write(PackedBitSequence chunk, int from, int count, PackedBitSequence out)
+  {
+    int startBits = out.size();
+    ones = BitStuffingEngine.stuff(chunk, from, count, ones, out);
+    int appended = out.size() - startBits;
+    bitsIn += count;
+    bitsOut += appended;
+    return appended;
+  }
+
+  /**
+   * Writes a flag, ending the frame being stuffed (if any) and
+   * starting the next one
+   * @param out - the flag is appended to it
+   */
+  public void writeFlag(PackedBitSequence out)
+  {
+    out.appendBits(FLAG, FLAG_BITS);
+    ones = 0;
+    bitsOut += FLAG_BITS;
+  }
+
+  /**
+   * Forgets any partly stuffed frame
+   */
+  public void reset()
+  {
+    ones = 0;
+  }
+
+  public long getBitsIn()
+  {
+    return bitsIn;
+  }
+
+  public long getBitsOut()
+  {
+    return bitsOut;
+  }
+
+}// end class StreamingBitStuffer
@@ -0,0 +1,226 @@
+/**
+ * Java Network Workbench 2 (JNW2)
+ * Copyright 2013/2017 Networking and Simulation Laboratory/George Mason University
+ *
+ * Description: Receives line bits in chunks of any length, finds the
+ * flags (01111110) that delimit frames, unstuffs the bits between
+ * them and hands each complete frame to a listener
+ *
+ * @version 2.2.3
+ */
+
+package JNW2.message;
+
+public class StreamingBitUnstuffer
+{
+  /**
+   * Told of each frame found between two flags
+   */
+  public interface FrameListener
+  {
+    /**
+     * @param frame - the unstuffed frame; reused for the next frame
+     * once this returns, so copy it to keep it
+     */
+    void frameReceived(PackedBitSequence frame) throws Exception;
+  }
+
+  // bits a flag adds to the frame before it is recognized:
+  // its leading zero and the first five ones
+  static final int FLAG_PREFIX_BITS = 6;
+
+  // instance variables
+  private final FrameListener listener;
+  private final int maxFrameBits;
+  private final PackedBitSequence frame;
+
+  /**
+   * ones received in a row; a zero after five is a stuffed zero,
+   * after six it ends a flag, and seven or more abort the frame
+   */
+  private int ones = 0;
+
+  /**
+   * true until a flag is found, and after an abort: bits are
+   * ignored until the next flag
+   */
+  private boolean hunting = true;
+
+  // statistics
+  private long framesReceived = 0;
+  private long framesAborted = 0;
+  private long flagsReceived = 0;
+
+  /**
+   * @param listener - receives each complete frame
+   * @param maxFrameBits - a longer frame is aborted, as on a line
+   * where the closing flag was lost
+   */
+  public StreamingBitUnstuffer(FrameListener listener, int maxFrameBits)
+  {
+    this.listener = listener;
+    this.maxFrameBits = maxFrameBits;
+    frame = PackedBitSequence.withCapacity(maxFrameBits + FLAG_PREFIX_BITS);
+  }
+
+  /**
+   * Receives a whole chunk of line bits
+   * @throws Exception from the listener
+   */
+  public void receive(PackedBitSequence chunk) throws Exception
+  {
+    receive(chunk, 0, chunk.size());
+  }
+
+  /**
+   * Receives part of a chunk of line bits
+   * @param chunk - holds the next bits from the line
+   * @param from - first bit of chunk to receive
+   * @param count - number of bits to receive
+   * @throws Exception from the listener
+   */
+  public void receive(PackedBitSequence chunk, int from, int count) throws Exception
+  {
+    int bit = from, end = from + count;
+    while(bit < end)
+    {
+      int length = Math.min(64, end - bit);
+      if(ones >= 5)
+      {
+        // a stuffed zero, flag or abort is being decided
+        if(ones >= 7)
+        {
+          // idle line: skip the ones in one step
+          long window = chunk.getBits(bit, length) << (64 - length);
+          int leadingOnes = Long.numberOfLeadingZeros(~window);
+          if(leadingOnes > 0)
+          {
+            ones = Math.min(ones + leadingOnes, 8);
+            bit += leadingOnes;
+            continue;
+          }
+        }
+        receiveBit(chunk.getValue(bit++));
+        continue;
+      }
+
+      // copy bits up to the fourth one of the next run of five in one
+      // step, since no flag or stuffed zero can start before it
+      long window = chunk.getBits(bit, length) << (64 - length);
+      int runEnd = BitStuffingEngine.firstRunEnd(window, ones);
+      int copy = runEnd == 0 ? length : runEnd - 1;
+      if(copy > 0)
+      {
+        receiveBits(window >>> (64 - copy), copy);
+        bit += copy;
+      }
+      if(runEnd != 0)
+        receiveBit(chunk.getValue(bit++));
+    }
+  }
+
+  /**
+   * Receives bits that hold no stuffed zero and no part of a flag
+   * beyond its first five ones
+   */
+  private void receiveBits(long bits, int count)
+  {
+    int trailingOnes = Long.numberOfTrailingZeros(~bits);
+    ones = trailingOnes >= count ? ones + count : trailingOnes;
+    if(hunting) return;
+    frame.appendBits(bits, count);
+    if(frame.size() > maxFrameBits + FLAG_PREFIX_BITS)
+      abort();
+  }
+
+  /**
+   * Receives one bit
+   */
+  private void receiveBit(boolean value) throws Exception
+  {
+    if(value)
+    {
+      ++ones;
+      if(ones == 6)
+        return; // a flag or an abort: not frame data
+      if(ones == 7)
+      {
+        abort();
+        return;
+      }
+      if(ones > 7)
+        return; // idle line
+    }
+    else
+    {
+      int run = ones;
+      ones = 0;
+      if(run == 5)
+        return; // stuffed zero
+      if(run == 6)
+      {
+        flag();
+        return;
+      }
+    }
+    if(hunting) return;
+    frame.appendBit(ones != 0);
+    if(frame.size() > maxFrameBits + FLAG_PREFIX_BITS)
+      abort();
+  }
+
+  /**
+   * A flag ends the current frame and starts the next one
+   */
+  private void flag() throws Exception
+  {
+    ++flagsReceived;
+    if(!hunting)
+    {
+      frame.truncate(frame.size() - FLAG_PREFIX_BITS);
+      if(frame.size() > 0)
+      {
+        ++framesReceived;
+        listener.frameReceived(frame);
+      }
+    }
+    frame.reset();
+    hunting = false;
+  }
+
+  /**
+   * Seven ones in a row, or a frame that is too long: drop the frame
+   * and hunt for the next flag
+   */
+  private void abort()
+  {
+    if(!hunting && frame.size() > 0)
+      ++framesAborted;
+    frame.reset();
+    hunting = true;
+  }
+
+  /**
+   * @return true while bits are being skipped until a flag
+   */
+  public boolean isHunting()
+  {
+    return hunting;
+  }
+
+  public long getFramesReceived()
+  {
+    return framesReceived;
+  }
+
+  public long getFramesAborted()
+  {
+    return framesAborted;
+  }
+
+  public long getFlagsReceived()
+  {
+    return flagsReceived;
+  }
+
+}// end class StreamingBitUnstuffer
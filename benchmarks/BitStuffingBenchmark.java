@@ -0,0 +1,96 @@
+/**
+ * Java Network Workbench 2 (JNW2)
+ * Copyright 2013-2018 Networking and Simulation Laboratory/George Mason University
+ *
+ * JMH benchmark of frame stuffing and unstuffing: the BitSequence API,
+ * the packed engine into reused buffers, and the original bit-at-a-time
+ * loop, over random frames and worst-case all-ones frames
+ *
+ * @version 2.2.7
+ */
+
+package JNW2.benchmarks;
+
+import JNW2.message.*;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BitStuffingBenchmark
+{
+  @Param({"64", "1500", "9000"})
+  int frameBytes;
+
+  @Param({"random", "allOnes"})
+  String pattern;
+
+  // frames in each form, built once per trial
+  BitSequence frame;
+  BitSequence stuffedFrame;
+  PackedBitSequence packedFrame;
+  PackedBitSequence packedStuffedFrame;
+
+  // reused destinations
+  PackedBitSequence stuffed;
+  PackedBitSequence unstuffed;
+
+  @Setup(Level.Trial)
+  public void setup()
+  {
+    byte[] payload = new byte[frameBytes];
+    if(pattern.equals("allOnes"))
+      java.util.Arrays.fill(payload, (byte)0xff);
+    else
+      new Random(frameBytes).nextBytes(payload);
+    packedFrame = PackedBitSequence.withCapacity(frameBytes * 8);
+    packedFrame.appendBytes(payload, 0, frameBytes);
+    packedStuffedFrame = BitStuffing.stuff(packedFrame);
+    frame = packedFrame.toBitSequence();
+    stuffedFrame = packedStuffedFrame.toBitSequence();
+    stuffed = PackedBitSequence.withCapacity(packedStuffedFrame.size());
+    unstuffed = PackedBitSequence.withCapacity(packedFrame.size());
+  }
+
+  @Benchmark
+  public BitSequence stuffBitSequence()
+  {
+    return BitStuffing.stuff(frame);
+  }
+
+  @Benchmark
+  public BitSequence unstuffBitSequence()
+  {
+    return BitStuffing.unstuff(stuffedFrame);
+  }
+
+  @Benchmark
+  public int stuffPacked()
+  {
+    return BitStuffing.stuff(packedFrame, stuffed);
+  }
+
+  @Benchmark
+  public int unstuffPacked()
+  {
+    return BitStuffing.unstuff(packedStuffedFrame, unstuffed);
+  }
+
+  @Benchmark
+  public BitSequence stuffBitwise()
+  {
+    return BitStuffing.stuffBitwise(frame);
+  }
+
+  @Benchmark
+  public BitSequence unstuffBitwise()
+  {
+    return BitStuffing.unstuffBitwise(stuffedFrame);
+  }
+
+}// end class BitStuffingBenchmark
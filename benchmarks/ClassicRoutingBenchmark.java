@@ -0,0 +1,79 @@
+/**
+ * Java Network Workbench 2 (JNW2)
+ * Copyright 2013-2018 Networking and Simulation Laboratory/George Mason University
+ *
+ * JMH benchmark of DijkstraRouting and BellmanFordRouting, which read
+ * link costs from the ConnectivityMatrix of a loaded configuration:
+ * a config file is written from a generated topology of 10 to 100
+ * subnets, the same topologies RoutingBenchmark uses, and parsed.
+ * These engines are O(V^4), so larger topologies would not finish.
+ *
+ * @version 2.2.7
+ */
+
+package JNW2.benchmarks;
+
+import JNW2.*;
+import JNW2.parsers.*;
+import JNW2.utility.*;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClassicRoutingBenchmark
+{
+  @Param({"10", "30", "100"})
+  int numberOfSubnets;
+
+  @Param({"4"})
+  int averageDegree;
+
+  File configFile;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception
+  {
+    configFile = File.createTempFile("routing-benchmark", ".txt");
+    TopologyGenerator.writeConfig(numberOfSubnets, averageDegree, 1, configFile);
+    String configFileName = configFile.getPath();
+    Topology topology = new Topology(configFileName);
+    SimulationEngine simEngine = new SimulationEngine(topology);
+    simEngine.setInstance(simEngine);
+    if(!new ConfigParser(topology).parseConfig())
+      throw new Exception("parse of file:" + configFileName + " failed");
+    simEngine.loadConfiguration();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown()
+  {
+    configFile.delete();
+  }
+
+  @Benchmark
+  public int[][] dijkstra() throws Exception
+  {
+    return new DijkstraRouting().computeRoutingMatrix();
+  }
+
+  @Benchmark
+  public int[][] bellmanFord() throws Exception
+  {
+    BellmanFordRouting bellmanFordRouting = new BellmanFordRouting();
+    bellmanFordRouting.setShowPaths(false);
+    return bellmanFordRouting.computeRoutingMatrix();
+  }
+
+  @Benchmark
+  public int[][] heapDijkstra() throws Exception
+  {
+    return new HeapDijkstraRouting().computeRoutingMatrix();
+  }
+
+}// end class ClassicRoutingBenchmark
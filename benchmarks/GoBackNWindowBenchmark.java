@@ -0,0 +1,74 @@
+/**
+ * Java Network Workbench 2 (JNW2)
+ * Copyright 2013-2018 Networking and Simulation Laboratory/George Mason University
+ *
+ * JMH benchmark of the GoBackN window arithmetic, each operation run
+ * over every pair of sequence numbers in the DLC counter range
+ *
+ * @version 2.2.7
+ */
+
+package JNW2.benchmarks;
+
+import static JNW2.Constants.*;
+import JNW2.*;
+import JNW2.interfaces.*;
+import JNW2.nodes.*;
+import JNW2.stack.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GoBackNWindowBenchmark
+{
+  GoBackN goBackN;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception
+  {
+    Topology topology = new Topology();
+    SimulationEngine simEngine = new SimulationEngine(topology);
+    simEngine.setInstance(simEngine);
+    Host testHost = new Host(1, 1, (byte)1, 1);
+    goBackN = new GoBackN(new Stack(testHost), 1);
+  }
+
+  @Benchmark
+  public void windowFull(Blackhole blackhole)
+  {
+    for(int min = 0; min < DL_WINDOW_MAX; ++min)
+      for(int max = 0; max < DL_WINDOW_MAX; ++max)
+        blackhole.consume(goBackN.windowFull((byte)min, (byte)max));
+  }
+
+  @Benchmark
+  public void inWindow(Blackhole blackhole)
+  {
+    for(int min = 0; min < DL_WINDOW_MAX; ++min)
+      for(int max = 0; max < DL_WINDOW_MAX; ++max)
+        blackhole.consume(goBackN.INwindow((byte)min, (byte)max));
+  }
+
+  @Benchmark
+  public void ltWindow(Blackhole blackhole)
+  {
+    for(int min = 0; min < DL_WINDOW_MAX; ++min)
+      for(int max = 0; max < DL_WINDOW_MAX; ++max)
+        blackhole.consume(goBackN.LTwindow((byte)min, (byte)max));
+  }
+
+  @Benchmark
+  public void acceptFrame(Blackhole blackhole)
+  {
+    for(int sn = 0; sn < DL_WINDOW_MAX; ++sn)
+      for(int rn = 0; rn < DL_WINDOW_MAX; ++rn)
+        blackhole.consume(goBackN.acceptFrame((byte)sn, (byte)rn));
+  }
+
+}// end class GoBackNWindowBenchmark
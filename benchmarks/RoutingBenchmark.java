@@ -0,0 +1,69 @@
+/**
+ * Java Network Workbench 2 (JNW2)
+ * Copyright 2013-2018 Networking and Simulation Laboratory/George Mason University
+ *
+ * JMH benchmark of routing table computation over generated
+ * topologies of 10 to 5000 subnets
+ *
+ * @version 2.2.7
+ */
+
+package JNW2.benchmarks;
+
+import JNW2.utility.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoutingBenchmark
+{
+  @Param({"10", "100", "1000", "5000"})
+  int numberOfSubnets;
+
+  @Param({"4"})
+  int averageDegree;
+
+  CsrTopology csr;
+
+  @Setup(Level.Trial)
+  public void setup()
+  {
+    csr = TopologyGenerator.generate(numberOfSubnets, averageDegree, 1);
+  }
+
+  @Benchmark
+  public int[][] heapDijkstra() throws Exception
+  {
+    return new HeapDijkstraRouting(csr).computeRoutingMatrix();
+  }
+
+  @Benchmark
+  public int[][] heapDijkstraParallel() throws Exception
+  {
+    return new HeapDijkstraRouting(csr).computeRoutingMatrix(0);
+  }
+
+  @Benchmark
+  public int[][] queueBellmanFord() throws Exception
+  {
+    return new QueueBellmanFordRouting(csr).computeRoutingMatrix();
+  }
+
+  @Benchmark
+  public int[][] incremental() throws Exception
+  {
+    return new IncrementalRouting(csr.copy()).computeRoutingMatrix();
+  }
+
+  @Benchmark
+  public EcmpRoutingMatrix ecmpDijkstra() throws Exception
+  {
+    return new EcmpDijkstraRouting(csr).computeEcmpRoutingMatrix();
+  }
+
+}// end class RoutingBenchmark
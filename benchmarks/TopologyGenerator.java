@@ -0,0 +1,187 @@
+/**
+ * Java Network Workbench 2 (JNW2)
+ * Copyright 2013-2018 Networking and Simulation Laboratory/George Mason University
+ *
+ * Generates WAN topologies for the routing benchmarks: a ring of
+ * routers, so every router is reachable, plus random extra links,
+ * with random costs the same in both directions
+ *
+ * @version 2.2.7
+ */
+
+package JNW2.benchmarks;
+
+import JNW2.utility.CsrTopology;
+import java.io.*;
+import java.util.*;
+
+public class TopologyGenerator
+{
+  /**
+   * @param numberOfSubnets - routers are numbered 1 to numberOfSubnets
+   * @param averageDegree - links out of each router on average
+   * (at least 2, from the ring)
+   * @param seed - the same seed gives the same topology
+   * @return the topology
+   */
+  public static CsrTopology generate(int numberOfSubnets, int averageDegree, long seed)
+  {
+    List<TreeMap<Integer, Float>> links = generateLinks(numberOfSubnets, averageDegree, seed);
+    int[] offsets = new int[numberOfSubnets+2];
+    int linkCount = 0;
+    for(int router = 1; router <= numberOfSubnets; ++router)
+      linkCount += links.get(router).size();
+    int[] neighbors = new int[linkCount];
+    float[] costs = new float[linkCount];
+    linkCount = 0;
+    for(int router = 1; router <= numberOfSubnets; ++router)
+    {
+      offsets[router] = linkCount;
+      for(Map.Entry<Integer, Float> link : links.get(router).entrySet())
+      {
+        neighbors[linkCount] = link.getKey();
+        costs[linkCount] = link.getValue();
+        ++linkCount;
+      }
+    }
+    offsets[numberOfSubnets+1] = linkCount;
+    return new CsrTopology(numberOfSubnets, offsets, neighbors, costs);
+  }
+
+  /**
+   * Writes the topology generate() would give as a JNW2 config file,
+   * for the engines that read a loaded configuration: each router has
+   * a contention LAN with one host, and a link of cost c has a data
+   * rate of 10000/c kb/s, so cheaper links are faster
+   * @param file - the config file to write
+   */
+  public static void writeConfig(int numberOfSubnets, int averageDegree, long seed,
+    File file) throws IOException
+  {
+    List<TreeMap<Integer, Float>> links = generateLinks(numberOfSubnets, averageDegree, seed);
+    PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(file)));
+    try
+    {
+      out.println("# JNW2 configuration file generated by TopologyGenerator");
+      out.println("<subnets>");
+      out.println(numberOfSubnets);
+      out.println("</subnets>");
+      out.println("<diameter>");
+      out.println(diameter(links, numberOfSubnets));
+      out.println("</diameter>");
+
+      out.println("<links>");
+      for(int router = 1; router <= numberOfSubnets; ++router)
+      {
+        TreeMap<Integer, Float> row = links.get(router);
+        for(int column = 1; column <= numberOfSubnets; ++column)
+        {
+          Float linkCost = row.get(column);
+          out.print(linkCost == null ? 0 : Math.max(1, Math.round(10000 / linkCost)));
+          out.print('\t');
+        }
+        out.println();
+      }
+      out.println("</links>");
+
+      // JNW2 holds interface numbers in bytes, so they are numbered
+      // per router: its exit interfaces from 1, then its LAN interface
+      // and the host's after them
+      out.println("<exitInterfaces>");
+      for(int router = 1; router <= numberOfSubnets; ++router)
+      {
+        TreeMap<Integer, Float> row = links.get(router);
+        int interfaceNumber = 0;
+        for(int column = 1; column <= numberOfSubnets; ++column)
+        {
+          out.print(row.containsKey(column) ? ++interfaceNumber : 0);
+          out.print('\t');
+        }
+        out.println();
+      }
+      out.println("</exitInterfaces>");
+
+      out.println("<subnet>");
+      for(int router = 1; router <= numberOfSubnets; ++router)
+        out.println(router + "\t1\t1\t100");
+      out.println("</subnet>");
+      out.println("<lanInterface>");
+      for(int router = 1; router <= numberOfSubnets; ++router)
+      {
+        int exitInterfaces = links.get(router).size();
+        if(exitInterfaces + 2 > Byte.MAX_VALUE)
+          throw new IOException("router " + router + " has too many links for byte interface numbers");
+        out.println(router + "\t" + (exitInterfaces + 1) + "\t" + (exitInterfaces + 2));
+      }
+      out.println("</lanInterface>");
+      if(out.checkError())
+        throw new IOException("cannot write " + file);
+    }
+    finally
+    {
+      out.close();
+    }
+  }
+
+  /**
+   * @return the links out of each router, to neighbor with its cost
+   */
+  static List<TreeMap<Integer, Float>> generateLinks(int numberOfSubnets,
+    int averageDegree, long seed)
+  {
+    Random random = new Random(seed);
+    List<TreeMap<Integer, Float>> links = new ArrayList<TreeMap<Integer, Float>>();
+    for(int router = 0; router <= numberOfSubnets; ++router)
+      links.add(new TreeMap<Integer, Float>());
+
+    for(int router = 1; router <= numberOfSubnets && numberOfSubnets > 1; ++router)
+      addLink(links, router, router % numberOfSubnets + 1, random);
+    int extraLinks = numberOfSubnets * Math.max(0, averageDegree - 2) / 2;
+    for(int link = 0; link < extraLinks; ++link)
+    {
+      int routerA = 1 + random.nextInt(numberOfSubnets);
+      int routerB = 1 + random.nextInt(numberOfSubnets);
+      if(routerA != routerB)
+        addLink(links, routerA, routerB, random);
+    }
+    return links;
+  }
+
+  /**
+   * @return most hops on a shortest path between two routers
+   */
+  static int diameter(List<TreeMap<Integer, Float>> links, int numberOfSubnets)
+  {
+    int diameter = 0;
+    int[] hops = new int[numberOfSubnets+1];
+    int[] queue = new int[numberOfSubnets];
+    for(int source = 1; source <= numberOfSubnets; ++source)
+    {
+      Arrays.fill(hops, -1);
+      hops[source] = 0;
+      int head = 0, tail = 0;
+      queue[tail++] = source;
+      while(head < tail)
+      {
+        int router = queue[head++];
+        diameter = Math.max(diameter, hops[router]);
+        for(int neighbor : links.get(router).keySet())
+          if(hops[neighbor] < 0)
+          {
+            hops[neighbor] = hops[router] + 1;
+            queue[tail++] = neighbor;
+          }
+      }
+    }
+    return diameter;
+  }
+
+  private static void addLink(List<TreeMap<Integer, Float>> links,
+    int routerA, int routerB, Random random)
+  {
+    float linkCost = 1 + 99 * random.nextFloat();
+    links.get(routerA).put(routerB, linkCost);
+    links.get(routerB).put(routerA, linkCost);
+  }
+
+}// end class TopologyGenerator